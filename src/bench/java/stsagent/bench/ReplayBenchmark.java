@@ -0,0 +1,483 @@
+package stsagent.bench;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import stsagent.agent.Agent;
+import stsagent.agent.RunStats;
+import stsagent.agent.ToolPolicy;
+import stsagent.config.AgentConfig;
+import stsagent.llm.ChatModel;
+import stsagent.llm.ChatRequest;
+import stsagent.llm.LLMClient;
+import stsagent.llm.LLMMessage;
+import stsagent.llm.RecordingChatModel;
+import stsagent.llm.ReplayChatModel;
+import stsagent.llm.ToolSet;
+import stsagent.mcp.MCPClient;
+import stsagent.planner.MonteCarloPlanner;
+import stsagent.tools.BuiltinTools;
+import stsagent.tools.GameSnapshot;
+import stsagent.tools.StateEncoder;
+import stsagent.tools.StateFormat;
+import stsagent.tools.StateTape;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Headless benchmark for the agent loop.
+ *
+ * Replays a corpus of recorded snapshots (saved in game with /snapshot) through
+ * Agent.runLoop, with state tools served from the snapshot, actions accepted by a
+ * stub executor and a pluggable model backend. Needs no game jars:
+ *
+ *   mvn -P bench compile exec:java
+ *
+ * System properties:
+ *   bench.corpus     Directory of snapshot JSON files (default src/bench/resources/corpus)
+ *   bench.mode       PLAY or ANALYZE (default PLAY)
+ *   bench.planMode   Use plan-then-execute in PLAY (default false)
+ *   bench.toolsPerScreen  Offer only the state tools relevant to the screen (default true)
+ *   bench.backend    scripted | openai | replay (default scripted)
+ *   bench.latencyMs  Simulated model latency for the scripted backend (default 0)
+ *   bench.repeatReads  Scripted backend reads the screen again before acting (default false)
+ *   bench.rounds     Passes over the corpus (default 20)
+ *   bench.warmup     Warmup passes, not measured (default 3)
+ *   bench.trace      Trace file served by the replay backend
+ *   bench.realtime   Replay at the recorded latency (default false)
+ *   bench.record     Record the backend's calls to this trace file
+ *   bench.stateFormat  State encoding given to the model (default: AgentConfig's);
+ *                      the scripted backend only reads the JSON formats
+ *   llm.baseUrl, llm.model, llm.apiKey   Endpoint for the openai backend
+ */
+public class ReplayBenchmark {
+    private static final String[] ALLOCATION_TOOLS = {
+            BuiltinTools.GET_COMBAT_STATE, BuiltinTools.GET_DECK, BuiltinTools.GET_MAP};
+    private static final int ALLOCATION_CALLS = 5000;
+    private static long sink;  // Keeps measured results alive
+
+    public static void main(String[] args) throws Exception {
+        File corpusDir = new File(System.getProperty("bench.corpus", "src/bench/resources/corpus"));
+        Agent.Mode mode = Agent.Mode.valueOf(System.getProperty("bench.mode", "PLAY").toUpperCase());
+        boolean planMode = Boolean.parseBoolean(System.getProperty("bench.planMode", "false"));
+        String backend = System.getProperty("bench.backend", "scripted");
+        int rounds = Integer.getInteger("bench.rounds", 20);
+        int warmup = Integer.getInteger("bench.warmup", 3);
+
+        List<JsonObject> corpus = loadCorpus(corpusDir);
+        if (corpus.isEmpty()) {
+            System.err.println("No snapshots found in " + corpusDir.getAbsolutePath());
+            System.exit(1);
+        }
+
+        AgentConfig config = new AgentConfig();
+        config.setPlanMode(planMode);
+        config.setToolsPerScreen(Boolean.parseBoolean(System.getProperty("bench.toolsPerScreen", "true")));
+        config.setLlmStateFormat(System.getProperty("bench.stateFormat", config.getLlmStateFormat()));
+
+        ReplayStateSource source = new ReplayStateSource();
+        StubActionExecutor executor = new StubActionExecutor();
+        BuiltinTools tools = new BuiltinTools(source, new MonteCarloPlanner(config.getPlannerTimeBudgetMs()));
+        ChatModel model = createBackend(backend);
+        RecordingChatModel recorder = null;
+        String recordPath = System.getProperty("bench.record");
+        if (recordPath != null) {
+            model = recorder = new RecordingChatModel(model, new File(recordPath));
+        }
+        MCPClient mcp = new MCPClient(config.getMcpServerUrl());
+        Agent agent = new Agent(model, mcp, executor, tools, config);
+
+        System.out.printf("Corpus: %d snapshots from %s%n", corpus.size(), corpusDir);
+        System.out.printf("Mode: %s%s, backend: %s, rounds: %d (+%d warmup)%n",
+                mode, planMode ? " (plan)" : "", backend, rounds, warmup);
+
+        for (int r = 0; r < warmup; r++) {
+            runRound(agent, source, corpus, mode, null);
+        }
+
+        List<RunStats> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            runRound(agent, source, corpus, mode, results);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        report(results, elapsed, executor);
+        reportEncodings(corpus, config.getStateFormat());
+        reportAllocations(corpus);
+        reportFingerprints(corpus);
+        reportRequestAssembly(corpus, config, tools, mcp);
+        reportToolScopes(tools, mcp);
+        if (model instanceof ReplayChatModel) {
+            ReplayChatModel replay = (ReplayChatModel) model;
+            System.out.printf("Replay:                 %d recorded, %d matched, %d unmatched%n",
+                    replay.getRecordedCount(), replay.getHits(), replay.getMisses());
+        }
+        if (recorder != null) {
+            recorder.close();
+            System.out.println("Trace written to " + recorder.getFile());
+        }
+    }
+
+    private static void runRound(Agent agent, ReplayStateSource source, List<JsonObject> corpus,
+                                 Agent.Mode mode, List<RunStats> results) {
+        for (JsonObject snapshot : corpus) {
+            source.setSnapshot(snapshot);
+            RunStats stats = agent.runLoop(mode, null, output -> {});
+            if (results != null) {
+                results.add(stats);
+            }
+        }
+    }
+
+    private static ChatModel createBackend(String name) throws IOException {
+        switch (name) {
+            case "scripted":
+                return new ScriptedModel(Long.getLong("bench.latencyMs", 0L),
+                        Boolean.parseBoolean(System.getProperty("bench.repeatReads", "false")));
+            case "openai":
+                return new LLMClient(
+                        System.getProperty("llm.apiKey", ""),
+                        System.getProperty("llm.baseUrl", "http://localhost:11434/v1"),
+                        System.getProperty("llm.model", "llama3.2"));
+            case "replay":
+                return new ReplayChatModel(new File(System.getProperty("bench.trace", "trace.jsonl.gz")),
+                        Boolean.parseBoolean(System.getProperty("bench.realtime", "false")));
+            default:
+                throw new IllegalArgumentException("Unknown backend: " + name);
+        }
+    }
+
+    private static List<JsonObject> loadCorpus(File dir) throws IOException {
+        List<JsonObject> corpus = new ArrayList<>();
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".json"));
+        if (files == null) return corpus;
+        Arrays.sort(files);
+        for (File file : files) {
+            try (Reader reader = new InputStreamReader(Files.newInputStream(file.toPath()), StandardCharsets.UTF_8)) {
+                corpus.add(new JsonParser().parse(reader).getAsJsonObject());
+            }
+        }
+        return corpus;
+    }
+
+    private static void report(List<RunStats> results, long elapsedNanos, StubActionExecutor executor) {
+        int n = results.size();
+        long[] latencies = new long[n];
+        long iterations = 0, toolCalls = 0, repeated = 0, tokensSaved = 0, promptTokens = 0, completionTokens = 0;
+        long finished = 0;
+        for (int i = 0; i < n; i++) {
+            RunStats s = results.get(i);
+            latencies[i] = s.elapsedNanos;
+            iterations += s.iterations;
+            toolCalls += s.toolCalls;
+            repeated += s.repeatedToolCalls;
+            tokensSaved += s.tokensSaved;
+            promptTokens += s.promptTokens;
+            completionTokens += s.completionTokens;
+            if (s.finished) finished++;
+        }
+        Arrays.sort(latencies);
+
+        double seconds = elapsedNanos / 1e9;
+        System.out.println();
+        System.out.printf("Decisions:              %d (%d finished on their own)%n", n, finished);
+        System.out.printf("Decisions/sec:          %.1f%n", n / seconds);
+        System.out.printf("Iterations/decision:    %.2f%n", (double) iterations / n);
+        System.out.printf("Tool calls/decision:    %.2f%n", (double) toolCalls / n);
+        System.out.printf("Repeated tool calls:    %.1f%% (~%.0f tokens saved/decision)%n",
+                toolCalls > 0 ? 100.0 * repeated / toolCalls : 0.0, (double) tokensSaved / n);
+        System.out.printf("Prompt tokens/decision: %.0f%n", (double) promptTokens / n);
+        System.out.printf("Output tokens/decision: %.0f%n", (double) completionTokens / n);
+        System.out.printf("Action batches:         %d (%d actions)%n", executor.getBatches(), executor.getActions());
+        System.out.printf("Latency ms p50/p90/p99/max: %.2f / %.2f / %.2f / %.2f%n",
+                percentile(latencies, 50), percentile(latencies, 90),
+                percentile(latencies, 99), latencies[n - 1] / 1e6);
+    }
+
+    /**
+     * Size of every recorded state tool output in each format, for picking the cheapest
+     * format a model still reads correctly.
+     */
+    private static void reportEncodings(List<JsonObject> corpus, StateFormat active) {
+        System.out.println();
+        System.out.println("State encoding (all state tools over the corpus):");
+        for (StateFormat format : StateFormat.values()) {
+            long chars = 0, tokens = 0;
+            for (JsonObject snapshot : corpus) {
+                for (Map.Entry<String, JsonElement> entry : snapshot.entrySet()) {
+                    if (!entry.getKey().startsWith("get_") || !entry.getValue().isJsonObject()) continue;
+                    String encoded = StateEncoder.encode(entry.getValue(), format);
+                    chars += encoded.length();
+                    tokens += StateEncoder.estimateTokens(encoded);
+                }
+            }
+            System.out.printf("  %-9s %7d chars %7d tokens (est.)%s%n", format.name().toLowerCase(),
+                    chars, tokens, format == active ? "  <- in use" : "");
+        }
+    }
+
+    /**
+     * Bytes allocated per call to build and encode the combat, deck and map outputs: the
+     * way the reader used to (a map tree of boxed values, then Gson) against recording a
+     * tape into a reused scratch, copying it and streaming it out. Both read the same
+     * recorded values, so the strings the reader no longer builds (hp "68/80", intents)
+     * are not part of the difference.
+     */
+    private static void reportAllocations(List<JsonObject> corpus) {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            System.out.println("Allocation per call: not measurable on this JVM");
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Gson pretty = new GsonBuilder().setPrettyPrinting().create();
+        Gson minified = new GsonBuilder().disableHtmlEscaping().create();
+        StateTape scratch = new StateTape();
+
+        System.out.println();
+        System.out.println("Allocation per call (map tree + Gson -> tape + streaming encoder):");
+        for (String tool : ALLOCATION_TOOLS) {
+            List<JsonElement> outputs = new ArrayList<>();
+            for (JsonObject snapshot : corpus) {
+                JsonElement output = snapshot.get(tool);
+                if (output != null && output.isJsonObject()) outputs.add(output);
+            }
+            if (outputs.isEmpty()) continue;
+
+            for (StateFormat format : StateFormat.values()) {
+                Gson gson = format == StateFormat.PRETTY ? pretty : format == StateFormat.MINIFIED ? minified : null;
+                String before = "-";
+                if (gson != null) {
+                    before = String.valueOf(measure(threads, outputs, json -> gson.toJson(toTree(json))));
+                }
+                long after = measure(threads, outputs, json -> {
+                    scratch.clear();
+                    scratch.value(json);
+                    return StateEncoder.encode(scratch.copy(), format);
+                });
+                System.out.printf("  %-17s %-9s %7s B -> %6d B%n", tool, format.name().toLowerCase(), before, after);
+            }
+        }
+    }
+
+    /**
+     * Cost of a section fingerprint, against encoding the same tape, and whether distinct
+     * outputs (card handles aside) get distinct fingerprints.
+     */
+    private static void reportFingerprints(List<JsonObject> corpus) {
+        System.out.println();
+        System.out.println("Fingerprint per call (vs pretty encoding of the same tape):");
+        for (String tool : ALLOCATION_TOOLS) {
+            List<StateTape> tapes = new ArrayList<>();
+            Set<Long> fingerprints = new HashSet<>();
+            Set<Long> withHandles = new HashSet<>();
+            Set<String> outputs = new HashSet<>();
+            for (JsonObject snapshot : corpus) {
+                JsonElement output = snapshot.get(tool);
+                if (output == null || !output.isJsonObject()) continue;
+                StateTape tape = StateTape.fromJson(output);
+                tapes.add(tape);
+                fingerprints.add(tape.fingerprint(GameSnapshot.COSMETIC_FIELDS));
+                withHandles.add(tape.fingerprint());
+                outputs.add(StateEncoder.encode(tape, StateFormat.MINIFIED));
+            }
+            if (tapes.isEmpty()) continue;
+
+            long fingerprintNanos = time(tapes, tape -> sink += tape.fingerprint(GameSnapshot.COSMETIC_FIELDS));
+            long encodeNanos = time(tapes, tape -> sink += StateEncoder.encode(tape, StateFormat.PRETTY).length());
+            System.out.printf("  %-17s %6d ns (encode %6d ns), %d distinct outputs, %d fingerprints, %d ignoring handles%n",
+                    tool, fingerprintNanos, encodeNanos, outputs.size(), withHandles.size(), fingerprints.size());
+        }
+    }
+
+    /**
+     * Cost of building one PLAY request body from a typical turn (system prompt, user
+     * prompt, a screen and combat state read) three ways: serializing the tool schemas per
+     * request, reusing a cached tool string in a String body (the previous client), and
+     * splicing a {@link ToolSet}'s bytes into a byte body. All three give the same bytes.
+     */
+    private static void reportRequestAssembly(List<JsonObject> corpus, AgentConfig config,
+                                              BuiltinTools builtin, MCPClient mcp) {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            System.out.println("Request assembly: allocation not measurable on this JVM");
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+
+        JsonArray definitions = new JsonArray();
+        definitions.addAll(builtin.getToolDefinitions());
+        definitions.addAll(mcp.getToolDefinitions());
+        ToolSet toolSet = ToolSet.of(definitions);
+        String model = "bench-model";
+        Gson gson = new Gson();
+        String toolJson = gson.toJson(definitions);
+
+        List<List<LLMMessage>> requests = new ArrayList<>();
+        for (JsonObject snapshot : corpus) {
+            List<LLMMessage> messages = new ArrayList<>();
+            messages.add(LLMMessage.system(config.getSystemPrompt()));
+            messages.add(LLMMessage.user("Play the game. First use state query tools to understand the situation."));
+            List<LLMClient.ToolCall> calls = new ArrayList<>();
+            List<LLMMessage> results = new ArrayList<>();
+            for (String tool : new String[]{BuiltinTools.GET_SCREEN, BuiltinTools.GET_COMBAT_STATE}) {
+                JsonElement output = snapshot.get(tool);
+                if (output == null || !output.isJsonObject()) continue;
+                String id = "call_" + calls.size();
+                calls.add(new LLMClient.ToolCall(id, tool, new JsonObject()));
+                results.add(LLMMessage.toolResponse(id, StateEncoder.encode(output, config.getStateFormat())));
+            }
+            if (!calls.isEmpty()) {
+                messages.add(LLMMessage.assistantWithToolCalls(calls));
+                messages.addAll(results);
+            }
+            requests.add(messages);
+        }
+
+        Function<List<LLMMessage>, byte[]> perRequest = messages -> stringBody(gson, model, messages, gson.toJson(definitions));
+        Function<List<LLMMessage>, byte[]> cachedString = messages -> stringBody(gson, model, messages, toolJson);
+        Function<List<LLMMessage>, byte[]> spliced = messages -> ChatRequest.encode(model, false, messages, toolSet);
+        boolean identical = true;
+        long bodyBytes = 0;
+        for (List<LLMMessage> messages : requests) {
+            byte[] body = spliced.apply(messages);
+            identical &= Arrays.equals(body, perRequest.apply(messages)) && Arrays.equals(body, cachedString.apply(messages));
+            bodyBytes += body.length;
+        }
+
+        System.out.println();
+        System.out.printf("Request assembly (%d tools, %d B of schemas, %d B per body, %s):%n",
+                toolSet.size(), toolSet.getByteLength(), bodyBytes / requests.size(),
+                identical ? "identical bodies" : "BODIES DIFFER");
+        reportAssembly(threads, requests, "schemas per request", perRequest);
+        reportAssembly(threads, requests, "cached tool string", cachedString);
+        reportAssembly(threads, requests, "spliced tool bytes", spliced);
+    }
+
+    /**
+     * Tools and schema bytes Play mode offers on each kind of screen.
+     */
+    private static void reportToolScopes(BuiltinTools builtin, MCPClient mcp) {
+        System.out.println();
+        System.out.println("Play tools per screen (builtin + MCP):");
+        for (ToolPolicy.Scope scope : ToolPolicy.Scope.values()) {
+            JsonArray definitions = new JsonArray();
+            definitions.addAll(ToolPolicy.select(builtin.getToolDefinitions(), scope));
+            definitions.addAll(mcp.getToolDefinitions());
+            ToolSet toolSet = ToolSet.of(definitions);
+            System.out.printf("  %-12s %2d tools %6d B%n", scope.name().toLowerCase(), toolSet.size(), toolSet.getByteLength());
+        }
+    }
+
+    /**
+     * A request body the way the client used to build it: one String, tools as raw JSON.
+     */
+    private static byte[] stringBody(Gson gson, String model, List<LLMMessage> messages, String toolJson) {
+        StringWriter out = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject();
+            writer.name("model").value(model);
+            writer.name("stream").value(false);
+            writer.name("messages").beginArray();
+            for (LLMMessage msg : messages) {
+                gson.toJson(msg.toJson(), writer);
+            }
+            writer.endArray();
+            writer.name("tools").jsonValue(toolJson);
+            writer.endObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void reportAssembly(com.sun.management.ThreadMXBean threads, List<List<LLMMessage>> requests,
+                                       String label, Function<List<LLMMessage>, byte[]> build) {
+        for (int i = 0; i < 10 * ALLOCATION_CALLS; i++) {
+            sink += build.apply(requests.get(i % requests.size())).length;
+        }
+        long thread = Thread.currentThread().getId();
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < ALLOCATION_CALLS; i++) {
+            sink += build.apply(requests.get(i % requests.size())).length;
+        }
+        long nanos = (System.nanoTime() - start) / ALLOCATION_CALLS;
+        allocated = (threads.getThreadAllocatedBytes(thread) - allocated) / ALLOCATION_CALLS;
+        System.out.printf("  %-20s %7d ns %9d B allocated%n", label, nanos, allocated);
+    }
+
+    private static long time(List<StateTape> tapes, Consumer<StateTape> call) {
+        for (int i = 0; i < 10 * ALLOCATION_CALLS; i++) {
+            call.accept(tapes.get(i % tapes.size()));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ALLOCATION_CALLS; i++) {
+            call.accept(tapes.get(i % tapes.size()));
+        }
+        return (System.nanoTime() - start) / ALLOCATION_CALLS;
+    }
+
+    private static long measure(com.sun.management.ThreadMXBean threads, List<JsonElement> outputs,
+                                Function<JsonElement, String> encode) {
+        for (int i = 0; i < ALLOCATION_CALLS; i++) {
+            sink += encode.apply(outputs.get(i % outputs.size())).length();
+        }
+        long thread = Thread.currentThread().getId();
+        long start = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < ALLOCATION_CALLS; i++) {
+            sink += encode.apply(outputs.get(i % outputs.size())).length();
+        }
+        return (threads.getThreadAllocatedBytes(thread) - start) / ALLOCATION_CALLS;
+    }
+
+    /**
+     * A Gson tree as the maps, lists and boxed values the reader used to build.
+     */
+    private static Object toTree(JsonElement json) {
+        if (json.isJsonObject()) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<String, JsonElement> entry : json.getAsJsonObject().entrySet()) {
+                map.put(entry.getKey(), toTree(entry.getValue()));
+            }
+            return map;
+        }
+        if (json.isJsonArray()) {
+            List<Object> list = new ArrayList<>();
+            for (JsonElement item : json.getAsJsonArray()) {
+                list.add(toTree(item));
+            }
+            return list;
+        }
+        if (json.isJsonNull()) return null;
+        if (json.getAsJsonPrimitive().isBoolean()) return json.getAsBoolean();
+        if (json.getAsJsonPrimitive().isNumber()) return json.getAsInt();
+        return json.getAsString();
+    }
+
+    private static double percentile(long[] sorted, int p) {
+        int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+}
@@ -0,0 +1,266 @@
+package stsagent.bench;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.util.Map;
+import stsagent.planner.CombatMetrics;
+import stsagent.planner.CombatModel;
+import stsagent.tools.BuiltinTools;
+import stsagent.tools.GameSnapshot;
+import stsagent.tools.GameStateSource;
+import stsagent.tools.Handles;
+import stsagent.tools.StateEncoder;
+import stsagent.tools.StateFormat;
+import stsagent.tools.StateTape;
+
+/**
+ * Serves a recorded snapshot (see Agent.saveSnapshot) in place of the live game.
+ */
+public class ReplayStateSource implements GameStateSource {
+    // Recorded tool per StateSection ordinal
+    private static final String[] SECTION_TOOLS = {
+            BuiltinTools.GET_GAME_STATE, BuiltinTools.GET_COMBAT_STATE, BuiltinTools.GET_SCREEN,
+            BuiltinTools.GET_DECK, BuiltinTools.GET_RELICS, BuiltinTools.GET_POTIONS, BuiltinTools.GET_MAP
+    };
+
+    private JsonObject snapshot = new JsonObject();
+    private CombatModel combatModel;
+    private StateFormat format = StateFormat.DEFAULT;
+    private long fingerprint;
+    private long outputFingerprint;
+
+    public void setSnapshot(JsonObject snapshot) {
+        this.snapshot = snapshot;
+        this.combatModel = null;
+        if (isInCombat() && snapshot.has(BuiltinTools.GET_COMBAT_STATE) &&
+            snapshot.get(BuiltinTools.GET_COMBAT_STATE).isJsonObject()) {
+            JsonObject state = snapshot.getAsJsonObject(BuiltinTools.GET_COMBAT_STATE);
+            combatModel = toCombatModel(state);
+            if (!state.has("incoming")) {
+                snapshot.add(BuiltinTools.GET_COMBAT_STATE, withMetrics(state, combatModel));
+            }
+        }
+        long[] sections = new long[SECTION_TOOLS.length];
+        long[] outputSections = new long[SECTION_TOOLS.length];
+        for (int i = 0; i < sections.length; i++) {
+            JsonElement value = snapshot.get(SECTION_TOOLS[i]);
+            StateTape tape = value != null ? StateTape.fromJson(value) : null;
+            sections[i] = tape != null ? tape.fingerprint(GameSnapshot.COSMETIC_FIELDS) : 0;
+            outputSections[i] = tape != null ? tape.fingerprint() : 0;
+        }
+        this.fingerprint = GameSnapshot.fingerprint(isInGame(), isInCombat(), sections);
+        this.outputFingerprint = GameSnapshot.fingerprint(isInGame(), isInCombat(), outputSections);
+    }
+
+    @Override
+    public boolean isInGame() {
+        return snapshot.has("in_game") && snapshot.get("in_game").getAsBoolean();
+    }
+
+    @Override
+    public boolean isInCombat() {
+        return snapshot.has("in_combat") && snapshot.get("in_combat").getAsBoolean();
+    }
+
+    @Override
+    public String getGameState() { return output(BuiltinTools.GET_GAME_STATE); }
+
+    @Override
+    public String getCombatState() { return output(BuiltinTools.GET_COMBAT_STATE); }
+
+    @Override
+    public String getScreen() { return output(BuiltinTools.GET_SCREEN); }
+
+    @Override
+    public String getDeck() { return output(BuiltinTools.GET_DECK); }
+
+    @Override
+    public String getRelics() { return output(BuiltinTools.GET_RELICS); }
+
+    @Override
+    public String getPotions() { return output(BuiltinTools.GET_POTIONS); }
+
+    @Override
+    public String getPotions(StateFormat format) { return output(BuiltinTools.GET_POTIONS, format); }
+
+    @Override
+    public String getMap() { return output(BuiltinTools.GET_MAP); }
+
+    @Override
+    public CombatModel getCombatModel() {
+        return combatModel;
+    }
+
+    @Override
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    public long getOutputFingerprint() {
+        return StateTape.combine(outputFingerprint, format.ordinal());
+    }
+
+    @Override
+    public String getScreenType() {
+        JsonElement screen = snapshot.get(BuiltinTools.GET_SCREEN);
+        if (screen == null || !screen.isJsonObject() || !screen.getAsJsonObject().has("screen_type")) {
+            return null;
+        }
+        return screen.getAsJsonObject().get("screen_type").getAsString();
+    }
+
+    // Encoded like GameStateReader, so payload sizes match the game
+    @Override
+    public void setStateFormat(StateFormat format) {
+        this.format = format;
+    }
+
+    @Override
+    public StateFormat getStateFormat() {
+        return format;
+    }
+
+    private String output(String tool) {
+        return output(tool, format);
+    }
+
+    private String output(String tool, StateFormat format) {
+        JsonElement value = snapshot.get(tool);
+        if (value == null) {
+            return "{\"error\": \"Not recorded\"}";
+        }
+        return value.isJsonPrimitive() ? value.getAsString() : StateEncoder.encode(value, format);
+    }
+
+    /**
+     * Rebuild a planner model from get_combat_state output. Pile contents are not
+     * recorded, so only the hand is known; rollouts recycle it through the discard pile.
+     */
+    private static CombatModel toCombatModel(JsonObject state) {
+        JsonArray hand = state.has("hand") ? state.getAsJsonArray("hand") : new JsonArray();
+        int n = hand.size();
+        String[] cardNames = new String[n];
+        int[] cardCost = new int[n];
+        int[] cardDamage = new int[n];
+        int[] cardBlock = new int[n];
+        int[] cardFlags = new int[n];
+        String[] cardHandles = new String[n];
+        int[] handIds = new int[n];
+        for (int i = 0; i < n; i++) {
+            JsonObject card = hand.get(i).getAsJsonObject();
+            cardNames[i] = card.get("name").getAsString();
+            cardCost[i] = card.get("cost").getAsInt();
+            cardDamage[i] = card.has("damage") ? card.get("damage").getAsInt() : 0;
+            cardBlock[i] = card.has("block") ? card.get("block").getAsInt() : 0;
+            int flags = 0;
+            if (card.has("damage")) flags |= CombatModel.FLAG_ATTACK;  // Only attacks report damage
+            if (cardCost[i] == -2) flags |= CombatModel.FLAG_UNPLAYABLE;
+            if (cardCost[i] == -1) flags |= CombatModel.FLAG_X_COST;
+            cardFlags[i] = flags;
+            cardHandles[i] = card.has("id") ? card.get("id").getAsString() : null;
+            handIds[i] = i;
+        }
+
+        JsonArray enemies = state.has("enemies") ? state.getAsJsonArray("enemies") : new JsonArray();
+        int e = enemies.size();
+        String[] enemyNames = new String[e];
+        int[] enemyIds = new int[e];
+        int[] enemyHp = new int[e];
+        int[] enemyBlock = new int[e];
+        int[] intentDamage = new int[e];
+        int[] intentHits = new int[e];
+        for (int i = 0; i < e; i++) {
+            JsonObject enemy = enemies.get(i).getAsJsonObject();
+            enemyNames[i] = enemy.get("name").getAsString();
+            int id = enemy.has("id") ? Handles.enemyId(enemy.get("id").getAsString()) : -1;
+            enemyIds[i] = id >= 0 ? id : i;
+            enemyHp[i] = first(enemy.get("hp").getAsString());
+            enemyBlock[i] = enemy.has("block") ? enemy.get("block").getAsInt() : 0;
+            String intent = enemy.has("intent") ? enemy.get("intent").getAsString() : "";
+            if (intent.startsWith("Attack ")) {
+                String amount = intent.substring(7).split(" ")[0];
+                String[] parts = amount.split("x");
+                intentDamage[i] = Integer.parseInt(parts[0]);
+                intentHits[i] = parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+            }
+        }
+
+        String[] energy = state.get("energy").getAsString().split("/");
+        return new CombatModel(
+                first(state.get("player_hp").getAsString()),
+                state.has("player_block") ? state.get("player_block").getAsInt() : 0,
+                Integer.parseInt(energy[0]), Integer.parseInt(energy[1]), 5,
+                cardNames, cardCost, cardDamage, cardBlock, cardFlags, cardHandles,
+                handIds, new int[0], new int[0],
+                enemyNames, enemyIds, enemyHp, enemyBlock, intentDamage, intentHits
+        );
+    }
+
+    /**
+     * Recorded combat state with the derived metrics GameStateReader writes, in the same
+     * places, for corpora recorded before it wrote them.
+     */
+    private static JsonObject withMetrics(JsonObject state, CombatModel model) {
+        JsonArray enemies = state.has("enemies") ? state.getAsJsonArray("enemies") : new JsonArray();
+        boolean[] vulnerable = new boolean[enemies.size()];
+        for (int i = 0; i < vulnerable.length; i++) {
+            JsonObject enemy = enemies.get(i).getAsJsonObject();
+            if (enemy.has("powers")) {
+                for (JsonElement power : enemy.getAsJsonArray("powers")) {
+                    vulnerable[i] |= power.getAsString().startsWith("Vulnerable");
+                }
+            }
+        }
+        CombatMetrics metrics = CombatMetrics.of(model, vulnerable);
+
+        String after = state.has("player_block") ? "player_block" : "player_hp";
+        JsonObject result = new JsonObject();
+        for (Map.Entry<String, JsonElement> entry : state.entrySet()) {
+            if (entry.getKey().equals("enemies")) {
+                JsonArray list = new JsonArray();
+                for (int i = 0; i < enemies.size(); i++) {
+                    list.add(withEnemyMetrics(enemies.get(i).getAsJsonObject(), model, metrics, i));
+                }
+                result.add("enemies", list);
+                continue;
+            }
+            result.add(entry.getKey(), entry.getValue());
+            if (entry.getKey().equals(after)) {
+                result.addProperty("incoming", metrics.incoming);
+                result.addProperty("block_shortfall", metrics.blockShortfall);
+            }
+        }
+        return result;
+    }
+
+    private static JsonObject withEnemyMetrics(JsonObject enemy, CombatModel model, CombatMetrics metrics, int i) {
+        JsonObject result = new JsonObject();
+        boolean added = false;
+        for (Map.Entry<String, JsonElement> entry : enemy.entrySet()) {
+            if (!added && entry.getKey().equals("powers")) {
+                addEnemyMetrics(result, model, metrics, i);
+                added = true;
+            }
+            result.add(entry.getKey(), entry.getValue());
+        }
+        if (!added) {
+            addEnemyMetrics(result, model, metrics, i);
+        }
+        return result;
+    }
+
+    private static void addEnemyMetrics(JsonObject enemy, CombatModel model, CombatMetrics metrics, int i) {
+        if (model.enemyIntentHits[i] > 1) {
+            enemy.addProperty("incoming", metrics.enemyIncoming[i]);
+        }
+        if (metrics.lethal[i]) {
+            enemy.addProperty("lethal", true);
+        }
+    }
+
+    private static int first(String fraction) {
+        return Integer.parseInt(fraction.split("/")[0].trim());
+    }
+}
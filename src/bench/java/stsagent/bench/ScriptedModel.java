@@ -0,0 +1,204 @@
+package stsagent.bench;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import stsagent.agent.PlanExecutor;
+import stsagent.llm.ChatModel;
+import stsagent.llm.LLMClient;
+import stsagent.llm.LLMMessage;
+import stsagent.llm.ToolSet;
+import stsagent.mcp.MCPClient;
+import stsagent.tools.BuiltinTools;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Deterministic stand-in for a model, shaped like a typical agent turn:
+ * read the state, act once, then say done. Token counts are estimated from
+ * request and response sizes (4 characters per token).
+ */
+public class ScriptedModel implements ChatModel {
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private final long latencyMs;
+    private final boolean repeatReads;
+    private int callId = 0;
+
+    public ScriptedModel(long latencyMs) {
+        this(latencyMs, false);
+    }
+
+    /**
+     * @param repeatReads Read the screen again before acting, as models often do
+     */
+    public ScriptedModel(long latencyMs, boolean repeatReads) {
+        this.latencyMs = latencyMs;
+        this.repeatReads = repeatReads;
+    }
+
+    @Override
+    public String chat(List<LLMMessage> messages) {
+        sleep();
+        return "Summary of earlier turns.";
+    }
+
+    @Override
+    public LLMClient.ChatResponse chatWithTools(List<LLMMessage> messages, ToolSet tools) {
+        sleep();
+        int promptChars = tools.getDefinitions().toString().length();
+        for (LLMMessage msg : messages) {
+            promptChars += msg.toJson().toString().length();
+        }
+
+        List<LLMClient.ToolCall> calls = nextCalls(messages, tools);
+        String content = calls.isEmpty() ? "done" : null;
+
+        int completionChars = content != null ? content.length() : 0;
+        for (LLMClient.ToolCall call : calls) {
+            completionChars += call.name.length() + call.arguments.toString().length();
+        }
+        return new LLMClient.ChatResponse(content, calls, calls.isEmpty() ? "stop" : "tool_calls",
+                promptChars / CHARS_PER_TOKEN, Math.max(1, completionChars / CHARS_PER_TOKEN));
+    }
+
+    private List<LLMClient.ToolCall> nextCalls(List<LLMMessage> messages, ToolSet tools) {
+        // Only look at the current loop (after the last user message)
+        int start = 0;
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if ("user".equals(messages.get(i).getRole())) {
+                start = i;
+                break;
+            }
+        }
+        LLMMessage prompt = messages.get(start);
+
+        boolean readState = false;
+        boolean acted = false;
+        JsonObject combat = null;
+        for (int i = start + 1; i < messages.size(); i++) {
+            LLMMessage msg = messages.get(i);
+            if (msg.getToolCalls() != null) {
+                for (LLMClient.ToolCall call : msg.getToolCalls()) {
+                    if (isActionTool(call.name)) acted = true;
+                    else readState = true;
+                }
+            } else if ("tool".equals(msg.getRole()) && combat == null) {
+                combat = findCombatState(msg.getContent());
+            }
+        }
+        if (acted) {
+            return Collections.emptyList();
+        }
+
+        // Plan mode hands the state over in the prompt
+        if (tools.has(PlanExecutor.SUBMIT_PLAN)) {
+            JsonObject state = findCombatState(prompt.getContent());
+            JsonObject args = new JsonObject();
+            args.add("steps", turnActions(state));
+            return Collections.singletonList(call(PlanExecutor.SUBMIT_PLAN, args));
+        }
+
+        if (!readState) {
+            List<LLMClient.ToolCall> calls = new ArrayList<>();
+            calls.add(call(BuiltinTools.GET_SCREEN, new JsonObject()));
+            if (tools.has(BuiltinTools.GET_COMBAT_STATE)) {
+                calls.add(call(BuiltinTools.GET_COMBAT_STATE, new JsonObject()));
+            }
+            return calls;
+        }
+
+        if (tools.has(MCPClient.EXECUTE_ACTIONS)) {
+            List<LLMClient.ToolCall> calls = new ArrayList<>();
+            if (repeatReads) {
+                calls.add(call(BuiltinTools.GET_SCREEN, new JsonObject()));
+            }
+            JsonObject args = new JsonObject();
+            args.add("actions", turnActions(combat));
+            calls.add(call(MCPClient.EXECUTE_ACTIONS, args));
+            return calls;
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Play every affordable card in hand order, then end the turn.
+     * Outside combat, pick the first choice.
+     */
+    private JsonArray turnActions(JsonObject combat) {
+        JsonArray actions = new JsonArray();
+        if (combat == null || !combat.has("hand")) {
+            JsonObject choose = new JsonObject();
+            choose.addProperty("action", "choose");
+            choose.addProperty("choice_index", 1);
+            actions.add(choose);
+            return actions;
+        }
+
+        int energy = Integer.parseInt(combat.get("energy").getAsString().split("/")[0]);
+        for (JsonElement elem : combat.getAsJsonArray("hand")) {
+            JsonObject card = elem.getAsJsonObject();
+            int cost = card.get("cost").getAsInt();
+            if (!card.get("playable").getAsBoolean() || cost < 0 || cost > energy) continue;
+            energy -= cost;
+
+            JsonObject play = new JsonObject();
+            play.addProperty("action", "play_card");
+            if (card.has("id")) {
+                play.addProperty("card_id", card.get("id").getAsString());
+            } else {
+                play.addProperty("card_name", card.get("name").getAsString());
+            }
+            if (card.has("needs_target")) {
+                play.addProperty("target_index", 1);
+            }
+            actions.add(play);
+        }
+        JsonObject endTurn = new JsonObject();
+        endTurn.addProperty("action", "end_turn");
+        actions.add(endTurn);
+        return actions;
+    }
+
+    private LLMClient.ToolCall call(String name, JsonObject args) {
+        return new LLMClient.ToolCall("call_" + (++callId), name, args);
+    }
+
+    private static boolean isActionTool(String name) {
+        return MCPClient.EXECUTE_ACTIONS.equals(name) || PlanExecutor.SUBMIT_PLAN.equals(name);
+    }
+
+    /**
+     * Find the first JSON object with a "hand" field in a tool result or prompt.
+     */
+    private static JsonObject findCombatState(String text) {
+        if (text == null) return null;
+        int from = 0;
+        while ((from = text.indexOf('{', from)) >= 0) {
+            try {
+                JsonReader reader = new JsonReader(new StringReader(text.substring(from)));
+                reader.setLenient(true);
+                JsonElement elem = new JsonParser().parse(reader);
+                if (elem.isJsonObject() && elem.getAsJsonObject().has("hand")) {
+                    return elem.getAsJsonObject();
+                }
+            } catch (Exception ignored) {}
+            from++;
+        }
+        return null;
+    }
+
+    private void sleep() {
+        if (latencyMs <= 0) return;
+        try {
+            Thread.sleep(latencyMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
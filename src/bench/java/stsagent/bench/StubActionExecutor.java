@@ -0,0 +1,23 @@
+package stsagent.bench;
+
+import com.google.gson.JsonArray;
+import stsagent.mcp.ActionExecutor;
+import stsagent.mcp.MCPClient;
+
+/**
+ * Accepts every action batch without touching a game.
+ */
+public class StubActionExecutor implements ActionExecutor {
+    private long batches;
+    private long actions;
+
+    @Override
+    public synchronized MCPClient.ToolResult executeActions(JsonArray batch) {
+        batches++;
+        actions += batch.size();
+        return MCPClient.ToolResult.success("Executed " + batch.size() + " action(s)");
+    }
+
+    public synchronized long getBatches() { return batches; }
+    public synchronized long getActions() { return actions; }
+}
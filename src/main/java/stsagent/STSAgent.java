@@ -15,10 +15,28 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import stsagent.agent.Agent;
 import stsagent.config.AgentConfig;
+import stsagent.config.SpireAgentConfig;
+import stsagent.llm.ChatModel;
 import stsagent.llm.LLMClient;
+import stsagent.llm.RecordingChatModel;
+import stsagent.llm.ReplayChatModel;
+import stsagent.mcp.ActionExecutor;
 import stsagent.mcp.MCPClient;
+import stsagent.mcp.RoutingActionExecutor;
+import stsagent.planner.MonteCarloPlanner;
+import stsagent.planner.RoutePlanner;
+import stsagent.tools.BuiltinTools;
+import stsagent.tools.GameActionExecutor;
+import stsagent.tools.GameCatalog;
+import stsagent.tools.GameFields;
+import stsagent.tools.GameStateReader;
 import stsagent.ui.ChatOverlay;
 
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
 /**
  * STS Agent - AI Assistant mod for Slay the Spire.
  *
@@ -36,14 +54,16 @@ public class STSAgent implements PostInitializeSubscriber, PostUpdateSubscriber,
 
     private static final Logger logger = LogManager.getLogger(STSAgent.class);
     public static final String MOD_ID = "stsagent";
+    private static final String TRACE_DIR = "preferences/STSAgent/traces";
 
     private static STSAgent instance;
 
     private AgentConfig config;
-    private LLMClient llmClient;
+    private ChatModel llmClient;
     private MCPClient mcpClient;
     private Agent agent;
     private ChatOverlay chatOverlay;
+    private GameStateReader reader;
 
     private String statusMessage = "Initializing...";
 
@@ -61,20 +81,34 @@ public class STSAgent implements PostInitializeSubscriber, PostUpdateSubscriber,
         logger.info("Post-initialize: Setting up STS Agent");
 
         // Load configuration
-        config = new AgentConfig();
+        config = new SpireAgentConfig();
+
+        // Resolve private game fields now so a renamed field shows up at startup
+        GameFields.verify();
+        GameCatalog.build();
 
         // Initialize LLM client
-        llmClient = new LLMClient(
-                config.getLlmApiKey(),
-                config.getLlmBaseUrl(),
-                config.getLlmModel()
-        );
+        llmClient = createChatModel();
 
         // Initialize MCP client
         mcpClient = new MCPClient(config.getMcpServerUrl());
 
+        // Initialize builtin tools (read game state directly)
+        reader = new GameStateReader();
+        BuiltinTools builtinTools = new BuiltinTools(
+                reader,
+                new MonteCarloPlanner(config.getPlannerTimeBudgetMs()),
+                new RoutePlanner(config.getRouteWeights())
+        );
+
+        // Combat actions run in-process, everything else through MCP
+        GameActionExecutor gameActions = new GameActionExecutor(reader);
+        ActionExecutor actions = new RoutingActionExecutor(
+                gameActions, gameActions::supports, mcpClient, config.isLocalActions());
+
         // Initialize unified agent
-        agent = new Agent(llmClient, mcpClient, config);
+        agent = new Agent(llmClient, mcpClient, actions, builtinTools, config);
+        agent.getMcpMonitor().start();
 
         // Initialize chat overlay
         chatOverlay = new ChatOverlay(agent);
@@ -95,6 +129,48 @@ public class STSAgent implements PostInitializeSubscriber, PostUpdateSubscriber,
                 config.getToggleKeyName(), config.getAnalyzeKeyName());
     }
 
+    /**
+     * LLM client, wrapped for recording or replaced by a recorded trace per llm.trace.
+     */
+    private ChatModel createChatModel() {
+        LLMClient client = new LLMClient(
+                config.getLlmApiKey(),
+                config.getLlmBaseUrl(),
+                config.getLlmModel()
+        );
+
+        String mode = config.getLlmTrace();
+        String path = config.getLlmTraceFile();
+        try {
+            if ("record".equals(mode)) {
+                File file = path.isEmpty()
+                        ? new File(TRACE_DIR, "trace-" +
+                                   new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".jsonl.gz")
+                        : new File(path);
+                RecordingChatModel recorder = new RecordingChatModel(client, file);
+                // The game exits without closing mods; finish the gzip stream on the way out
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        recorder.close();
+                    } catch (IOException e) {
+                        logger.warn("Failed to close LLM trace {}", recorder.getFile(), e);
+                    }
+                }, "STSAgent-trace-close"));
+                return recorder;
+            }
+            if ("replay".equals(mode)) {
+                if (path.isEmpty()) {
+                    logger.warn("llm.trace=replay needs llm.traceFile, using the live API");
+                    return client;
+                }
+                return new ReplayChatModel(new File(path), config.isLlmReplayRealtime());
+            }
+        } catch (IOException e) {
+            logger.error("Failed to open LLM trace, using the live API", e);
+        }
+        return client;
+    }
+
     private void setUpOptionsMenu() {
         ModPanel settingsPanel = new ModPanel();
 
@@ -217,6 +293,9 @@ public class STSAgent implements PostInitializeSubscriber, PostUpdateSubscriber,
 
     @Override
     public void receivePostUpdate() {
+        if (reader != null) {
+            reader.onPostUpdate();
+        }
         if (chatOverlay != null) {
             chatOverlay.update();
         }
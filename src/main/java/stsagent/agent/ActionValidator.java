@@ -0,0 +1,340 @@
+package stsagent.agent;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import stsagent.planner.CombatModel;
+import stsagent.tools.GameStateSource;
+import stsagent.tools.Handles;
+import stsagent.tools.StateFormat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Checks an execute_actions batch against the current state before it is sent, so obvious
+ * mistakes come back to the model without a round trip to the game.
+ *
+ * Indices in a batch refer to the state when the batch starts, so cards are resolved
+ * against that hand and energy is counted down across the batch. card_name is resolved
+ * to the first matching card not already played in the batch and rewritten as card_index;
+ * a card_index that disagrees with card_name is corrected the same way. Stable handles
+ * (card_id, target_id from get_combat_state) are rewritten to indices too, so executors
+ * only ever see indices. A single enemy is filled in as target_index when an attack
+ * needs one.
+ */
+public class ActionValidator {
+
+    private static final Set<String> KNOWN_ACTIONS = new HashSet<>(Arrays.asList(
+            "play_card", "end_turn", "choose", "proceed", "skip", "cancel", "confirm",
+            "use_potion", "discard_potion", "select_cards"));
+
+    // Fields read as strings or ints; anything else gets a type error, not an exception
+    private static final String[] STRING_FIELDS = {"card_name", "card_id", "target_id"};
+    private static final String[] INT_FIELDS = {"card_index", "target_index", "potion_slot"};
+
+    private final GameStateSource reader;
+
+    public ActionValidator(GameStateSource reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Outcome of a validation: the batch to send, or why it can't be sent.
+     */
+    public static class Result {
+        public final JsonArray actions;      // Rewritten copy, null if invalid
+        public final String error;           // Null if valid
+        public final List<String> rewrites;  // Human-readable index fixes
+
+        private Result(JsonArray actions, String error, List<String> rewrites) {
+            this.actions = actions;
+            this.error = error;
+            this.rewrites = rewrites;
+        }
+
+        public boolean isValid() {
+            return error == null;
+        }
+    }
+
+    public Result validate(JsonArray batch) {
+        JsonArray actions = batch.deepCopy();
+        List<String> rewrites = new ArrayList<>();
+
+        CombatModel combat = reader.getCombatModel();
+        Set<Integer> played = new HashSet<>();   // Hand positions
+        Set<Integer> usedPotions = new HashSet<>();
+        JsonArray potions = null;                // Read on first potion action
+        int energy = combat != null ? combat.energy : 0;
+        boolean turnEnded = false;
+
+        for (int i = 0; i < actions.size(); i++) {
+            String step = "Action " + (i + 1);
+            JsonElement elem = actions.get(i);
+            if (!elem.isJsonObject() || !elem.getAsJsonObject().has("action") ||
+                !elem.getAsJsonObject().get("action").isJsonPrimitive()) {
+                return invalid(step + " is not an action object");
+            }
+            JsonObject action = elem.getAsJsonObject();
+            String type = action.get("action").getAsString();
+            if (!KNOWN_ACTIONS.contains(type)) {
+                return invalid(step + ": unknown action '" + type + "'");
+            }
+            if (turnEnded && combat != null) {
+                return invalid(step + ": " + type + " after end_turn; send the next turn separately");
+            }
+            String typeError = checkFieldTypes(action);
+            if (typeError != null) {
+                return invalid(step + ": " + typeError);
+            }
+
+            String error = null;
+            switch (type) {
+                case "play_card":
+                    if (combat == null) {
+                        error = "play_card outside combat";
+                        break;
+                    }
+                    error = checkPlayCard(action, combat, played, energy, rewrites, i + 1);
+                    if (error == null) {
+                        int card = combat.hand[action.get("card_index").getAsInt() - 1];
+                        energy = combat.hasFlag(card, CombatModel.FLAG_X_COST)
+                                ? 0 : energy - Math.max(0, combat.cardCost[card]);
+                    }
+                    break;
+                case "end_turn":
+                    if (combat == null) {
+                        error = "end_turn outside combat";
+                    }
+                    turnEnded = true;
+                    break;
+                case "use_potion":
+                case "discard_potion":
+                    if (potions == null) {
+                        potions = readPotions();
+                    }
+                    error = checkPotion(action, "use_potion".equals(type), potions, usedPotions, combat);
+                    break;
+                default:
+                    // Screen actions depend on screen details the model reads itself
+                    break;
+            }
+            if (error != null) {
+                return invalid(step + ": " + error);
+            }
+        }
+        return new Result(actions, null, rewrites);
+    }
+
+    private String checkPlayCard(JsonObject action, CombatModel combat, Set<Integer> played,
+                                 int energy, List<String> rewrites, int step) {
+        Integer index = getInt(action, "card_index");
+        String name = getString(action, "card_name");
+        String handle = getString(action, "card_id");
+        if (index == null && name == null && handle == null) {
+            return "play_card needs card_id, card_index or card_name";
+        }
+
+        int pos;
+        if (handle != null) {
+            pos = combat.findInHandByHandle(handle);
+            if (pos < 0) {
+                return "card_id " + handle + " is not in hand (hand: " + describeHand(combat) + ")";
+            }
+            if (played.contains(pos)) {
+                return "card_id " + handle + " is already played in this batch";
+            }
+            action.remove("card_id");
+            action.remove("card_name");
+            action.addProperty("card_index", pos + 1);
+        } else if (name != null) {
+            pos = findUnplayed(combat, name, played, index);
+            if (pos < 0) {
+                return "no " + name + " left in hand (hand: " + describeHand(combat) + ")";
+            }
+            if (index == null || index != pos + 1) {
+                rewrites.add("action " + step + ": " + name + " -> card_index " + (pos + 1));
+            }
+            action.remove("card_name");
+            action.addProperty("card_index", pos + 1);
+        } else {
+            pos = index - 1;
+            if (pos < 0 || pos >= combat.hand.length) {
+                return "card_index " + index + " out of range (hand: " + describeHand(combat) + ")";
+            }
+            if (played.contains(pos)) {
+                return "card_index " + index + " is already played in this batch " +
+                       "(indices refer to the hand before the batch)";
+            }
+        }
+
+        int card = combat.hand[pos];
+        String cardName = combat.cardNames[card];
+        if (combat.hasFlag(card, CombatModel.FLAG_UNPLAYABLE)) {
+            return cardName + " is unplayable";
+        }
+        if (!combat.isPlayable(card, energy)) {
+            return cardName + " costs " + combat.cardCost[card] + " but only " + energy +
+                   " energy is left (energy gained by earlier cards isn't counted; split the batch)";
+        }
+
+        String error = resolveTarget(action, combat);
+        if (error != null) {
+            return error;
+        }
+        Integer target = getInt(action, "target_index");
+        int enemies = combat.getEnemyCount();
+        if (target != null) {
+            if (target < 1 || target > enemies) {
+                return "target_index " + target + " out of range (" + enemies + " enemies)";
+            }
+        } else if (combat.hasFlag(card, CombatModel.FLAG_ATTACK) &&
+                   !combat.hasFlag(card, CombatModel.FLAG_AOE)) {
+            if (enemies > 1) {
+                return cardName + " needs target_index (1-" + enemies + ")";
+            }
+            if (enemies == 1) {
+                action.addProperty("target_index", 1);
+                rewrites.add("action " + step + ": " + cardName + " -> target_index 1");
+            }
+        }
+
+        played.add(pos);
+        return null;
+    }
+
+    /**
+     * Rewrite target_id to the enemy's current target_index.
+     */
+    private static String resolveTarget(JsonObject action, CombatModel combat) {
+        String handle = getString(action, "target_id");
+        if (handle == null) return null;
+        int enemy = combat.findEnemyById(Handles.enemyId(handle));
+        if (enemy < 0) {
+            return "target_id " + handle + " is not a living enemy";
+        }
+        action.remove("target_id");
+        action.addProperty("target_index", enemy + 1);
+        return null;
+    }
+
+    /**
+     * Hand position for a card name, preferring the given 1-based index if it holds that card.
+     */
+    private static int findUnplayed(CombatModel combat, String name, Set<Integer> played, Integer index) {
+        if (index != null && index >= 1 && index <= combat.hand.length && !played.contains(index - 1) &&
+            combat.cardNames[combat.hand[index - 1]].equalsIgnoreCase(name)) {
+            return index - 1;
+        }
+        for (int pos = 0; pos < combat.hand.length; pos++) {
+            if (!played.contains(pos) && combat.cardNames[combat.hand[pos]].equalsIgnoreCase(name)) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    private static String checkPotion(JsonObject action, boolean use, JsonArray potions,
+                                      Set<Integer> used, CombatModel combat) {
+        if (potions == null) {
+            return null;  // Potions unreadable, let the game decide
+        }
+        Integer slot = getInt(action, "potion_slot");
+        if (slot == null) {
+            return "potion_slot required";
+        }
+        if (slot < 1 || slot > potions.size()) {
+            return "potion_slot " + slot + " out of range (" + potions.size() + " slots)";
+        }
+        JsonObject potion = potions.get(slot - 1).getAsJsonObject();
+        if (isTrue(potion, "empty") || used.contains(slot)) {
+            return "potion slot " + slot + " is empty";
+        }
+        String name = potion.has("name") ? potion.get("name").getAsString() : "Potion";
+        if (use) {
+            if (potion.has("can_use") && !isTrue(potion, "can_use")) {
+                return name + " can't be used now";
+            }
+            if (combat != null) {
+                String error = resolveTarget(action, combat);
+                if (error != null) return error;
+            }
+            if (isTrue(potion, "requires_target") && getInt(action, "target_index") == null &&
+                combat != null && combat.getEnemyCount() > 1) {
+                return name + " needs target_index";
+            }
+        }
+        used.add(slot);
+        return null;
+    }
+
+    private JsonArray readPotions() {
+        try {
+            JsonObject state = new JsonParser().parse(reader.getPotions(StateFormat.MINIFIED)).getAsJsonObject();
+            return state.has("potions") ? state.getAsJsonArray("potions") : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String describeHand(CombatModel combat) {
+        StringBuilder sb = new StringBuilder();
+        for (int pos = 0; pos < combat.hand.length; pos++) {
+            if (pos > 0) sb.append(", ");
+            int card = combat.hand[pos];
+            sb.append(pos + 1).append('=').append(combat.cardNames[card]);
+            if (combat.cardHandles[card] != null) {
+                sb.append(' ').append(combat.cardHandles[card]);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Type error for the first field of an action that isn't a string or int where one is
+     * expected (null, an object, an array), or null if they all are.
+     */
+    static String checkFieldTypes(JsonObject action) {
+        for (String key : STRING_FIELDS) {
+            JsonElement value = action.get(key);
+            if (value != null && !value.isJsonPrimitive()) {
+                return key + " must be a string";
+            }
+        }
+        for (String key : INT_FIELDS) {
+            if (action.has(key) && getInt(action, key) == null) {
+                return key + " must be a number";
+            }
+        }
+        return null;
+    }
+
+    private static String getString(JsonObject action, String key) {
+        JsonElement value = action.get(key);
+        return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+    }
+
+    private static Integer getInt(JsonObject action, String key) {
+        JsonElement value = action.get(key);
+        if (value == null || !value.isJsonPrimitive()) return null;
+        try {
+            return value.getAsInt();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static boolean isTrue(JsonObject obj, String key) {
+        JsonElement value = obj.get(key);
+        return value != null && value.isJsonPrimitive() && value.getAsBoolean();
+    }
+
+    private static Result invalid(String error) {
+        return new Result(null, error, new ArrayList<>());
+    }
+}
@@ -5,13 +5,31 @@ import com.google.gson.JsonObject;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import stsagent.config.AgentConfig;
+import stsagent.llm.ChatModel;
 import stsagent.llm.LLMClient;
 import stsagent.llm.LLMMessage;
+import stsagent.llm.ToolSet;
+import stsagent.mcp.ActionExecutor;
 import stsagent.mcp.MCPClient;
+import stsagent.mcp.MCPHealthMonitor;
 import stsagent.tools.BuiltinTools;
-
+import stsagent.tools.GameStateSource;
+import stsagent.tools.StateEncoder;
+import stsagent.tools.ToolMemo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
@@ -27,11 +45,24 @@ public class Agent {
     private static final int MAX_HISTORY_MESSAGES = 16;  // Trigger summarization threshold
     private static final int KEEP_RECENT_MESSAGES = 4;   // Keep recent messages after summarization
 
-    private final LLMClient llmClient;
+    // Max wait for the game to report back after an action (only with an MCP event stream)
+    private static final long ACTION_EVENT_WAIT_MS = 2000;
+    private static final long ACTION_SETTLE_TIMEOUT_MS = 15000;  // Covers the enemy turn after end_turn
+
+    private final ChatModel llmClient;
     private final MCPClient mcpClient;
+    private final MCPHealthMonitor mcpMonitor;
+    private final GameEventWaiter gameEvents = new GameEventWaiter();
+    private final ActionExecutor rawActionExecutor;
+    private final ActionExecutor actionExecutor;  // rawActionExecutor + wait for the game's event
     private final BuiltinTools builtinTools;
+    private final PlanExecutor planExecutor;
+    private final ActionValidator actionValidator;
     private final AgentConfig config;
 
+    private final Map<Mode, CachedToolList> toolListCache = new EnumMap<>(Mode.class);
+    private final Object toolListLock = new Object();
+
     // Persistent chat history (thread-safe access via synchronized)
     private final List<LLMMessage> chatHistory = new ArrayList<>();
     private String historySummary = null;  // Summarized history
@@ -40,11 +71,72 @@ public class Agent {
     private volatile boolean running = false;
     private volatile boolean stopRequested = false;
 
-    public Agent(LLMClient llmClient, MCPClient mcpClient, AgentConfig config) {
+    public Agent(ChatModel llmClient, MCPClient mcpClient, BuiltinTools builtinTools, AgentConfig config) {
+        this(llmClient, mcpClient, mcpClient, builtinTools, config);
+    }
+
+    /**
+     * @param actionExecutor Runs execute_actions batches (MCPClient in game, a stub when headless)
+     */
+    public Agent(ChatModel llmClient, MCPClient mcpClient, ActionExecutor actionExecutor,
+                 BuiltinTools builtinTools, AgentConfig config) {
         this.llmClient = llmClient;
         this.mcpClient = mcpClient;
-        this.builtinTools = new BuiltinTools();
+        this.mcpMonitor = new MCPHealthMonitor(mcpClient);
+        this.rawActionExecutor = actionExecutor;
+        this.actionExecutor = this::executeAndAwait;
+        this.builtinTools = builtinTools;
+        this.planExecutor = new PlanExecutor(this.actionExecutor, builtinTools.getReader());
+        this.actionValidator = new ActionValidator(builtinTools.getReader());
         this.config = config;
+
+        mcpClient.addNotificationListener(gameEvents);
+    }
+
+    /**
+     * Run actions, then wait until the game has settled so the next state read sees their
+     * effect: first for the server's game event (if it pushes events), then for the action
+     * queue to drain. Executors that already return settled skip both. The executor is told
+     * the time from sending to settled, the same span whichever path ran the batch.
+     */
+    private MCPClient.ToolResult executeAndAwait(JsonArray actions) {
+        long start = System.nanoTime();
+        long mark = gameEvents.mark();
+        boolean settled = rawActionExecutor.awaitsSettle(actions);
+        MCPClient.ToolResult result = rawActionExecutor.executeActions(actions);
+        GameStateSource reader = builtinTools.getReader();
+        if (result.success && !settled) {
+            if (mcpClient.isEventStreamConnected() && !gameEvents.awaitAfter(mark, ACTION_EVENT_WAIT_MS)) {
+                logger.debug("No game event within {} ms after actions", ACTION_EVENT_WAIT_MS);
+            }
+            if (!reader.awaitSettled(ACTION_SETTLE_TIMEOUT_MS)) {
+                logger.debug("Game not settled within {} ms after actions", ACTION_SETTLE_TIMEOUT_MS);
+            }
+        }
+        reader.invalidate();
+        rawActionExecutor.recordLatency(actions, System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Executor the agent sends action batches to, before waiting for game events.
+     */
+    public ActionExecutor getActionExecutor() {
+        return rawActionExecutor;
+    }
+
+    /**
+     * Source the state tools read from.
+     */
+    public GameStateSource getStateReader() {
+        return builtinTools.getReader();
+    }
+
+    /**
+     * Background MCP health monitor. Started by the mod; headless runs leave it idle.
+     */
+    public MCPHealthMonitor getMcpMonitor() {
+        return mcpMonitor;
     }
 
     public boolean isRunning() {
@@ -87,9 +179,13 @@ public class Agent {
         synchronized (this) {
             if (!checkReady(onOutput, onComplete)) return;
 
-            // Check MCP availability for play mode
-            if (!mcpClient.isAvailable()) {
-                onOutput.accept("MCP server not available. Start MCPTheSpire first!");
+            // Check MCP availability for play mode (cached, never blocks the render thread)
+            if (!mcpMonitor.isConnected()) {
+                MCPHealthMonitor.Status status = mcpMonitor.getStatus();
+                mcpMonitor.requestCheck();
+                onOutput.accept(status == MCPHealthMonitor.Status.UNKNOWN
+                        ? "Checking MCP server, try again in a moment."
+                        : "MCP server not available. Start MCPTheSpire first!");
                 onComplete.run();
                 return;
             }
@@ -149,15 +245,22 @@ public class Agent {
         return true;
     }
 
-    private enum Mode {
+    public enum Mode {
         ANALYZE,  // Read-only analysis
         PLAY,     // Full REACT loop with actions
         CHAT      // Answer questions
     }
 
-    private void runLoop(Mode mode, String userInput, Consumer<String> onOutput) {
-        // Build tool list
-        JsonArray tools = buildToolList(mode);
+    /**
+     * Run the REACT loop synchronously on the calling thread.
+     * analyze/play/chat wrap this; benchmarks call it directly.
+     */
+    public RunStats runLoop(Mode mode, String userInput, Consumer<String> onOutput) {
+        RunStats stats = new RunStats();
+        long startTime = System.nanoTime();
+        ToolMemo memo = new ToolMemo();
+
+        builtinTools.getReader().setStateFormat(config.getStateFormat());
 
         // Build messages based on mode (all modes include history for context)
         List<LLMMessage> messages = new ArrayList<>();
@@ -184,8 +287,10 @@ public class Agent {
             iterations++;
 
             try {
-                // Call LLM with tools
+                // Call LLM with the tools for the mode and, after any actions, the new screen
+                ToolSet tools = buildToolSet(mode);
                 LLMClient.ChatResponse response = llmClient.chatWithTools(messages, tools);
+                stats.addUsage(response.promptTokens, response.completionTokens);
 
                 // Output content
                 if (response.content != null && !response.content.isEmpty()) {
@@ -196,6 +301,7 @@ public class Agent {
                 // No tool calls = done
                 if (!response.hasToolCalls()) {
                     logger.info("Agent finished after {} iterations", iterations);
+                    stats.finished = true;
                     break;
                 }
 
@@ -203,8 +309,15 @@ public class Agent {
                 messages.add(LLMMessage.assistantWithToolCalls(response.toolCalls));
 
                 // Execute tool calls
-                for (LLMClient.ToolCall toolCall : response.toolCalls) {
-                    String result = executeToolCall(mode, toolCall, onOutput);
+                List<LLMClient.ToolCall> calls = response.toolCalls;
+                Map<Integer, CompletableFuture<MCPClient.ToolResult>> inFlight = new HashMap<>();
+                for (int i = 0; i < calls.size(); i++) {
+                    LLMClient.ToolCall toolCall = calls.get(i);
+                    if (mode == Mode.PLAY && !inFlight.containsKey(i)) {
+                        sendServerCalls(calls, i, inFlight);
+                    }
+                    stats.toolCalls++;
+                    String result = executeToolCall(mode, toolCall, memo, inFlight.remove(i), onOutput);
                     messages.add(LLMMessage.toolResponse(toolCall.id, result));
                 }
 
@@ -218,6 +331,13 @@ public class Agent {
         if (iterations >= MAX_ITERATIONS) {
             onOutput.accept("\n[Reached max iterations]");
         }
+        stats.iterations = iterations;
+        stats.repeatedToolCalls = memo.getRepeats();
+        stats.tokensSaved = memo.getTokensSaved();
+        if (memo.getRepeats() > 0) {
+            logger.info("{} of {} state tool calls repeated an unchanged result (~{} tokens saved)",
+                    memo.getRepeats(), memo.getCalls(), memo.getTokensSaved());
+        }
 
         // Save to history for continuity
         if (lastAssistantContent != null) {
@@ -248,6 +368,9 @@ public class Agent {
                 summarizeChatHistory();
             }
         }
+
+        stats.elapsedNanos = System.nanoTime() - startTime;
+        return stats;
     }
 
     /**
@@ -324,29 +447,77 @@ public class Agent {
         logger.info("Chat history cleared");
     }
 
-    private JsonArray buildToolList(Mode mode) {
-        JsonArray tools = new JsonArray();
-
-        // Always include builtin tools (state reading)
-        for (int i = 0; i < builtinTools.getToolDefinitions().size(); i++) {
-            tools.add(builtinTools.getToolDefinitions().get(i));
+    /**
+     * Tool set for a mode and, in Play mode, the current screen (see {@link ToolPolicy}).
+     * Each set is built and serialized once, then cached until the mode's inputs change
+     * (plan mode toggled, MCP tools re-listed), so requests on the same kind of screen
+     * send the same bytes.
+     */
+    private ToolSet buildToolSet(Mode mode) {
+        boolean planMode = config.isPlanMode();
+        JsonArray mcpTools = mode == Mode.PLAY && !planMode ? mcpClient.getToolDefinitions() : null;
+        ToolPolicy.Scope scope = ToolPolicy.Scope.ALL;
+        if (mode == Mode.PLAY && config.isToolsPerScreen()) {
+            GameStateSource reader = builtinTools.getReader();
+            scope = ToolPolicy.scopeOf(reader.isInCombat(), reader.getScreenType());
         }
 
-        // Only include execute_actions in PLAY mode
-        if (mode == Mode.PLAY) {
-            tools.add(mcpClient.getExecuteActionsTool());
+        synchronized (toolListLock) {
+            CachedToolList cached = toolListCache.get(mode);
+            if (cached == null || cached.planMode != planMode || cached.mcpTools != mcpTools) {
+                cached = new CachedToolList(planMode, mcpTools);
+                toolListCache.put(mode, cached);
+            }
+            ToolSet toolSet = cached.sets.get(scope);
+            if (toolSet != null) {
+                return toolSet;
+            }
+
+            JsonArray tools = new JsonArray();
+
+            // Builtin tools (state reading) relevant to the screen
+            tools.addAll(ToolPolicy.select(builtinTools.getToolDefinitions(), scope));
+
+            // Only include action tools in PLAY mode
+            if (mode == Mode.PLAY) {
+                if (planMode) {
+                    tools.add(planExecutor.getToolDefinition());
+                } else {
+                    tools.addAll(mcpTools);
+                }
+            }
+
+            toolSet = ToolSet.of(tools);
+            cached.sets.put(scope, toolSet);
+            return toolSet;
         }
+    }
+
+    private static class CachedToolList {
+        final boolean planMode;
+        final JsonArray mcpTools;  // Compared by identity
+        final Map<ToolPolicy.Scope, ToolSet> sets = new EnumMap<>(ToolPolicy.Scope.class);
 
-        return tools;
+        CachedToolList(boolean planMode, JsonArray mcpTools) {
+            this.planMode = planMode;
+            this.mcpTools = mcpTools;
+        }
     }
 
     private String buildSystemPrompt(Mode mode) {
         String basePrompt = config.getSystemPrompt();
+        String legend = StateEncoder.legend(config.getStateFormat());
+        if (legend != null) {
+            basePrompt += "\n\n" + legend;
+        }
 
         switch (mode) {
             case ANALYZE:
                 return basePrompt + "\n\n" + config.getAnalyzePrompt();
             case PLAY:
+                if (config.isPlanMode()) {
+                    return basePrompt + "\n\n" + config.getPlanPrompt();
+                }
                 return basePrompt + "\n\n" + config.getPlayPrompt();
             case CHAT:
             default:
@@ -360,6 +531,16 @@ public class Agent {
                 return "Analyze the current game state and provide strategic advice. " +
                        "Use the state query tools to understand the situation.";
             case PLAY:
+                if (config.isPlanMode()) {
+                    // Hand the state over up front so a turn costs a single LLM call
+                    String prompt = "Play the game. Current screen:\n" +
+                            builtinTools.execute(BuiltinTools.GET_SCREEN, null);
+                    if (builtinTools.getReader().isInCombat()) {
+                        prompt += "\n\nCurrent combat state:\n" +
+                                  builtinTools.execute(BuiltinTools.GET_COMBAT_STATE, null);
+                    }
+                    return prompt + "\n\nSubmit the plan for this turn with submit_plan.";
+                }
                 return "Play the game. First use state query tools to understand the situation, " +
                        "then use execute_actions to play. Say 'done' when finished.";
             case CHAT:
@@ -369,7 +550,37 @@ public class Agent {
         }
     }
 
-    private String executeToolCall(Mode mode, LLMClient.ToolCall toolCall, Consumer<String> onOutput) {
+    /**
+     * If the calls from {@code start} on begin with two or more calls to the MCP server's
+     * own tools, send them all now, so they are in flight together instead of one round trip
+     * each. Their results are added to {@code inFlight} by call position. A run stops at any
+     * other tool, so server calls never overtake an action sent before them.
+     */
+    private void sendServerCalls(List<LLMClient.ToolCall> calls, int start,
+                                 Map<Integer, CompletableFuture<MCPClient.ToolResult>> inFlight) {
+        int end = start;
+        while (end < calls.size() && isServerTool(calls.get(end).name)) {
+            end++;
+        }
+        if (end - start < 2) {
+            return;
+        }
+        for (int i = start; i < end; i++) {
+            LLMClient.ToolCall call = calls.get(i);
+            inFlight.put(i, mcpClient.callToolAsync(call.name, call.arguments));
+        }
+    }
+
+    private boolean isServerTool(String toolName) {
+        return !builtinTools.isBuiltinTool(toolName) && !PlanExecutor.SUBMIT_PLAN.equals(toolName) &&
+               !MCPClient.EXECUTE_ACTIONS.equals(toolName) && mcpClient.hasTool(toolName);
+    }
+
+    /**
+     * @param sent Result of the call if it was already sent by {@link #sendServerCalls}, or null
+     */
+    private String executeToolCall(Mode mode, LLMClient.ToolCall toolCall, ToolMemo memo,
+                                   CompletableFuture<MCPClient.ToolResult> sent, Consumer<String> onOutput) {
         String toolName = toolCall.name;
         JsonObject args = toolCall.arguments;
 
@@ -377,11 +588,23 @@ public class Agent {
 
         // Check if it's a builtin tool
         if (builtinTools.isBuiltinTool(toolName)) {
-            String result = builtinTools.execute(toolName, args);
+            String result = builtinTools.execute(toolName, args, memo, toolCall.id);
             logger.debug("Builtin tool result: {}", result);
             return result;
         }
 
+        // Whole-turn plan, executed and verified locally
+        if (PlanExecutor.SUBMIT_PLAN.equals(toolName)) {
+            if (mode != Mode.PLAY) {
+                return "{\"error\": \"Action execution only allowed in play mode\"}";
+            }
+            if (args.has("steps") && args.get("steps").isJsonArray()) {
+                onOutput.accept("\n[Executing plan...] ");
+                return planExecutor.execute(args.getAsJsonArray("steps"), onOutput);
+            }
+            return "{\"error\": \"Missing 'steps' parameter\"}";
+        }
+
         // MCP tool (execute_actions)
         if (MCPClient.EXECUTE_ACTIONS.equals(toolName)) {
             // In ANALYZE mode, block action execution
@@ -392,16 +615,41 @@ public class Agent {
             onOutput.accept("\n[Executing actions...] ");
 
             if (args.has("actions") && args.get("actions").isJsonArray()) {
-                JsonArray actions = args.getAsJsonArray("actions");
-                MCPClient.ToolResult result = mcpClient.executeActions(actions);
+                // Catch stale indices and missing targets before anything is sent
+                ActionValidator.Result check = actionValidator.validate(args.getAsJsonArray("actions"));
+                if (!check.isValid()) {
+                    String error = MCPClient.ToolResult.error(check.error).toString();
+                    onOutput.accept(error);
+                    return error;
+                }
+                for (String rewrite : check.rewrites) {
+                    logger.debug("Remapped {}", rewrite);
+                }
+
+                JsonArray actions = check.actions;
+                MCPClient.ToolResult result = actionExecutor.executeActions(actions);
                 String resultStr = result.toString();
                 onOutput.accept(resultStr);
-                return resultStr;
+                // The game has settled, so hand back its state instead of another read
+                GameStateSource reader = builtinTools.getReader();
+                return resultStr + "\n\nCurrent screen:\n" + reader.getScreen() +
+                       (reader.isInCombat() ? "\n\nCurrent combat state:\n" + reader.getCombatState() : "");
             } else {
                 return "{\"error\": \"Missing 'actions' parameter\"}";
             }
         }
 
+        // Other tools listed by the MCP server
+        if (mcpClient.hasTool(toolName)) {
+            if (mode != Mode.PLAY) {
+                return "{\"error\": \"MCP tools only allowed in play mode\"}";
+            }
+            MCPClient.ToolResult result = sent != null ? sent.join() : mcpClient.callTool(toolName, args);
+            String resultStr = result.toString();
+            onOutput.accept("\n[" + toolName + "] " + resultStr);
+            return resultStr;
+        }
+
         return "{\"error\": \"Unknown tool: " + toolName + "\"}";
     }
 
@@ -469,6 +717,23 @@ public class Agent {
         });
     }
 
+    /**
+     * Save the output of all state tools to a JSON file in dir.
+     * Snapshots form the corpus for the headless replay benchmark.
+     */
+    public File saveSnapshot(File dir) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        String name = "snapshot-" + new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date()) + ".json";
+        File file = new File(dir, name);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(builtinTools.captureSnapshot().toString());
+        }
+        logger.info("Snapshot saved to {}", file.getAbsolutePath());
+        return file;
+    }
+
     /**
      * Check if in game.
      */
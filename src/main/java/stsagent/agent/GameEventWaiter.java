@@ -0,0 +1,60 @@
+package stsagent.agent;
+
+import com.google.gson.JsonObject;
+import stsagent.mcp.MCPClient;
+import stsagent.mcp.MCPNotificationListener;
+
+/**
+ * Counts game events pushed by the MCP server so the agent can wait for the game to react
+ * instead of reading state right after sending an action.
+ *
+ * Usage: take {@link #mark()} before sending, then {@link #awaitAfter(long, long)}.
+ */
+public class GameEventWaiter implements MCPNotificationListener {
+    private final Object lock = new Object();
+    private long seq = 0;  // Guarded by lock
+
+    @Override
+    public void onNotification(String method, JsonObject params) {
+        if (!MCPClient.NOTIFY_STATE_CHANGED.equals(method) &&
+            !MCPClient.NOTIFY_ACTION_COMPLETED.equals(method) &&
+            !MCPClient.NOTIFY_SCREEN_CHANGED.equals(method)) {
+            return;
+        }
+        synchronized (lock) {
+            seq++;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Current event count, to pass to {@link #awaitAfter(long, long)}.
+     */
+    public long mark() {
+        synchronized (lock) {
+            return seq;
+        }
+    }
+
+    /**
+     * Wait until an event arrives after the given mark.
+     *
+     * @return True if an event arrived, false on timeout or interrupt
+     */
+    public boolean awaitAfter(long mark, long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (lock) {
+            while (seq <= mark) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return false;
+                try {
+                    lock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package stsagent.agent;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import stsagent.mcp.ActionExecutor;
+import stsagent.mcp.MCPClient;
+import stsagent.planner.CombatModel;
+import stsagent.tools.GameStateSource;
+import stsagent.tools.Handles;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Runs a whole-turn plan locally, one action at a time through the action executor.
+ *
+ * Before every step the expected state is checked against a fresh read of the game
+ * (card still in hand, enough energy, target still alive). Indices in the plan refer
+ * to the state when the plan was made; they are remapped to current positions before
+ * sending. The model is only consulted again when reality diverges from the plan.
+ */
+public class PlanExecutor {
+    private static final Logger logger = LogManager.getLogger(PlanExecutor.class);
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    public static final String SUBMIT_PLAN = "submit_plan";
+
+    private final ActionExecutor executor;
+    private final GameStateSource reader;
+
+    public PlanExecutor(ActionExecutor executor, GameStateSource reader) {
+        this.executor = executor;
+        this.reader = reader;
+    }
+
+    /**
+     * Execute plan steps until the plan finishes, a step fails, or the state diverges.
+     *
+     * @return Outcome for the model, including the state after execution
+     */
+    public String execute(JsonArray steps, Consumer<String> onOutput) {
+        // Snapshot at planning time, used to resolve the plan's indices
+        CombatModel planned = reader.getCombatModel();
+
+        List<String> results = new ArrayList<>();
+        String divergence = null;
+        int executed = 0;
+
+        for (JsonElement elem : steps) {
+            if (!elem.isJsonObject() || (elem.getAsJsonObject().has("action") &&
+                                         !elem.getAsJsonObject().get("action").isJsonPrimitive())) {
+                divergence = "Step " + (executed + 1) + " is not an action object";
+                break;
+            }
+            JsonObject step = elem.getAsJsonObject();
+            String typeError = ActionValidator.checkFieldTypes(step);
+            if (typeError != null) {
+                divergence = "Step " + (executed + 1) + ": " + typeError;
+                break;
+            }
+
+            JsonObject action = step.deepCopy();
+            divergence = verifyAndRemap(action, planned, reader.getCombatModel());
+            if (divergence != null) {
+                divergence = "Step " + (executed + 1) + ": " + divergence;
+                break;
+            }
+
+            JsonArray single = new JsonArray();
+            single.add(action);
+            MCPClient.ToolResult result = executor.executeActions(single);
+            onOutput.accept("\n" + describe(step) + ": " + result);
+            results.add(result.toString());
+            if (!result.success) {
+                divergence = "Step " + (executed + 1) + " failed: " + result.message;
+                break;
+            }
+            executed++;
+        }
+
+        logger.info("Plan executed {}/{} steps{}", executed, steps.size(),
+                divergence != null ? " (diverged: " + divergence + ")" : "");
+
+        Map<String, Object> outcome = new LinkedHashMap<>();
+        outcome.put("status", divergence == null ? "completed" : "diverged");
+        outcome.put("executed_steps", executed);
+        outcome.put("total_steps", steps.size());
+        if (divergence != null) {
+            outcome.put("divergence", divergence);
+        }
+        outcome.put("results", results);
+        return gson.toJson(outcome) + "\n\nCurrent screen:\n" + reader.getScreen() +
+               (reader.isInCombat() ? "\n\nCurrent combat state:\n" + reader.getCombatState() : "");
+    }
+
+    /**
+     * Check one step against the current state and rewrite its indices to current positions.
+     *
+     * @return Divergence reason, or null if the step can run
+     */
+    private String verifyAndRemap(JsonObject action, CombatModel planned, CombatModel current) {
+        String type = action.has("action") ? action.get("action").getAsString() : "";
+        if (!"play_card".equals(type)) {
+            if ("end_turn".equals(type) && current == null) {
+                return "end_turn planned but not in combat";
+            }
+            return null;
+        }
+
+        if (current == null) {
+            return "play_card planned but not in combat";
+        }
+
+        int pos;
+        String cardName;
+        if (action.has("card_id")) {
+            // A stable card_id names the exact card; it is either still in hand or gone
+            String handle = action.get("card_id").getAsString();
+            pos = current.findInHandByHandle(handle);
+            if (pos < 0) {
+                return "card " + handle + " is no longer in hand";
+            }
+            cardName = current.cardNames[current.hand[pos]];
+            action.remove("card_id");
+        } else {
+            // Resolve the card by name, falling back to the planned hand index
+            cardName = action.has("card_name") ? action.get("card_name").getAsString() : null;
+            if (cardName == null && action.has("card_index") && planned != null) {
+                int index = action.get("card_index").getAsInt() - 1;
+                if (index >= 0 && index < planned.hand.length) {
+                    cardName = planned.cardNames[planned.hand[index]];
+                }
+            }
+            if (cardName == null) {
+                return "play_card without a valid card_id, card_name or card_index";
+            }
+
+            pos = current.findInHand(cardName);
+            if (pos < 0) {
+                return cardName + " is no longer in hand";
+            }
+        }
+        int card = current.hand[pos];
+        if (!current.isPlayable(card, current.energy)) {
+            return cardName + " needs " + current.cardCost[card] + " energy, have " + current.energy;
+        }
+
+        action.remove("card_name");
+        action.addProperty("card_index", pos + 1);
+
+        if (action.has("target_id")) {
+            String handle = action.get("target_id").getAsString();
+            int now = current.findEnemyById(Handles.enemyId(handle));
+            if (now < 0) {
+                return "target " + handle + " is no longer alive";
+            }
+            action.remove("target_id");
+            action.addProperty("target_index", now + 1);
+        } else if (action.has("target_index")) {
+            int target = action.get("target_index").getAsInt() - 1;
+            if (planned == null || target < 0 || target >= planned.getEnemyCount()) {
+                return "Invalid target_index " + (target + 1);
+            }
+            int now = current.findEnemyById(planned.enemyIds[target]);
+            if (now < 0) {
+                return planned.enemyNames[target] + " (target " + (target + 1) + ") is no longer alive";
+            }
+            action.addProperty("target_index", now + 1);
+        } else if (current.hasFlag(card, CombatModel.FLAG_ATTACK) &&
+                   !current.hasFlag(card, CombatModel.FLAG_AOE) &&
+                   current.getEnemyCount() > 1) {
+            return cardName + " needs target_index";
+        }
+
+        return null;
+    }
+
+    private String describe(JsonObject step) {
+        String type = step.has("action") ? step.get("action").getAsString() : "?";
+        if (step.has("card_name")) return type + " " + step.get("card_name").getAsString();
+        if (step.has("card_id")) return type + " " + step.get("card_id").getAsString();
+        if (step.has("card_index")) return type + " #" + step.get("card_index").getAsInt();
+        return type;
+    }
+
+    /**
+     * Get the submit_plan tool definition in OpenAI format.
+     */
+    public JsonObject getToolDefinition() {
+        JsonObject tool = new JsonObject();
+        tool.addProperty("type", "function");
+
+        JsonObject function = new JsonObject();
+        function.addProperty("name", SUBMIT_PLAN);
+        function.addProperty("description",
+                "Submit the plan for the whole turn. Steps use the execute_actions vocabulary " +
+                "(play_card, end_turn, choose, proceed, skip, cancel, confirm, use_potion, " +
+                "discard_potion, select_cards) and run one by one. " +
+                "card_index/target_index refer to the state you planned from; they are remapped " +
+                "automatically as cards are played. card_id/target_id from get_combat_state also work. Execution stops and reports back if a card " +
+                "left the hand, energy runs short, a target died or an action fails. " +
+                "The result includes the new state, so plan the next turn directly from it."
+        );
+
+        JsonObject parameters = new JsonObject();
+        parameters.addProperty("type", "object");
+
+        JsonObject properties = new JsonObject();
+        JsonObject stepsParam = new JsonObject();
+        stepsParam.addProperty("type", "array");
+        stepsParam.addProperty("description",
+                "Ordered action objects. Example: [{\"action\":\"play_card\",\"card_name\":\"Bash\"," +
+                "\"target_index\":1},{\"action\":\"play_card\",\"card_name\":\"Defend\"},{\"action\":\"end_turn\"}]"
+        );
+        properties.add("steps", stepsParam);
+        parameters.add("properties", properties);
+
+        JsonArray required = new JsonArray();
+        required.add("steps");
+        parameters.add("required", required);
+
+        function.add("parameters", parameters);
+        tool.add("function", function);
+
+        return tool;
+    }
+}
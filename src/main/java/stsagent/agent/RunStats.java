@@ -0,0 +1,31 @@
+package stsagent.agent;
+
+/**
+ * Counters for one agent loop run (one decision).
+ */
+public class RunStats {
+    public int iterations;
+    public int toolCalls;
+    public int repeatedToolCalls;   // Builtin calls answered with the unchanged marker
+    public long tokensSaved;        // Estimated, by those markers
+    public long promptTokens;
+    public long completionTokens;
+    public boolean tokensReported;  // False if the backend reported no usage
+    public boolean finished;        // Model stopped calling tools on its own
+    public long elapsedNanos;
+
+    void addUsage(int prompt, int completion) {
+        if (prompt >= 0) {
+            promptTokens += prompt;
+            tokensReported = true;
+        }
+        if (completion >= 0) {
+            completionTokens += completion;
+            tokensReported = true;
+        }
+    }
+
+    public long getTotalTokens() {
+        return promptTokens + completionTokens;
+    }
+}
@@ -0,0 +1,108 @@
+package stsagent.agent;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import stsagent.tools.BuiltinTools;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Which builtin tools Play mode offers on each kind of screen.
+ *
+ * Tools that can't help with the current decision (get_combat_state on the map, get_map
+ * mid-combat) cost schema tokens in every request and invite calls that only use up
+ * iterations. The basics (game state, screen, catalog) are always offered. Screens the
+ * policy doesn't know get every tool. A model that calls a tool it wasn't offered still
+ * gets the result; the policy only trims what is advertised.
+ */
+public class ToolPolicy {
+
+    /**
+     * Kinds of screen with their own tool selection.
+     */
+    public enum Scope {
+        COMBAT,
+        MAP,
+        CARD_CHOICE,   // Card reward, boss relic, grid select
+        REWARD,        // Combat rewards
+        SHOP,
+        EVENT,         // Events and Neow
+        REST,
+        ALL
+    }
+
+    private static final String[] ALWAYS = {
+            BuiltinTools.GET_GAME_STATE, BuiltinTools.GET_SCREEN, BuiltinTools.LOOKUP_CATALOG};
+
+    /**
+     * Scope for the current state.
+     *
+     * @param screenType Screen type as get_screen reports it, or null if unknown
+     */
+    public static Scope scopeOf(boolean inCombat, String screenType) {
+        // Hand and grid selects during a fight are still combat decisions
+        if (inCombat) return Scope.COMBAT;
+        if (screenType == null) return Scope.ALL;
+        switch (screenType) {
+            case "MAP": return Scope.MAP;
+            case "CARD_REWARD":
+            case "BOSS_REWARD":
+            case "GRID": return Scope.CARD_CHOICE;
+            case "COMBAT_REWARD": return Scope.REWARD;
+            case "SHOP": return Scope.SHOP;
+            case "EVENT":
+            case "NEOW": return Scope.EVENT;
+            case "REST": return Scope.REST;
+            default: return Scope.ALL;
+        }
+    }
+
+    /**
+     * Names of the builtin tools offered in a scope, besides the ones always offered.
+     */
+    private static String[] toolsFor(Scope scope) {
+        switch (scope) {
+            case COMBAT:
+                return new String[]{BuiltinTools.GET_COMBAT_STATE, BuiltinTools.GET_POTIONS,
+                        BuiltinTools.GET_RELICS, BuiltinTools.SIMULATE_COMBAT};
+            case MAP:
+                return new String[]{BuiltinTools.GET_MAP, BuiltinTools.PLAN_ROUTE, BuiltinTools.GET_DECK,
+                        BuiltinTools.GET_RELICS, BuiltinTools.GET_POTIONS};
+            case CARD_CHOICE:
+                return new String[]{BuiltinTools.GET_DECK, BuiltinTools.GET_RELICS};
+            case REWARD:
+                return new String[]{BuiltinTools.GET_RELICS, BuiltinTools.GET_POTIONS};
+            case SHOP:
+            case EVENT:
+                return new String[]{BuiltinTools.GET_DECK, BuiltinTools.GET_RELICS, BuiltinTools.GET_POTIONS};
+            case REST:
+                return new String[]{BuiltinTools.GET_DECK, BuiltinTools.GET_RELICS, BuiltinTools.GET_MAP};
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * The builtin definitions offered in a scope, in their original order.
+     */
+    public static JsonArray select(JsonArray definitions, Scope scope) {
+        String[] tools = toolsFor(scope);
+        if (tools == null) {
+            return definitions;
+        }
+        Set<String> offered = new HashSet<>(Arrays.asList(ALWAYS));
+        offered.addAll(Arrays.asList(tools));
+
+        JsonArray selected = new JsonArray();
+        for (JsonElement tool : definitions) {
+            JsonObject function = tool.getAsJsonObject().getAsJsonObject("function");
+            if (function != null && offered.contains(function.get("name").getAsString())) {
+                selected.add(tool);
+            }
+        }
+        return selected;
+    }
+}
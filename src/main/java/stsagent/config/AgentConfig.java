@@ -1,45 +1,67 @@
 package stsagent.config;
 
-import com.badlogic.gdx.Input;
-import com.evacipated.cardcrawl.modthespire.lib.SpireConfig;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import stsagent.planner.RoutePlanner;
+import stsagent.tools.StateFormat;
 
-import java.io.IOException;
 import java.util.Properties;
 
 /**
  * Configuration for STS Agent.
+ *
+ * Holds values and defaults only, with no game dependencies, so the agent loop can
+ * run headless. {@link SpireAgentConfig} loads and saves it through SpireConfig.
  */
 public class AgentConfig {
     private static final Logger logger = LogManager.getLogger(AgentConfig.class);
-    private static final String MOD_NAME = "STSAgent";
+
+    // libGDX key codes (Input.Keys.F8 / F9 / F1 / F12)
+    private static final int KEY_F1 = 244;
+    private static final int KEY_F8 = 251;
+    private static final int KEY_F9 = 252;
+    private static final int KEY_F12 = 255;
 
     // LLM Configuration
     private String llmApiKey = "";
     private String llmBaseUrl = "https://api.openai.com/v1";
     private String llmModel = "gpt-4o-mini";
+    private String llmTrace = "off";          // off, record or replay
+    private String llmTraceFile = "";         // Empty: timestamped file in the trace directory
+    private boolean llmReplayRealtime = false;  // Replay at recorded latency instead of instantly
+    private String llmStateFormat = "minified";  // Format, or model=format entries (see StateFormat.select)
 
     // MCP Configuration
     private String mcpServerUrl = "http://127.0.0.1:8080";
 
+    // Planner Configuration
+    private long plannerTimeBudgetMs = 200;
+    private String plannerRouteWeights = RoutePlanner.DEFAULT_WEIGHTS;  // Room kind=weight for plan_route
+
+    // Play Configuration
+    private boolean planMode = false;  // Plan whole turns, execute and verify locally
+    private String actionPath = "local";  // local: combat actions in-process, mcp: everything over MCP
+    private boolean toolsPerScreen = true;  // Offer only the state tools relevant to the screen
+
     // UI Configuration
     private float overlayOpacity = 0.85f;
 
     // Hotkey Configuration
-    private int toggleKey = Input.Keys.F8;
-    private int analyzeKey = Input.Keys.F9;
+    private int toggleKey = KEY_F8;
+    private int analyzeKey = KEY_F9;
 
     // Prompt Configuration
-    private String systemPrompt = DEFAULT_SYSTEM_PROMPT;
-    private String analyzePrompt = DEFAULT_ANALYZE_PROMPT;
-    private String playPrompt = DEFAULT_PLAY_PROMPT;
+    private String systemPrompt = parsePrompt(null, DEFAULT_SYSTEM_PROMPT);
+    private String analyzePrompt = parsePrompt(null, DEFAULT_ANALYZE_PROMPT);
+    private String playPrompt = parsePrompt(null, DEFAULT_PLAY_PROMPT);
+    private String planPrompt = parsePrompt(null, DEFAULT_PLAN_PROMPT);
 
     // Default prompts
     private static final String DEFAULT_SYSTEM_PROMPT =
             "You are an expert Slay the Spire AI assistant.\\n" +
             "You have access to tools that can read the game state and execute actions.\\n" +
             "All card and enemy indices are 1-based (first = 1).\\n" +
+            "Cards and enemies also have ids (card_id, target_id) that don't shift as cards are played.\\n" +
             "Attack cards require target_index to specify which enemy to attack.";
 
     private static final String DEFAULT_ANALYZE_PROMPT =
@@ -56,71 +78,96 @@ public class AgentConfig {
             "4. Outside combat: use choose() for options, proceed() to continue\\n" +
             "Say 'done' when you've completed your turn or action.";
 
-    private SpireConfig config;
+    private static final String DEFAULT_PLAN_PROMPT =
+            "PLAN MODE: The current state is given to you. Do not query it again.\\n" +
+            "Call submit_plan ONCE with every action for this turn, ending with end_turn in combat.\\n" +
+            "The result contains the new state: plan the next turn from it the same way.\\n" +
+            "If a plan diverges, re-plan from the state in the result.\\n" +
+            "Say 'done' when you've completed your turn or action.";
 
+    /**
+     * Create a config with default values.
+     */
     public AgentConfig() {
-        loadConfig();
     }
 
-    private void loadConfig() {
-        try {
-            Properties defaults = new Properties();
-            defaults.setProperty("llm.apiKey", llmApiKey);
-            defaults.setProperty("llm.baseUrl", llmBaseUrl);
-            defaults.setProperty("llm.model", llmModel);
-            defaults.setProperty("mcp.serverUrl", mcpServerUrl);
-            defaults.setProperty("ui.overlayOpacity", String.valueOf(overlayOpacity));
-            defaults.setProperty("hotkey.toggle", String.valueOf(toggleKey));
-            defaults.setProperty("hotkey.analyze", String.valueOf(analyzeKey));
-            defaults.setProperty("prompt.system", systemPrompt);
-            defaults.setProperty("prompt.analyze", analyzePrompt);
-            defaults.setProperty("prompt.play", playPrompt);
-
-            config = new SpireConfig(MOD_NAME, "config", defaults);
-
-            llmApiKey = config.getString("llm.apiKey");
-            llmBaseUrl = config.getString("llm.baseUrl");
-            llmModel = config.getString("llm.model");
-            mcpServerUrl = config.getString("mcp.serverUrl");
-            overlayOpacity = config.getFloat("ui.overlayOpacity");
-
-            String toggleStr = config.getString("hotkey.toggle");
-            String analyzeStr = config.getString("hotkey.analyze");
-            toggleKey = parseKeyCode(toggleStr, Input.Keys.F8);
-            analyzeKey = parseKeyCode(analyzeStr, Input.Keys.F9);
-
-            systemPrompt = parsePrompt(config.getString("prompt.system"), DEFAULT_SYSTEM_PROMPT);
-            analyzePrompt = parsePrompt(config.getString("prompt.analyze"), DEFAULT_ANALYZE_PROMPT);
-            playPrompt = parsePrompt(config.getString("prompt.play"), DEFAULT_PLAY_PROMPT);
-
-            logger.info("=== STSAgent Config Loaded ===");
-            logger.info("LLM: {} @ {}", llmModel, llmBaseUrl);
-            logger.info("MCP: {}", mcpServerUrl);
-            logger.info("Toggle: {} | Analyze: {}", getKeyName(toggleKey), getKeyName(analyzeKey));
-            logger.info("==============================");
-
-        } catch (IOException e) {
-            logger.error("Failed to load config, using defaults", e);
+    /**
+     * Current values as properties, with prompt newlines escaped.
+     * Also used as the defaults when loading.
+     */
+    public Properties toProperties() {
+        Properties props = new Properties();
+        props.setProperty("llm.apiKey", llmApiKey);
+        props.setProperty("llm.baseUrl", llmBaseUrl);
+        props.setProperty("llm.model", llmModel);
+        props.setProperty("llm.trace", llmTrace);
+        props.setProperty("llm.traceFile", llmTraceFile);
+        props.setProperty("llm.replayRealtime", String.valueOf(llmReplayRealtime));
+        props.setProperty("llm.stateFormat", llmStateFormat);
+        props.setProperty("mcp.serverUrl", mcpServerUrl);
+        props.setProperty("planner.timeBudgetMs", String.valueOf(plannerTimeBudgetMs));
+        props.setProperty("planner.routeWeights", plannerRouteWeights);
+        props.setProperty("play.planMode", String.valueOf(planMode));
+        props.setProperty("play.actionPath", actionPath);
+        props.setProperty("play.toolsPerScreen", String.valueOf(toolsPerScreen));
+        props.setProperty("ui.overlayOpacity", String.valueOf(overlayOpacity));
+        props.setProperty("hotkey.toggle", String.valueOf(toggleKey));
+        props.setProperty("hotkey.analyze", String.valueOf(analyzeKey));
+        props.setProperty("prompt.system", systemPrompt.replace("\n", "\\n"));
+        props.setProperty("prompt.analyze", analyzePrompt.replace("\n", "\\n"));
+        props.setProperty("prompt.play", playPrompt.replace("\n", "\\n"));
+        props.setProperty("prompt.plan", planPrompt.replace("\n", "\\n"));
+        return props;
+    }
+
+    /**
+     * Apply values from properties. Missing or malformed values keep their current value.
+     */
+    public void load(Properties props) {
+        llmApiKey = props.getProperty("llm.apiKey", llmApiKey);
+        llmBaseUrl = props.getProperty("llm.baseUrl", llmBaseUrl);
+        llmModel = props.getProperty("llm.model", llmModel);
+        llmTrace = props.getProperty("llm.trace", llmTrace).trim().toLowerCase();
+        llmTraceFile = props.getProperty("llm.traceFile", llmTraceFile).trim();
+        llmReplayRealtime = parseBoolean(props.getProperty("llm.replayRealtime"), llmReplayRealtime);
+        llmStateFormat = props.getProperty("llm.stateFormat", llmStateFormat).trim();
+        mcpServerUrl = props.getProperty("mcp.serverUrl", mcpServerUrl);
+        plannerTimeBudgetMs = parseLong(props.getProperty("planner.timeBudgetMs"), plannerTimeBudgetMs);
+        plannerRouteWeights = props.getProperty("planner.routeWeights", plannerRouteWeights).trim();
+        planMode = parseBoolean(props.getProperty("play.planMode"), planMode);
+        actionPath = props.getProperty("play.actionPath", actionPath).trim().toLowerCase();
+        toolsPerScreen = parseBoolean(props.getProperty("play.toolsPerScreen"), toolsPerScreen);
+        overlayOpacity = parseFloat(props.getProperty("ui.overlayOpacity"), overlayOpacity);
+
+        toggleKey = parseKeyCode(props.getProperty("hotkey.toggle"), KEY_F8);
+        analyzeKey = parseKeyCode(props.getProperty("hotkey.analyze"), KEY_F9);
+
+        systemPrompt = parsePrompt(props.getProperty("prompt.system"), DEFAULT_SYSTEM_PROMPT);
+        analyzePrompt = parsePrompt(props.getProperty("prompt.analyze"), DEFAULT_ANALYZE_PROMPT);
+        playPrompt = parsePrompt(props.getProperty("prompt.play"), DEFAULT_PLAY_PROMPT);
+        planPrompt = parsePrompt(props.getProperty("prompt.plan"), DEFAULT_PLAN_PROMPT);
+    }
+
+    /**
+     * Log the loaded configuration.
+     */
+    protected void logSummary() {
+        logger.info("=== STSAgent Config Loaded ===");
+        logger.info("LLM: {} @ {}, state as {}", llmModel, llmBaseUrl, getStateFormat());
+        if (!"off".equals(llmTrace)) {
+            logger.info("LLM trace: {} {}", llmTrace, llmTraceFile);
         }
+        logger.info("MCP: {}", mcpServerUrl);
+        logger.info("Play: {}, actions via {}", planMode ? "plan-then-execute" : "step by step", actionPath);
+        logger.info("Toggle: {} | Analyze: {}", getKeyName(toggleKey), getKeyName(analyzeKey));
+        logger.info("==============================");
     }
 
+    /**
+     * Persist the configuration. Only supported when loaded from the game.
+     */
     public void saveConfig() {
-        try {
-            config.setString("llm.apiKey", llmApiKey);
-            config.setString("llm.baseUrl", llmBaseUrl);
-            config.setString("llm.model", llmModel);
-            config.setString("mcp.serverUrl", mcpServerUrl);
-            config.setFloat("ui.overlayOpacity", overlayOpacity);
-            config.setInt("hotkey.toggle", toggleKey);
-            config.setInt("hotkey.analyze", analyzeKey);
-            config.setString("prompt.system", systemPrompt.replace("\n", "\\n"));
-            config.setString("prompt.analyze", analyzePrompt.replace("\n", "\\n"));
-            config.setString("prompt.play", playPrompt.replace("\n", "\\n"));
-            config.save();
-            logger.info("Config saved");
-        } catch (IOException e) {
-            logger.error("Failed to save config", e);
-        }
+        logger.warn("Config is not backed by a file, not saved");
     }
 
     // ========== Getters and Setters ==========
@@ -134,9 +181,42 @@ public class AgentConfig {
     public String getLlmModel() { return llmModel; }
     public void setLlmModel(String v) { this.llmModel = v; }
 
+    public String getLlmTrace() { return llmTrace; }
+    public void setLlmTrace(String v) { this.llmTrace = v; }
+
+    public String getLlmTraceFile() { return llmTraceFile; }
+    public void setLlmTraceFile(String v) { this.llmTraceFile = v; }
+
+    public boolean isLlmReplayRealtime() { return llmReplayRealtime; }
+    public void setLlmReplayRealtime(boolean v) { this.llmReplayRealtime = v; }
+
+    public String getLlmStateFormat() { return llmStateFormat; }
+    public void setLlmStateFormat(String v) { this.llmStateFormat = v; }
+    public StateFormat getStateFormat() { return StateFormat.select(llmStateFormat, llmModel); }
+
     public String getMcpServerUrl() { return mcpServerUrl; }
     public void setMcpServerUrl(String v) { this.mcpServerUrl = v; }
 
+    public long getPlannerTimeBudgetMs() { return plannerTimeBudgetMs; }
+    public void setPlannerTimeBudgetMs(long v) { this.plannerTimeBudgetMs = v; }
+
+    public String getPlannerRouteWeights() { return plannerRouteWeights; }
+    public void setPlannerRouteWeights(String v) { this.plannerRouteWeights = v; }
+    /** Route weights over the defaults, so a partial setting keeps the other kinds. */
+    public double[] getRouteWeights() {
+        return RoutePlanner.parseWeights(plannerRouteWeights, new RoutePlanner().getWeights());
+    }
+
+    public boolean isPlanMode() { return planMode; }
+    public void setPlanMode(boolean v) { this.planMode = v; }
+
+    public String getActionPath() { return actionPath; }
+    public void setActionPath(String v) { this.actionPath = v; }
+    public boolean isLocalActions() { return !"mcp".equals(actionPath); }
+
+    public boolean isToolsPerScreen() { return toolsPerScreen; }
+    public void setToolsPerScreen(boolean v) { this.toolsPerScreen = v; }
+
     public float getOverlayOpacity() { return overlayOpacity; }
     public void setOverlayOpacity(float v) { this.overlayOpacity = v; }
 
@@ -155,6 +235,9 @@ public class AgentConfig {
     public String getPlayPrompt() { return playPrompt; }
     public void setPlayPrompt(String v) { this.playPrompt = v; }
 
+    public String getPlanPrompt() { return planPrompt; }
+    public void setPlanPrompt(String v) { this.planPrompt = v; }
+
     public boolean hasApiKey() {
         return llmApiKey != null && !llmApiKey.trim().isEmpty();
     }
@@ -172,7 +255,7 @@ public class AgentConfig {
         try {
             return Integer.parseInt(value);
         } catch (NumberFormatException e) {
-            int keyCode = Input.Keys.valueOf(value.toUpperCase());
+            int keyCode = resolveKeyName(value.toUpperCase());
             if (keyCode != -1) {
                 return keyCode;
             }
@@ -181,15 +264,50 @@ public class AgentConfig {
         }
     }
 
-    private static String getKeyName(int keyCode) {
-        if (keyCode >= Input.Keys.F1 && keyCode <= Input.Keys.F12) {
-            return "F" + (keyCode - Input.Keys.F1 + 1);
+    /**
+     * Resolve a key name like "F8" to a key code, or -1 if unknown.
+     */
+    protected int resolveKeyName(String name) {
+        if (name.length() >= 2 && name.charAt(0) == 'F') {
+            try {
+                int n = Integer.parseInt(name.substring(1));
+                if (n >= 1 && n <= 12) return KEY_F1 + n - 1;
+            } catch (NumberFormatException ignored) {}
+        }
+        return -1;
+    }
+
+    /**
+     * Display name for a key code.
+     */
+    protected String getKeyName(int keyCode) {
+        if (keyCode >= KEY_F1 && keyCode <= KEY_F12) {
+            return "F" + (keyCode - KEY_F1 + 1);
+        }
+        return "Key" + keyCode;
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        try {
+            return value != null ? Long.parseLong(value.trim()) : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
         }
-        String name = Input.Keys.toString(keyCode);
-        return name != null ? name : "Key" + keyCode;
     }
 
-    private String parsePrompt(String value, String defaultValue) {
+    private static float parseFloat(String value, float defaultValue) {
+        try {
+            return value != null ? Float.parseFloat(value.trim()) : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static boolean parseBoolean(String value, boolean defaultValue) {
+        return value != null ? Boolean.parseBoolean(value.trim()) : defaultValue;
+    }
+
+    private static String parsePrompt(String value, String defaultValue) {
         if (value == null || value.trim().isEmpty()) {
             return defaultValue.replace("\\n", "\n");
         }
@@ -0,0 +1,75 @@
+package stsagent.config;
+
+import com.badlogic.gdx.Input;
+import com.evacipated.cardcrawl.modthespire.lib.SpireConfig;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * AgentConfig backed by SpireConfig (SlayTheSpire/preferences/STSAgent/config.properties).
+ */
+public class SpireAgentConfig extends AgentConfig {
+    private static final Logger logger = LogManager.getLogger(SpireAgentConfig.class);
+    private static final String MOD_NAME = "STSAgent";
+
+    private SpireConfig config;
+
+    public SpireAgentConfig() {
+        loadConfig();
+    }
+
+    private void loadConfig() {
+        try {
+            Properties defaults = toProperties();
+            config = new SpireConfig(MOD_NAME, "config", defaults);
+
+            Properties values = new Properties();
+            for (String key : defaults.stringPropertyNames()) {
+                String value = config.getString(key);
+                if (value != null) {
+                    values.setProperty(key, value);
+                }
+            }
+            load(values);
+            logSummary();
+
+        } catch (IOException e) {
+            logger.error("Failed to load config, using defaults", e);
+        }
+    }
+
+    @Override
+    public void saveConfig() {
+        if (config == null) {
+            logger.warn("Config was not loaded, not saved");
+            return;
+        }
+        try {
+            Properties values = toProperties();
+            for (String key : values.stringPropertyNames()) {
+                config.setString(key, values.getProperty(key));
+            }
+            config.save();
+            logger.info("Config saved");
+        } catch (IOException e) {
+            logger.error("Failed to save config", e);
+        }
+    }
+
+    @Override
+    protected int resolveKeyName(String name) {
+        return Input.Keys.valueOf(name);
+    }
+
+    @Override
+    protected String getKeyName(int keyCode) {
+        if (keyCode >= Input.Keys.F1 && keyCode <= Input.Keys.F12) {
+            return "F" + (keyCode - Input.Keys.F1 + 1);
+        }
+        String name = Input.Keys.toString(keyCode);
+        return name != null ? name : "Key" + keyCode;
+    }
+}
@@ -0,0 +1,21 @@
+package stsagent.llm;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Model backend used by the agent loop.
+ * {@link LLMClient} talks to an OpenAI-compatible API; benchmarks can plug in others.
+ */
+public interface ChatModel {
+
+    /**
+     * Plain chat completion (used for summaries and tips).
+     */
+    String chat(List<LLMMessage> messages) throws IOException;
+
+    /**
+     * Chat completion with tool calling support.
+     */
+    LLMClient.ChatResponse chatWithTools(List<LLMMessage> messages, ToolSet tools) throws IOException;
+}
@@ -0,0 +1,138 @@
+package stsagent.llm;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Request bodies for the chat completions endpoint, as UTF-8 bytes.
+ *
+ * Only the messages are serialized per request, into a reused buffer; a {@link ToolSet}'s
+ * array is copied in from its pre-serialized bytes. The body is allocated once at its
+ * final size and is byte for byte what serializing the whole request with Gson gives.
+ */
+public final class ChatRequest {
+    private static final Gson GSON = new Gson();
+    private static final byte[] TOOLS_NAME = ",\"tools\":".getBytes(StandardCharsets.UTF_8);
+
+    // Per-thread character buffer, grown to the largest request and reused
+    private static final ThreadLocal<CharBuffer> BUFFERS = ThreadLocal.withInitial(CharBuffer::new);
+
+    private ChatRequest() {}
+
+    /**
+     * @param tools Tools to offer, or null (or an empty set) to offer none
+     */
+    public static byte[] encode(String model, boolean stream, List<LLMMessage> messages, ToolSet tools) {
+        CharBuffer buffer = BUFFERS.get();
+        StringBuilder chars = buffer.chars;
+        chars.setLength(0);
+        try {
+            // The object is left open in the writer; the tools and the closing brace are
+            // added as bytes
+            JsonWriter writer = new JsonWriter(buffer);
+            writer.beginObject();
+            writer.name("model").value(model);
+            writer.name("stream").value(stream);
+
+            writer.name("messages").beginArray();
+            for (LLMMessage msg : messages) {
+                GSON.toJson(msg.toJson(), writer);
+            }
+            writer.endArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);  // The buffer doesn't throw
+        }
+
+        boolean withTools = tools != null && !tools.isEmpty();
+        int length = utf8Length(chars) + 1;
+        if (withTools) {
+            length += TOOLS_NAME.length + tools.getByteLength();
+        }
+        byte[] body = new byte[length];
+        int pos = encodeUtf8(chars, body, 0);
+        if (withTools) {
+            System.arraycopy(TOOLS_NAME, 0, body, pos, TOOLS_NAME.length);
+            pos = tools.copyTo(body, pos + TOOLS_NAME.length);
+        }
+        body[pos] = '}';
+        return body;
+    }
+
+    private static int utf8Length(CharSequence chars) {
+        int length = 0;
+        for (int i = 0, n = chars.length(); i < n; i++) {
+            char c = chars.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;  // Unpaired, written as '?' like String.getBytes
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static int encodeUtf8(CharSequence chars, byte[] out, int pos) {
+        for (int i = 0, n = chars.length(); i < n; i++) {
+            char c = chars.charAt(i);
+            if (c < 0x80) {
+                out[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                out[pos++] = (byte) (0xC0 | c >> 6);
+                out[pos++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, chars.charAt(++i));
+                out[pos++] = (byte) (0xF0 | cp >> 18);
+                out[pos++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                out[pos++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                out[pos++] = (byte) (0x80 | cp & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                out[pos++] = '?';
+            } else {
+                out[pos++] = (byte) (0xE0 | c >> 12);
+                out[pos++] = (byte) (0x80 | c >> 6 & 0x3F);
+                out[pos++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * Writer appending to a StringBuilder without the locking and copying of StringWriter.
+     */
+    private static final class CharBuffer extends Writer {
+        final StringBuilder chars = new StringBuilder(16 * 1024);
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            chars.append(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            chars.append(str, off, off + len);
+        }
+
+        @Override
+        public void write(int c) {
+            chars.append((char) c);
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+    }
+}
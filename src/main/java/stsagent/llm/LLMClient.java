@@ -1,6 +1,5 @@
 package stsagent.llm;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -24,12 +23,11 @@ import java.util.function.Consumer;
  * Supports OpenAI, OpenRouter, and other compatible services.
  * Includes tool/function calling support.
  */
-public class LLMClient {
+public class LLMClient implements ChatModel {
     private static final Logger logger = LogManager.getLogger(LLMClient.class);
     private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
 
     private final OkHttpClient client;
-    private final Gson gson;
 
     private String apiKey;
     private String baseUrl;
@@ -45,8 +43,6 @@ public class LLMClient {
                 .readTimeout(120, TimeUnit.SECONDS)
                 .writeTimeout(30, TimeUnit.SECONDS)
                 .build();
-
-        this.gson = new Gson();
     }
 
     /**
@@ -71,11 +67,20 @@ public class LLMClient {
         public final String content;
         public final List<ToolCall> toolCalls;
         public final String finishReason;
+        public final int promptTokens;      // -1 if not reported
+        public final int completionTokens;  // -1 if not reported
 
         public ChatResponse(String content, List<ToolCall> toolCalls, String finishReason) {
+            this(content, toolCalls, finishReason, -1, -1);
+        }
+
+        public ChatResponse(String content, List<ToolCall> toolCalls, String finishReason,
+                            int promptTokens, int completionTokens) {
             this.content = content;
             this.toolCalls = toolCalls != null ? toolCalls : new ArrayList<>();
             this.finishReason = finishReason;
+            this.promptTokens = promptTokens;
+            this.completionTokens = completionTokens;
         }
 
         public boolean hasToolCalls() {
@@ -86,14 +91,15 @@ public class LLMClient {
     /**
      * Synchronous chat completion.
      */
+    @Override
     public String chat(List<LLMMessage> messages) throws IOException {
-        JsonObject requestBody = buildRequestBody(messages, false);
+        byte[] requestBody = buildRequestBody(messages, false);
 
         Request request = new Request.Builder()
                 .url(baseUrl + "/chat/completions")
                 .addHeader("Authorization", "Bearer " + apiKey)
                 .addHeader("Content-Type", "application/json")
-                .post(RequestBody.create(gson.toJson(requestBody), JSON))
+                .post(RequestBody.create(requestBody, JSON))
                 .build();
 
         try (Response response = client.newCall(request).execute()) {
@@ -129,13 +135,13 @@ public class LLMClient {
      * Streaming chat completion with callback for each chunk.
      */
     public void chatStream(List<LLMMessage> messages, Consumer<String> onChunk, Runnable onComplete) {
-        JsonObject requestBody = buildRequestBody(messages, true);
+        byte[] requestBody = buildRequestBody(messages, true);
 
         Request request = new Request.Builder()
                 .url(baseUrl + "/chat/completions")
                 .addHeader("Authorization", "Bearer " + apiKey)
                 .addHeader("Content-Type", "application/json")
-                .post(RequestBody.create(gson.toJson(requestBody), JSON))
+                .post(RequestBody.create(requestBody, JSON))
                 .build();
 
         client.newCall(request).enqueue(new Callback() {
@@ -185,40 +191,23 @@ public class LLMClient {
         });
     }
 
-    private JsonObject buildRequestBody(List<LLMMessage> messages, boolean stream) {
-        return buildRequestBody(messages, stream, null);
-    }
-
-    private JsonObject buildRequestBody(List<LLMMessage> messages, boolean stream, JsonArray tools) {
-        JsonObject body = new JsonObject();
-        body.addProperty("model", model);
-        body.addProperty("stream", stream);
-
-        JsonArray messagesArray = new JsonArray();
-        for (LLMMessage msg : messages) {
-            messagesArray.add(msg.toJson());
-        }
-        body.add("messages", messagesArray);
-
-        if (tools != null && tools.size() > 0) {
-            body.add("tools", tools);
-        }
-
-        return body;
+    private byte[] buildRequestBody(List<LLMMessage> messages, boolean stream) {
+        return ChatRequest.encode(model, stream, messages, null);
     }
 
     /**
      * Chat completion with tool calling support.
      * Returns a ChatResponse that may contain tool calls.
      */
-    public ChatResponse chatWithTools(List<LLMMessage> messages, JsonArray tools) throws IOException {
-        JsonObject requestBody = buildRequestBody(messages, false, tools);
+    @Override
+    public ChatResponse chatWithTools(List<LLMMessage> messages, ToolSet tools) throws IOException {
+        byte[] requestBody = ChatRequest.encode(model, false, messages, tools);
 
         Request request = new Request.Builder()
                 .url(baseUrl + "/chat/completions")
                 .addHeader("Authorization", "Bearer " + apiKey)
                 .addHeader("Content-Type", "application/json")
-                .post(RequestBody.create(gson.toJson(requestBody), JSON))
+                .post(RequestBody.create(requestBody, JSON))
                 .build();
 
         try (Response response = client.newCall(request).execute()) {
@@ -255,14 +244,23 @@ public class LLMClient {
                 }
             }
 
-            return new ChatResponse(content, toolCalls, finishReason);
+            // Token usage (optional in OpenAI-compatible APIs)
+            int promptTokens = -1;
+            int completionTokens = -1;
+            if (json.has("usage") && json.get("usage").isJsonObject()) {
+                JsonObject usage = json.getAsJsonObject("usage");
+                if (usage.has("prompt_tokens")) promptTokens = usage.get("prompt_tokens").getAsInt();
+                if (usage.has("completion_tokens")) completionTokens = usage.get("completion_tokens").getAsInt();
+            }
+
+            return new ChatResponse(content, toolCalls, finishReason, promptTokens, completionTokens);
         }
     }
 
     /**
      * Async version of chatWithTools.
      */
-    public CompletableFuture<ChatResponse> chatWithToolsAsync(List<LLMMessage> messages, JsonArray tools) {
+    public CompletableFuture<ChatResponse> chatWithToolsAsync(List<LLMMessage> messages, ToolSet tools) {
         return CompletableFuture.supplyAsync(() -> {
             try {
                 return chatWithTools(messages, tools);
@@ -0,0 +1,169 @@
+package stsagent.llm;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Passes calls through to another model and appends each request/response pair,
+ * with timing and token usage, to a trace file (see {@link SessionTrace}).
+ *
+ * Plain traces are appended to. A compressed trace gets one file per session: a gzip
+ * member left unfinished by a session that wasn't closed can't be followed by another,
+ * so an existing .gz is never appended to and the session goes to a timestamped sibling.
+ * Every entry is sync-flushed, so the trace stays readable up to the last entry if the
+ * game exits without closing it.
+ */
+public class RecordingChatModel implements ChatModel, Closeable {
+    private static final Logger logger = LogManager.getLogger(RecordingChatModel.class);
+
+    private final ChatModel delegate;
+    private final File file;
+    private final Writer writer;
+
+    // Previous request, for delta encoding (guarded by this)
+    private List<String> previous = Collections.emptyList();
+    private int seq = 0;
+
+    public RecordingChatModel(ChatModel delegate, File file) throws IOException {
+        this.delegate = delegate;
+        if (SessionTrace.isCompressed(file) && file.length() > 0) {
+            file = sessionFile(file);
+        }
+        this.file = file;
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        OutputStream out = new FileOutputStream(file, true);
+        if (SessionTrace.isCompressed(file)) {
+            out = new GZIPOutputStream(out, true);
+        }
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        logger.info("Recording LLM session to {}", file.getAbsolutePath());
+    }
+
+    @Override
+    public String chat(List<LLMMessage> messages) throws IOException {
+        long start = System.nanoTime();
+        try {
+            String content = delegate.chat(messages);
+            JsonObject response = new JsonObject();
+            response.addProperty("content", content);
+            record(SessionTrace.CALL_CHAT, messages, null, start, response, null);
+            return content;
+        } catch (IOException | RuntimeException e) {
+            record(SessionTrace.CALL_CHAT, messages, null, start, null, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public LLMClient.ChatResponse chatWithTools(List<LLMMessage> messages, ToolSet tools) throws IOException {
+        long start = System.nanoTime();
+        try {
+            LLMClient.ChatResponse response = delegate.chatWithTools(messages, tools);
+            record(SessionTrace.CALL_TOOLS, messages, tools, start, SessionTrace.toJson(response), null);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            record(SessionTrace.CALL_TOOLS, messages, tools, start, null, e);
+            throw e;
+        }
+    }
+
+    private synchronized void record(String call, List<LLMMessage> messages, ToolSet tools,
+                                     long startNanos, JsonObject response, Exception error) {
+        long latencyMs = (System.nanoTime() - startNanos) / 1_000_000;
+        try {
+            List<JsonObject> json = new ArrayList<>(messages.size());
+            List<String> current = new ArrayList<>(messages.size());
+            for (LLMMessage msg : messages) {
+                JsonObject obj = msg.toJson();
+                json.add(obj);
+                current.add(obj.toString());
+            }
+
+            int prefix = 0;
+            int max = Math.min(previous.size(), current.size());
+            while (prefix < max && previous.get(prefix).equals(current.get(prefix))) {
+                prefix++;
+            }
+            JsonArray delta = new JsonArray();
+            for (int i = prefix; i < current.size(); i++) {
+                delta.add(json.get(i));
+            }
+
+            JsonObject entry = new JsonObject();
+            entry.addProperty("seq", seq++);
+            entry.addProperty("ts", System.currentTimeMillis());
+            entry.addProperty("call", call);
+            entry.addProperty("fp", SessionTrace.fingerprint(call, current, tools != null ? tools.getNames() : null));
+            entry.addProperty("latency_ms", latencyMs);
+            entry.addProperty("prefix", prefix);
+            entry.add("messages", delta);
+            if (tools != null) {
+                JsonArray names = new JsonArray();
+                for (String name : tools.getNames()) {
+                    names.add(name);
+                }
+                entry.add("tools", names);
+            }
+            if (response != null) {
+                entry.add("response", response);
+            } else {
+                entry.addProperty("error", String.valueOf(error.getMessage()));
+            }
+
+            writer.write(entry.toString());
+            writer.write('\n');
+            writer.flush();
+            previous = current;
+        } catch (IOException e) {
+            // Recording must never break the session itself
+            logger.error("Failed to write trace entry to {}", file, e);
+        }
+    }
+
+    /**
+     * Unused sibling of a trace with the session's start time in its name,
+     * e.g. trace.jsonl.gz to trace-20240101-120000.jsonl.gz.
+     */
+    private static File sessionFile(File file) {
+        String name = file.getName();
+        int dot = name.indexOf('.') > 0 ? name.indexOf('.') : name.length() - ".gz".length();
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        File session = new File(file.getParentFile(), name.substring(0, dot) + "-" + stamp + name.substring(dot));
+        for (int n = 2; session.exists(); n++) {
+            session = new File(file.getParentFile(),
+                    name.substring(0, dot) + "-" + stamp + "-" + n + name.substring(dot));
+        }
+        logger.info("{} exists, recording this session to {}", file.getName(), session.getName());
+        return session;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
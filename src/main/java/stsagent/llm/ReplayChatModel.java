@@ -0,0 +1,123 @@
+package stsagent.llm;
+
+import com.google.gson.JsonObject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves responses from a recorded trace (see {@link RecordingChatModel}) instead of calling a model.
+ *
+ * Requests are matched by fingerprint; identical requests get their recorded responses in order.
+ * A request that was never recorded (e.g. a tool result changed) gets the next unused response
+ * of the same call type in recording order, and is counted as a miss.
+ */
+public class ReplayChatModel implements ChatModel {
+    private static final Logger logger = LogManager.getLogger(ReplayChatModel.class);
+
+    private final List<JsonObject> entries;
+    private final Map<String, ArrayDeque<Integer>> byFingerprint = new HashMap<>();
+    private final boolean[] used;
+    private final boolean realtime;
+
+    private int cursor = 0;
+    private int hits = 0;
+    private int misses = 0;
+
+    /**
+     * @param realtime Wait the recorded latency before answering, otherwise answer immediately
+     */
+    public ReplayChatModel(File file, boolean realtime) throws IOException {
+        this.entries = SessionTrace.read(file);
+        this.used = new boolean[entries.size()];
+        this.realtime = realtime;
+        for (int i = 0; i < entries.size(); i++) {
+            String fp = entries.get(i).get("fp").getAsString();
+            byFingerprint.computeIfAbsent(fp, k -> new ArrayDeque<>()).add(i);
+        }
+        logger.info("Replaying {} recorded LLM calls from {}", entries.size(), file.getAbsolutePath());
+    }
+
+    @Override
+    public String chat(List<LLMMessage> messages) throws IOException {
+        JsonObject entry = next(SessionTrace.CALL_CHAT, messages, null);
+        return SessionTrace.getString(entry.getAsJsonObject("response"), "content");
+    }
+
+    @Override
+    public LLMClient.ChatResponse chatWithTools(List<LLMMessage> messages, ToolSet tools) throws IOException {
+        JsonObject entry = next(SessionTrace.CALL_TOOLS, messages, tools);
+        return SessionTrace.fromJson(entry.getAsJsonObject("response"));
+    }
+
+    private JsonObject next(String call, List<LLMMessage> messages, ToolSet tools) throws IOException {
+        List<String> json = new ArrayList<>(messages.size());
+        for (LLMMessage msg : messages) {
+            json.add(msg.toJson().toString());
+        }
+        String fp = SessionTrace.fingerprint(call, json, tools != null ? tools.getNames() : null);
+
+        JsonObject entry;
+        synchronized (this) {
+            int index = take(fp);
+            if (index >= 0) {
+                hits++;
+            } else {
+                index = takeNext(call);
+                if (index < 0) {
+                    throw new IOException("Trace exhausted: no recorded " + call + " call left");
+                }
+                misses++;
+                logger.warn("No recorded call matches request {}, using #{} instead", fp, index);
+            }
+            entry = entries.get(index);
+        }
+
+        if (realtime) {
+            try {
+                Thread.sleep(entry.get("latency_ms").getAsLong());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (entry.has("error")) {
+            throw new IOException(entry.get("error").getAsString());
+        }
+        return entry;
+    }
+
+    private int take(String fp) {
+        ArrayDeque<Integer> queue = byFingerprint.get(fp);
+        while (queue != null && !queue.isEmpty()) {
+            int index = queue.poll();
+            if (!used[index]) {
+                used[index] = true;
+                cursor = index + 1;
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private int takeNext(String call) {
+        for (int i = cursor; i < entries.size(); i++) {
+            if (!used[i] && call.equals(entries.get(i).get("call").getAsString())) {
+                used[i] = true;
+                cursor = i + 1;
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int getRecordedCount() { return entries.size(); }
+    public synchronized int getHits() { return hits; }
+    public synchronized int getMisses() { return misses; }
+}
@@ -0,0 +1,213 @@
+package stsagent.llm;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Trace format shared by {@link RecordingChatModel} and {@link ReplayChatModel}.
+ *
+ * A trace is JSONL, gzip-compressed when the file name ends in .gz. One line per model call:
+ * <pre>
+ * {"seq":0,"ts":1700000000000,"call":"tools","fp":"9f3c...","latency_ms":812,
+ *  "prefix":3,"messages":[...],"tools":["get_screen",...],
+ *  "response":{"content":null,"tool_calls":[...],"finish_reason":"tool_calls",
+ *              "prompt_tokens":1520,"completion_tokens":41}}
+ * </pre>
+ * Requests are delta-encoded: "prefix" is the number of leading messages shared with the
+ * previous request and "messages" holds only the rest (new tool results, the next prompt).
+ * A failed call has "error" instead of "response".
+ */
+public final class SessionTrace {
+    public static final String CALL_CHAT = "chat";
+    public static final String CALL_TOOLS = "tools";
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private SessionTrace() {}
+
+    /**
+     * Fingerprint of a request: the serialized messages plus the offered tool names.
+     * Tool schemas are left out so traces survive description changes.
+     */
+    public static String fingerprint(String call, List<String> messageJson, List<String> toolNames) {
+        long hash = hash(FNV_OFFSET, call);
+        for (String msg : messageJson) {
+            hash = hash(hash, msg);
+        }
+        if (toolNames != null) {
+            for (String name : toolNames) {
+                hash = hash(hash, name);
+            }
+        }
+        return String.format("%016x", hash);
+    }
+
+    private static long hash(long hash, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            hash ^= s.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        // Separator so ["ab","c"] and ["a","bc"] differ
+        hash ^= 0xff;
+        hash *= FNV_PRIME;
+        return hash;
+    }
+
+    public static List<String> toolNames(JsonArray tools) {
+        List<String> names = new ArrayList<>();
+        for (JsonElement tool : tools) {
+            JsonObject function = tool.getAsJsonObject().getAsJsonObject("function");
+            if (function != null && function.has("name")) {
+                names.add(function.get("name").getAsString());
+            }
+        }
+        return names;
+    }
+
+    public static JsonObject toJson(LLMClient.ChatResponse response) {
+        JsonObject obj = new JsonObject();
+        obj.addProperty("content", response.content);
+        if (response.hasToolCalls()) {
+            JsonArray calls = new JsonArray();
+            for (LLMClient.ToolCall tc : response.toolCalls) {
+                JsonObject call = new JsonObject();
+                call.addProperty("id", tc.id);
+                call.addProperty("name", tc.name);
+                call.add("arguments", tc.arguments);
+                calls.add(call);
+            }
+            obj.add("tool_calls", calls);
+        }
+        obj.addProperty("finish_reason", response.finishReason);
+        obj.addProperty("prompt_tokens", response.promptTokens);
+        obj.addProperty("completion_tokens", response.completionTokens);
+        return obj;
+    }
+
+    public static LLMClient.ChatResponse fromJson(JsonObject obj) {
+        List<LLMClient.ToolCall> calls = new ArrayList<>();
+        if (obj.has("tool_calls")) {
+            for (JsonElement elem : obj.getAsJsonArray("tool_calls")) {
+                JsonObject call = elem.getAsJsonObject();
+                calls.add(new LLMClient.ToolCall(
+                        call.get("id").getAsString(),
+                        call.get("name").getAsString(),
+                        call.getAsJsonObject("arguments")));
+            }
+        }
+        return new LLMClient.ChatResponse(
+                getString(obj, "content"), calls, getString(obj, "finish_reason"),
+                obj.has("prompt_tokens") ? obj.get("prompt_tokens").getAsInt() : -1,
+                obj.has("completion_tokens") ? obj.get("completion_tokens").getAsInt() : -1);
+    }
+
+    static String getString(JsonObject obj, String key) {
+        JsonElement value = obj.get(key);
+        return value == null || value.isJsonNull() ? null : value.getAsString();
+    }
+
+    static boolean isCompressed(File file) {
+        return file.getName().endsWith(".gz");
+    }
+
+    /**
+     * Read every entry of a trace. A truncated tail (the game was closed mid-write, or a
+     * gzip member was never finished) ends the trace instead of failing it.
+     */
+    public static List<JsonObject> read(File file) throws IOException {
+        try {
+            return read(file, false);
+        } catch (ZipException e) {
+            // An unfinished member runs into the next one, and the inflater drops everything
+            // it had decoded from the failing chunk. Feeding it a byte at a time gets out
+            // every line before the break; slow, but only for such files.
+            return read(file, true);
+        }
+    }
+
+    private static List<JsonObject> read(File file, boolean salvage) throws IOException {
+        List<JsonObject> entries = new ArrayList<>();
+        InputStream in = new FileInputStream(file);
+        try {
+            if (isCompressed(file)) {
+                in = salvage ? new GZIPInputStream(in, 1) : new GZIPInputStream(in);
+            }
+            // Lines are split from the bytes as they arrive, so a failing read loses none
+            // that were already returned
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            try {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    for (int i = 0; i < n; i++) {
+                        if (buffer[i] != '\n') {
+                            line.write(buffer[i]);
+                        } else if (!addEntry(entries, line)) {
+                            return entries;
+                        }
+                    }
+                }
+            } catch (EOFException e) {
+                return entries;  // Unfinished gzip member at the end, keep what was read
+            } catch (ZipException e) {
+                if (!salvage) throw e;
+                return entries;
+            }
+            addEntry(entries, line);
+        } finally {
+            in.close();
+        }
+        return entries;
+    }
+
+    /**
+     * Parse one line into the entries and reset it.
+     *
+     * @return False if the line isn't a whole entry, which ends the trace
+     */
+    private static boolean addEntry(List<JsonObject> entries, ByteArrayOutputStream line) {
+        String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+        line.reset();
+        if (text.trim().isEmpty()) return true;
+        try {
+            entries.add(new JsonParser().parse(text).getAsJsonObject());
+            return true;
+        } catch (Exception e) {
+            return false;  // Partial last line
+        }
+    }
+
+    /**
+     * Rebuild the full message list of every request from the delta encoding.
+     */
+    public static List<JsonArray> expandRequests(List<JsonObject> entries) {
+        List<JsonArray> requests = new ArrayList<>();
+        JsonArray previous = new JsonArray();
+        for (JsonObject entry : entries) {
+            JsonArray messages = new JsonArray();
+            int prefix = entry.has("prefix") ? entry.get("prefix").getAsInt() : 0;
+            for (int i = 0; i < prefix && i < previous.size(); i++) {
+                messages.add(previous.get(i));
+            }
+            messages.addAll(entry.getAsJsonArray("messages"));
+            requests.add(messages);
+            previous = messages;
+        }
+        return requests;
+    }
+}
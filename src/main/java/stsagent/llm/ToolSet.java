@@ -0,0 +1,75 @@
+package stsagent.llm;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tool definitions offered with a request, serialized once.
+ *
+ * The schemas of a mode don't change between requests, so the JSON array is written to
+ * UTF-8 bytes when the set is built and every request copies those bytes into its body
+ * (see {@link ChatRequest}). A set is immutable: it keeps its own copy of the definitions.
+ */
+public final class ToolSet {
+    public static final ToolSet EMPTY = of(new JsonArray());
+
+    private final JsonArray definitions;
+    private final List<String> names;
+    private final byte[] json;
+
+    private ToolSet(JsonArray definitions, List<String> names, byte[] json) {
+        this.definitions = definitions;
+        this.names = names;
+        this.json = json;
+    }
+
+    public static ToolSet of(JsonArray definitions) {
+        JsonArray copy = definitions.deepCopy();
+        byte[] json = new Gson().toJson(copy).getBytes(StandardCharsets.UTF_8);
+        return new ToolSet(copy, Collections.unmodifiableList(SessionTrace.toolNames(copy)), json);
+    }
+
+    /**
+     * The definitions as a JSON tree. Shared, so callers must not modify it.
+     */
+    public JsonArray getDefinitions() {
+        return definitions;
+    }
+
+    public List<String> getNames() {
+        return names;
+    }
+
+    public boolean has(String name) {
+        return names.contains(name);
+    }
+
+    public boolean isEmpty() {
+        return definitions.size() == 0;
+    }
+
+    public int size() {
+        return definitions.size();
+    }
+
+    /**
+     * Length of the serialized array in bytes.
+     */
+    public int getByteLength() {
+        return json.length;
+    }
+
+    /**
+     * Copy the serialized array into {@code target} at {@code offset}.
+     *
+     * @return The offset just past the copy
+     */
+    public int copyTo(byte[] target, int offset) {
+        System.arraycopy(json, 0, target, offset, json.length);
+        return offset + json.length;
+    }
+}
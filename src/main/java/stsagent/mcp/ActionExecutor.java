@@ -0,0 +1,33 @@
+package stsagent.mcp;
+
+import com.google.gson.JsonArray;
+
+/**
+ * Executes execute_actions batches against the game.
+ */
+public interface ActionExecutor {
+
+    /**
+     * Execute game actions.
+     *
+     * @param actions Array of action objects
+     * @return Result of the execution
+     */
+    MCPClient.ToolResult executeActions(JsonArray actions);
+
+    /**
+     * True if {@link #executeActions} only returns once the game has finished reacting to
+     * the batch, so the caller doesn't need to wait for a game event afterwards.
+     */
+    default boolean awaitsSettle(JsonArray actions) {
+        return false;
+    }
+
+    /**
+     * Report how long a batch took from being sent until the game settled, including any
+     * wait the caller did after {@link #executeActions} returned. For executors that keep
+     * latency stats; ignored by default.
+     */
+    default void recordLatency(JsonArray actions, long nanos) {
+    }
+}
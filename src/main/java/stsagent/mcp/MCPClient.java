@@ -4,32 +4,73 @@ import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
 import okhttp3.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Simplified MCP Client for MCPTheSpire.
- * Only handles execute_actions tool for game control.
+ * MCP client for MCPTheSpire over streamable HTTP.
+ *
+ * Runs execute_actions and any other tools the server lists (discovered with tools/list),
+ * sends JSON-RPC batches where the server accepts them, can keep several tool calls in
+ * flight with responses matched back by id, and listens on the event stream for the
+ * server's notifications.
  */
-public class MCPClient {
+public class MCPClient implements ActionExecutor {
     private static final Logger logger = LogManager.getLogger(MCPClient.class);
     private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
 
     public static final String EXECUTE_ACTIONS = "execute_actions";
 
+    // Server push notifications from MCPTheSpire
+    public static final String NOTIFY_STATE_CHANGED = "notifications/state_changed";
+    public static final String NOTIFY_ACTION_COMPLETED = "notifications/action_completed";
+    public static final String NOTIFY_SCREEN_CHANGED = "notifications/screen_changed";
+    public static final String NOTIFY_TOOLS_CHANGED = "notifications/tools/list_changed";
+
     private final OkHttpClient client;
+    private final OkHttpClient healthClient;  // Short timeouts for background probes
+    private final OkHttpClient streamClient;  // No read timeout, for the event stream
     private final Gson gson;
     private final AtomicInteger requestId;
 
     private String baseUrl;
-    private String sessionId;
-    private boolean initialized = false;
+    private volatile String sessionId;
+    private volatile boolean initialized = false;
+    private volatile boolean batchSupported = true;
+    // Held while a session is set up, across its network calls; never taken under this
+    private final Object initLock = new Object();
+
+    // Async requests waiting for their response, by JSON-RPC id
+    private final Map<Integer, CompletableFuture<JsonObject>> pending = new ConcurrentHashMap<>();
+
+    private final List<MCPNotificationListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Server tools in OpenAI format, listed once per session (null until listed)
+    private final Object toolsLock = new Object();
+    private volatile JsonArray toolDefinitions;
+    private volatile Set<String> toolNames = Collections.emptySet();
+    private final JsonArray fallbackTools = new JsonArray();
+    private MCPEventStream eventStream;  // Guarded by this
 
     public MCPClient(String baseUrl) {
         this.baseUrl = normalizeUrl(baseUrl);
@@ -41,19 +82,42 @@ public class MCPClient {
                 .readTimeout(60, TimeUnit.SECONDS)
                 .writeTimeout(10, TimeUnit.SECONDS)
                 .build();
+
+        // Shares the connection pool with the main client
+        this.healthClient = client.newBuilder()
+                .connectTimeout(2, TimeUnit.SECONDS)
+                .readTimeout(2, TimeUnit.SECONDS)
+                .build();
+        this.streamClient = client.newBuilder()
+                .readTimeout(0, TimeUnit.SECONDS)
+                .build();
+
+        fallbackTools.add(getExecuteActionsTool());
     }
 
     /**
      * Check if MCP server is available.
+     * Blocks for up to the connect timeout; on the render thread use {@link MCPHealthMonitor} instead.
      */
     public boolean isAvailable() {
+        return checkHealth(client);
+    }
+
+    /**
+     * Health probe with short timeouts, used by {@link MCPHealthMonitor}.
+     */
+    public boolean checkHealth() {
+        return checkHealth(healthClient);
+    }
+
+    private boolean checkHealth(OkHttpClient httpClient) {
         try {
             Request request = new Request.Builder()
                     .url(baseUrl + "/health")
                     .get()
                     .build();
 
-            try (Response response = client.newCall(request).execute()) {
+            try (Response response = httpClient.newCall(request).execute()) {
                 return response.isSuccessful();
             }
         } catch (Exception e) {
@@ -61,33 +125,97 @@ public class MCPClient {
         }
     }
 
+    public boolean isInitialized() {
+        return initialized;
+    }
+
     /**
-     * Initialize MCP connection.
+     * Forget the current session; the next tool call initializes a new one.
      */
-    public boolean initialize() {
-        try {
-            JsonObject params = new JsonObject();
-            params.addProperty("protocolVersion", "2024-11-05");
+    public void resetSession() {
+        initialized = false;
+        sessionId = null;
+        stopEventStream();
+        invalidateTools();
+    }
+
+    /**
+     * Listen for notifications pushed by the server. The event stream is opened once the
+     * session is initialized and at least one listener is registered.
+     */
+    public void addNotificationListener(MCPNotificationListener listener) {
+        listeners.add(listener);
+        if (initialized) {
+            startEventStream();
+        }
+    }
 
-            JsonObject clientInfo = new JsonObject();
-            clientInfo.addProperty("name", "STSAgent");
-            clientInfo.addProperty("version", "1.0.0");
-            params.add("clientInfo", clientInfo);
+    public void removeNotificationListener(MCPNotificationListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * True while the server push stream is open, i.e. notifications will arrive.
+     */
+    public synchronized boolean isEventStreamConnected() {
+        return eventStream != null && eventStream.isConnected();
+    }
+
+    private void onInitialized() {
+        initialized = true;
+        logger.info("MCP client initialized");
+        if (!listeners.isEmpty()) {
+            startEventStream();
+        }
+    }
+
+    private synchronized void startEventStream() {
+        if (eventStream != null && eventStream.isRunning()) return;
+        eventStream = new MCPEventStream(streamClient, baseUrl + "/mcp", () -> sessionId, this::handleMessage);
+        eventStream.start();
+    }
 
-            params.add("capabilities", new JsonObject());
+    private synchronized void stopEventStream() {
+        if (eventStream != null) {
+            eventStream.stop();
+            eventStream = null;
+        }
+    }
 
-            JsonObject response = sendRequest("initialize", params);
-            if (response != null && response.has("result")) {
-                initialized = true;
-                sendNotification("notifications/initialized", new JsonObject());
-                logger.info("MCP client initialized");
+    /**
+     * Initialize MCP connection, unless it already is.
+     * initialize goes out on its own; notifications/initialized follows once it is answered.
+     */
+    public boolean initialize() {
+        synchronized (initLock) {
+            if (initialized) {
+                return true;  // Set up by a call that held the lock first
+            }
+            try {
+                if (!sendInitialize()) {
+                    return false;
+                }
+                post(buildNotification("notifications/initialized", new JsonObject()));
+                onInitialized();
                 return true;
+            } catch (Exception e) {
+                logger.error("Failed to initialize MCP client", e);
+                return false;
             }
-            return false;
-        } catch (Exception e) {
-            logger.error("Failed to initialize MCP client", e);
+        }
+    }
+
+    /**
+     * Send initialize alone: the spec doesn't allow it in a batch, and nothing else may be
+     * sent before its response.
+     */
+    private boolean sendInitialize() throws IOException {
+        JsonObject response = sendRequest(buildInitializeRequest());
+        if (!response.has("result")) {
+            logger.warn("MCP initialize failed: {}", response.get("error"));
             return false;
         }
+        return true;
     }
 
     /**
@@ -97,6 +225,7 @@ public class MCPClient {
      * @param actions Array of action objects
      * @return Result of the execution
      */
+    @Override
     public ToolResult executeActions(JsonArray actions) {
         JsonObject args = new JsonObject();
         args.add("actions", actions);
@@ -105,55 +234,196 @@ public class MCPClient {
 
     /**
      * Call an MCP tool.
+     * Before the session is initialized, initialize is sent first; notifications/initialized
+     * and the call itself then share one batch, so the first call costs two round trips.
      */
     public ToolResult callTool(String toolName, JsonObject arguments) {
-        if (!initialized && !initialize()) {
+        try {
+            JsonObject call = buildRequest("tools/call", buildToolParams(toolName, arguments));
+
+            if (!initialized) {
+                synchronized (initLock) {
+                    if (!initialized) {
+                        return callToolWithInitialize(call);
+                    }
+                }
+            }
+
+            return toToolResult(sendRequest(call));
+        } catch (Exception e) {
+            logger.error("Error calling tool: " + toolName, e);
+            return ToolResult.error(e.getMessage());
+        }
+    }
+
+    private ToolResult callToolWithInitialize(JsonObject call) throws IOException {
+        if (!sendInitialize()) {
             return ToolResult.error("MCP client not initialized");
         }
+        JsonArray batch = new JsonArray();
+        batch.add(buildNotification("notifications/initialized", new JsonObject()));
+        batch.add(call);
 
-        try {
-            JsonObject params = new JsonObject();
-            params.addProperty("name", toolName);
-            params.add("arguments", arguments != null ? arguments : new JsonObject());
+        Map<Integer, JsonObject> responses = sendBatch(batch);
+        onInitialized();
+        return toToolResult(responses.get(call.get("id").getAsInt()));
+    }
+
+    /**
+     * Call a tool without waiting for the response. Several calls can be in flight at once;
+     * each future is completed when the response with its id arrives, and never
+     * exceptionally: failures come back as error results.
+     */
+    public CompletableFuture<ToolResult> callToolAsync(String toolName, JsonObject arguments) {
+        JsonObject call = buildRequest("tools/call", buildToolParams(toolName, arguments));
+        // Session setup blocks on the network, so it runs off the caller's thread
+        CompletableFuture<Boolean> ready = initialized
+                ? CompletableFuture.completedFuture(true)
+                : CompletableFuture.supplyAsync(this::initialize);
+        return ready
+                .thenCompose(ok -> {
+                    if (!ok) {
+                        return CompletableFuture.completedFuture(ToolResult.error("MCP client not initialized"));
+                    }
+                    return postAsync(call).get(call.get("id").getAsInt()).thenApply(this::toToolResult);
+                })
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    logger.error("Error calling tool: " + toolName, cause);
+                    return ToolResult.error(cause.getMessage());
+                });
+    }
+
+    private ToolResult toToolResult(JsonObject response) {
+        if (response == null) {
+            return ToolResult.error("No response from MCP server");
+        }
 
-            JsonObject response = sendRequest("tools/call", params);
+        if (response.has("error")) {
+            JsonObject error = response.getAsJsonObject("error");
+            String message = error.has("message") ? error.get("message").getAsString() : "Unknown error";
+            return ToolResult.error(message);
+        }
 
-            if (response == null) {
-                return ToolResult.error("No response from MCP server");
+        if (response.has("result")) {
+            JsonObject result = response.getAsJsonObject("result");
+            // Extract content from MCP tool result format
+            if (result.has("content") && result.get("content").isJsonArray()) {
+                JsonArray content = result.getAsJsonArray("content");
+                if (content.size() > 0) {
+                    JsonObject firstContent = content.get(0).getAsJsonObject();
+                    if (firstContent.has("text")) {
+                        String text = firstContent.get("text").getAsString();
+                        boolean isError = result.has("isError") && result.get("isError").getAsBoolean();
+                        return new ToolResult(!isError, text);
+                    }
+                }
             }
+            return new ToolResult(true, result.toString());
+        }
+
+        return ToolResult.error("Invalid response format");
+    }
 
-            if (response.has("error")) {
-                JsonObject error = response.getAsJsonObject("error");
-                String message = error.has("message") ? error.get("message").getAsString() : "Unknown error";
-                return ToolResult.error(message);
+    /**
+     * Tools offered by the server, in OpenAI function format.
+     *
+     * Listed with tools/list once per session and cached until the server sends
+     * notifications/tools/list_changed. The same array instance is returned while the
+     * cache is valid, so callers can detect changes by identity; it must not be modified.
+     * Before the session is up (or if listing fails), only execute_actions is offered.
+     */
+    public JsonArray getToolDefinitions() {
+        JsonArray cached = toolDefinitions;
+        if (cached != null) {
+            return cached;
+        }
+        if (!initialized) {
+            return fallbackTools;
+        }
+        synchronized (toolsLock) {
+            if (toolDefinitions == null) {
+                JsonArray listed = listTools();
+                Set<String> names = new HashSet<>();
+                for (JsonElement tool : listed) {
+                    names.add(tool.getAsJsonObject().getAsJsonObject("function").get("name").getAsString());
+                }
+                toolNames = names;
+                toolDefinitions = listed;
             }
+            return toolDefinitions;
+        }
+    }
+
+    /**
+     * True if the server listed a tool with this name.
+     */
+    public boolean hasTool(String name) {
+        return toolNames.contains(name);
+    }
+
+    private void invalidateTools() {
+        synchronized (toolsLock) {
+            toolDefinitions = null;
+            toolNames = Collections.emptySet();
+        }
+    }
 
-            if (response.has("result")) {
+    /**
+     * Fetch every page of tools/list and convert to OpenAI function format.
+     */
+    private JsonArray listTools() {
+        JsonArray tools = new JsonArray();
+        try {
+            String cursor = null;
+            do {
+                JsonObject params = new JsonObject();
+                if (cursor != null) {
+                    params.addProperty("cursor", cursor);
+                }
+                JsonObject response = sendRequest(buildRequest("tools/list", params));
+                if (!response.has("result")) {
+                    throw new IOException("tools/list failed: " + response.get("error"));
+                }
                 JsonObject result = response.getAsJsonObject("result");
-                // Extract content from MCP tool result format
-                if (result.has("content") && result.get("content").isJsonArray()) {
-                    JsonArray content = result.getAsJsonArray("content");
-                    if (content.size() > 0) {
-                        JsonObject firstContent = content.get(0).getAsJsonObject();
-                        if (firstContent.has("text")) {
-                            String text = firstContent.get("text").getAsString();
-                            boolean isError = result.has("isError") && result.get("isError").getAsBoolean();
-                            return new ToolResult(!isError, text);
-                        }
-                    }
+                for (JsonElement elem : result.getAsJsonArray("tools")) {
+                    tools.add(toOpenAiTool(elem.getAsJsonObject()));
                 }
-                return new ToolResult(true, result.toString());
-            }
+                cursor = result.has("nextCursor") && !result.get("nextCursor").isJsonNull()
+                        ? result.get("nextCursor").getAsString() : null;
+            } while (cursor != null);
 
-            return ToolResult.error("Invalid response format");
+            logger.info("MCP server offers {} tool(s)", tools.size());
+            return tools;
         } catch (Exception e) {
-            logger.error("Error calling tool: " + toolName, e);
-            return ToolResult.error(e.getMessage());
+            // Keep the built-in definition for this session rather than retrying every turn
+            logger.warn("Failed to list MCP tools, offering execute_actions only: {}", e.getMessage());
+            return fallbackTools;
+        }
+    }
+
+    private static JsonObject toOpenAiTool(JsonObject mcpTool) {
+        JsonObject function = new JsonObject();
+        function.addProperty("name", mcpTool.get("name").getAsString());
+        if (mcpTool.has("description")) {
+            function.add("description", mcpTool.get("description"));
+        }
+        JsonObject parameters = mcpTool.has("inputSchema") && mcpTool.get("inputSchema").isJsonObject()
+                ? mcpTool.getAsJsonObject("inputSchema") : new JsonObject();
+        if (!parameters.has("type")) {
+            parameters.addProperty("type", "object");
         }
+        function.add("parameters", parameters);
+
+        JsonObject tool = new JsonObject();
+        tool.addProperty("type", "function");
+        tool.add("function", function);
+        return tool;
     }
 
     /**
      * Get the execute_actions tool definition in OpenAI format.
+     * Used until the server's own definition has been listed.
      */
     public JsonObject getExecuteActionsTool() {
         JsonObject tool = new JsonObject();
@@ -163,7 +433,7 @@ public class MCPClient {
         function.addProperty("name", EXECUTE_ACTIONS);
         function.addProperty("description",
                 "Execute game actions. Available actions: " +
-                "play_card(card_index OR card_name, target_index for attacks), " +
+                "play_card(card_id OR card_index OR card_name, target_id OR target_index for attacks), " +
                 "end_turn, " +
                 "choose(choice_index - 1-based), " +
                 "proceed, skip, cancel, confirm, " +
@@ -181,7 +451,8 @@ public class MCPClient {
         actionsParam.addProperty("type", "array");
         actionsParam.addProperty("description",
                 "Array of action objects. Each has 'action' field plus parameters. " +
-                "Indices are 1-based and stable (don't recalculate as actions execute)."
+                "Indices are 1-based and stable (don't recalculate as actions execute). " +
+                "card_id/target_id from get_combat_state never shift and stay valid across batches."
         );
         properties.add("actions", actionsParam);
         parameters.add("properties", properties);
@@ -201,8 +472,7 @@ public class MCPClient {
      */
     public void setBaseUrl(String baseUrl) {
         this.baseUrl = normalizeUrl(baseUrl);
-        this.initialized = false;
-        this.sessionId = null;
+        resetSession();
     }
 
     public String getBaseUrl() {
@@ -215,63 +485,285 @@ public class MCPClient {
         return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
     }
 
-    private JsonObject sendRequest(String method, JsonObject params) throws IOException {
+    private JsonObject buildRequest(String method, JsonObject params) {
         JsonObject request = new JsonObject();
         request.addProperty("jsonrpc", "2.0");
         request.addProperty("id", requestId.getAndIncrement());
         request.addProperty("method", method);
         request.add("params", params);
+        return request;
+    }
 
-        String requestBody = gson.toJson(request);
-        logger.debug("MCP request: {}", requestBody);
+    private JsonObject buildNotification(String method, JsonObject params) {
+        JsonObject notification = new JsonObject();
+        notification.addProperty("jsonrpc", "2.0");
+        notification.addProperty("method", method);
+        notification.add("params", params);
+        return notification;
+    }
+
+    private JsonObject buildInitializeRequest() {
+        JsonObject params = new JsonObject();
+        params.addProperty("protocolVersion", "2024-11-05");
+
+        JsonObject clientInfo = new JsonObject();
+        clientInfo.addProperty("name", "STSAgent");
+        clientInfo.addProperty("version", "1.0.0");
+        params.add("clientInfo", clientInfo);
+
+        params.add("capabilities", new JsonObject());
+        return buildRequest("initialize", params);
+    }
+
+    private JsonObject buildToolParams(String toolName, JsonObject arguments) {
+        JsonObject params = new JsonObject();
+        params.addProperty("name", toolName);
+        params.add("arguments", arguments != null ? arguments : new JsonObject());
+        return params;
+    }
 
+    private Request buildHttpRequest(String body) {
         Request.Builder httpRequestBuilder = new Request.Builder()
                 .url(baseUrl + "/mcp")
                 .addHeader("Content-Type", "application/json")
-                .addHeader("Accept", "application/json")
-                .post(RequestBody.create(requestBody, JSON));
+                .addHeader("Accept", "application/json, text/event-stream")
+                .post(RequestBody.create(body, JSON));
+
+        String session = sessionId;
+        if (session != null) {
+            httpRequestBuilder.addHeader("Mcp-Session-Id", session);
+        }
+        return httpRequestBuilder.build();
+    }
+
+    /**
+     * POST one JSON-RPC message or batch and return the parsed body (null if empty).
+     */
+    private JsonElement post(JsonElement payload) throws IOException {
+        String requestBody = gson.toJson(payload);
+        logger.debug("MCP request: {}", requestBody);
+
+        try (Response response = client.newCall(buildHttpRequest(requestBody)).execute()) {
+            return readResponse(response);
+        }
+    }
+
+    private JsonElement readResponse(Response response) throws IOException {
+        String newSessionId = response.header("Mcp-Session-Id");
+        if (newSessionId != null) {
+            sessionId = newSessionId;
+        }
+
+        if (!response.isSuccessful()) {
+            String errorBody = response.body() != null ? response.body().string() : "Unknown error";
+            throw new HttpStatusException(response.code(), errorBody);
+        }
+
+        String contentType = response.header("Content-Type", "");
+        if (contentType.startsWith("text/event-stream") && response.body() != null) {
+            return readEventStreamResponse(response);
+        }
+
+        String responseBody = response.body() != null ? response.body().string() : "";
+        logger.debug("MCP response: {}", responseBody);
+
+        // 202 Accepted with no body for notification-only payloads
+        return responseBody.trim().isEmpty() ? null : new JsonParser().parse(responseBody);
+    }
+
+    /**
+     * A POST answered with an SSE stream: notifications sent before the response go to the
+     * listeners, responses are returned (one object, or an array for several).
+     */
+    private JsonElement readEventStreamResponse(Response response) throws IOException {
+        JsonArray responses = new JsonArray();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(response.body().byteStream(), StandardCharsets.UTF_8))) {
+            MCPEventStream.readEvents(reader, (id, data) -> {
+                logger.debug("MCP event: {}", data);
+                JsonElement message = new JsonParser().parse(data);
+                for (JsonElement elem : message.isJsonArray() ? message.getAsJsonArray() : singleton(message)) {
+                    if (isNotification(elem)) {
+                        notifyListeners(elem.getAsJsonObject());
+                    } else {
+                        responses.add(elem);
+                    }
+                }
+            });
+        }
+        if (responses.size() == 0) return null;
+        return responses.size() == 1 ? responses.get(0) : responses;
+    }
+
+    /**
+     * Message from the event stream: a notification, or a response to an async request
+     * (servers may redeliver responses there after a reconnect).
+     */
+    private void handleMessage(JsonElement message) {
+        for (JsonElement elem : message.isJsonArray() ? message.getAsJsonArray() : singleton(message)) {
+            if (!elem.isJsonObject()) continue;
+            JsonObject obj = elem.getAsJsonObject();
+            if (isNotification(obj)) {
+                notifyListeners(obj);
+            } else if (obj.has("id") && !obj.get("id").isJsonNull()) {
+                CompletableFuture<JsonObject> future = pending.remove(obj.get("id").getAsInt());
+                if (future != null) {
+                    future.complete(obj);
+                }
+            }
+        }
+    }
+
+    private static boolean isNotification(JsonElement message) {
+        return message.isJsonObject() && message.getAsJsonObject().has("method") &&
+               !message.getAsJsonObject().has("id");
+    }
+
+    private void notifyListeners(JsonObject notification) {
+        String method = notification.get("method").getAsString();
+        if (NOTIFY_TOOLS_CHANGED.equals(method)) {
+            logger.info("MCP tool list changed");
+            invalidateTools();
+        }
+        JsonObject params = notification.has("params") && notification.get("params").isJsonObject()
+                ? notification.getAsJsonObject("params") : new JsonObject();
+        for (MCPNotificationListener listener : listeners) {
+            try {
+                listener.onNotification(method, params);
+            } catch (Exception e) {
+                logger.error("Notification listener failed for {}", method, e);
+            }
+        }
+    }
+
+    private static JsonArray singleton(JsonElement elem) {
+        JsonArray array = new JsonArray();
+        array.add(elem);
+        return array;
+    }
+
+    private JsonObject sendRequest(JsonObject request) throws IOException {
+        JsonElement response = post(request);
+        if (response == null || !response.isJsonObject()) {
+            throw new IOException("Invalid MCP response: " + response);
+        }
+        return response.getAsJsonObject();
+    }
+
+    /**
+     * Send a JSON-RPC batch and match the responses back by id. Notifications get none.
+     * Servers that reject batches get the messages one by one from then on.
+     */
+    private Map<Integer, JsonObject> sendBatch(JsonArray batch) throws IOException {
+        if (batchSupported) {
+            try {
+                JsonElement response = post(batch);
+                Map<Integer, JsonObject> byId = new HashMap<>();
+                collectResponses(response, byId);
+                if (response == null || response.isJsonArray() || byId.size() == countRequests(batch)) {
+                    return byId;
+                }
+            } catch (HttpStatusException e) {
+                if (e.code < 400 || e.code >= 500) throw e;
+                logger.debug("MCP batch rejected: {}", e.getMessage());
+            } catch (JsonParseException e) {
+                logger.debug("MCP batch response unreadable: {}", e.getMessage());
+            }
+            logger.info("MCP server does not accept JSON-RPC batches, sending requests one by one");
+            batchSupported = false;
+        }
 
-        if (sessionId != null) {
-            httpRequestBuilder.addHeader("Mcp-Session-Id", sessionId);
+        Map<Integer, JsonObject> byId = new HashMap<>();
+        for (JsonElement message : batch) {
+            collectResponses(post(message), byId);
         }
+        return byId;
+    }
 
-        try (Response response = client.newCall(httpRequestBuilder.build()).execute()) {
-            String newSessionId = response.header("Mcp-Session-Id");
-            if (newSessionId != null) {
-                sessionId = newSessionId;
+    /**
+     * POST asynchronously; returns a future per request id in the payload.
+     * Many posts can be in flight; each future completes when its response arrives.
+     */
+    private Map<Integer, CompletableFuture<JsonObject>> postAsync(JsonElement payload) {
+        Map<Integer, CompletableFuture<JsonObject>> futures = new HashMap<>();
+        for (JsonElement message : payload.isJsonArray() ? payload.getAsJsonArray() : singleton(payload)) {
+            JsonObject obj = message.getAsJsonObject();
+            if (obj.has("id")) {
+                int id = obj.get("id").getAsInt();
+                CompletableFuture<JsonObject> future = new CompletableFuture<>();
+                futures.put(id, future);
+                pending.put(id, future);
             }
+        }
 
-            if (!response.isSuccessful()) {
-                String errorBody = response.body() != null ? response.body().string() : "Unknown error";
-                throw new IOException("MCP request failed: " + response.code() + " - " + errorBody);
+        String requestBody = gson.toJson(payload);
+        logger.debug("MCP request (async): {}", requestBody);
+        client.newCall(buildHttpRequest(requestBody)).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                failAll(futures.keySet(), e);
             }
 
-            String responseBody = response.body() != null ? response.body().string() : "{}";
-            logger.debug("MCP response: {}", responseBody);
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (Response r = response) {
+                    Map<Integer, JsonObject> byId = new HashMap<>();
+                    collectResponses(readResponse(r), byId);
+                    for (Map.Entry<Integer, JsonObject> entry : byId.entrySet()) {
+                        CompletableFuture<JsonObject> future = pending.remove(entry.getKey());
+                        if (future != null) {
+                            future.complete(entry.getValue());
+                        }
+                    }
+                    failAll(futures.keySet(), new IOException("No response for request"));
+                } catch (Exception e) {
+                    failAll(futures.keySet(), e);
+                }
+            }
+        });
+        return futures;
+    }
 
-            return new JsonParser().parse(responseBody).getAsJsonObject();
+    private void failAll(Iterable<Integer> ids, Throwable cause) {
+        for (Integer id : ids) {
+            CompletableFuture<JsonObject> future = pending.remove(id);
+            if (future != null) {
+                future.completeExceptionally(cause);
+            }
         }
     }
 
-    private void sendNotification(String method, JsonObject params) {
-        try {
-            JsonObject request = new JsonObject();
-            request.addProperty("jsonrpc", "2.0");
-            request.addProperty("method", method);
-            request.add("params", params);
-
-            Request.Builder httpRequestBuilder = new Request.Builder()
-                    .url(baseUrl + "/mcp")
-                    .addHeader("Content-Type", "application/json")
-                    .post(RequestBody.create(gson.toJson(request), JSON));
-
-            if (sessionId != null) {
-                httpRequestBuilder.addHeader("Mcp-Session-Id", sessionId);
+    private static void collectResponses(JsonElement response, Map<Integer, JsonObject> byId) {
+        if (response == null) return;
+        if (response.isJsonArray()) {
+            for (JsonElement elem : response.getAsJsonArray()) {
+                collectResponses(elem, byId);
+            }
+        } else if (response.isJsonObject()) {
+            JsonObject obj = response.getAsJsonObject();
+            if (obj.has("id") && !obj.get("id").isJsonNull()) {
+                byId.put(obj.get("id").getAsInt(), obj);
             }
+        }
+    }
 
-            client.newCall(httpRequestBuilder.build()).execute().close();
-        } catch (Exception e) {
-            logger.warn("Failed to send notification: {}", method, e);
+    private static int countRequests(JsonArray batch) {
+        int n = 0;
+        for (JsonElement message : batch) {
+            if (message.getAsJsonObject().has("id")) n++;
+        }
+        return n;
+    }
+
+    /**
+     * Non-2xx HTTP response from the MCP server.
+     */
+    private static class HttpStatusException extends IOException {
+        final int code;
+
+        HttpStatusException(int code, String body) {
+            super("MCP request failed: " + code + " - " + body);
+            this.code = code;
         }
     }
 
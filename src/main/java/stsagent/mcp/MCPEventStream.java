@@ -0,0 +1,178 @@
+package stsagent.mcp;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Long-lived GET on the MCP endpoint (Streamable HTTP transport) for server-initiated messages.
+ *
+ * Runs on its own daemon thread and reconnects with backoff, resuming with Last-Event-ID.
+ * A server that answers the GET with 405 has no stream; the stream then stays off.
+ */
+class MCPEventStream {
+    private static final Logger logger = LogManager.getLogger(MCPEventStream.class);
+
+    private static final long MIN_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 30000;
+
+    private final OkHttpClient client;
+    private final String url;
+    private final Supplier<String> sessionId;
+    private final Consumer<JsonElement> onMessage;
+
+    private volatile boolean running = false;
+    private volatile boolean connected = false;
+    private volatile Call call;
+    private volatile String lastEventId;
+    private Thread thread;
+
+    /**
+     * @param client    HTTP client without a read timeout
+     * @param sessionId Current Mcp-Session-Id
+     * @param onMessage Receives every JSON-RPC message from the stream
+     */
+    MCPEventStream(OkHttpClient client, String url, Supplier<String> sessionId, Consumer<JsonElement> onMessage) {
+        this.client = client;
+        this.url = url;
+        this.sessionId = sessionId;
+        this.onMessage = onMessage;
+    }
+
+    synchronized void start() {
+        if (running) return;
+        running = true;
+        thread = new Thread(this::run, "STSAgent-MCP-Events");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    synchronized void stop() {
+        running = false;
+        Call current = call;
+        if (current != null) {
+            current.cancel();
+        }
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    boolean isRunning() { return running; }
+
+    boolean isConnected() { return connected; }
+
+    private void run() {
+        long backoffMs = MIN_BACKOFF_MS;
+        while (running) {
+            try {
+                Request.Builder builder = new Request.Builder()
+                        .url(url)
+                        .addHeader("Accept", "text/event-stream")
+                        .get();
+                String session = sessionId.get();
+                if (session != null) {
+                    builder.addHeader("Mcp-Session-Id", session);
+                }
+                if (lastEventId != null) {
+                    builder.addHeader("Last-Event-ID", lastEventId);
+                }
+
+                call = client.newCall(builder.build());
+                try (Response response = call.execute()) {
+                    if (response.code() == 405) {
+                        logger.info("MCP server has no event stream, notifications disabled");
+                        running = false;
+                        return;
+                    }
+                    if (!response.isSuccessful() || response.body() == null) {
+                        throw new IOException("Event stream failed: " + response.code());
+                    }
+
+                    connected = true;
+                    backoffMs = MIN_BACKOFF_MS;
+                    logger.info("MCP event stream connected");
+                    try (BufferedReader reader = new BufferedReader(
+                            new InputStreamReader(response.body().byteStream(), StandardCharsets.UTF_8))) {
+                        readEvents(reader, (id, data) -> {
+                            if (id != null) lastEventId = id;
+                            dispatch(data);
+                        });
+                    }
+                }
+            } catch (Exception e) {
+                if (running) {
+                    logger.debug("MCP event stream error: {}", e.getMessage());
+                }
+            } finally {
+                if (connected) {
+                    logger.info("MCP event stream disconnected");
+                }
+                connected = false;
+            }
+
+            if (!running) break;
+            try {
+                Thread.sleep(backoffMs);
+            } catch (InterruptedException e) {
+                break;
+            }
+            backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+        }
+    }
+
+    private void dispatch(String data) {
+        try {
+            onMessage.accept(new JsonParser().parse(data));
+        } catch (Exception e) {
+            logger.warn("Bad MCP event: {}", data, e);
+        }
+    }
+
+    /**
+     * Event callback: SSE event id (null if none) and the joined data lines.
+     */
+    interface EventHandler {
+        void onEvent(String id, String data);
+    }
+
+    /**
+     * Read server-sent events until the stream ends.
+     */
+    static void readEvents(BufferedReader reader, EventHandler handler) throws IOException {
+        StringBuilder data = new StringBuilder();
+        String id = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                if (data.length() > 0) {
+                    handler.onEvent(id, data.toString());
+                }
+                data.setLength(0);
+                id = null;
+            } else if (line.startsWith("data:")) {
+                if (data.length() > 0) data.append('\n');
+                data.append(line.substring(line.startsWith("data: ") ? 6 : 5));
+            } else if (line.startsWith("id:")) {
+                id = line.substring(3).trim();
+            }
+            // event:, retry: and comments are not used
+        }
+        if (data.length() > 0) {
+            handler.onEvent(id, data.toString());
+        }
+    }
+}
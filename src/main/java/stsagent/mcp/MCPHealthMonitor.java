@@ -0,0 +1,131 @@
+package stsagent.mcp;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Probes the MCP server in the background and publishes the result.
+ *
+ * Callers on the render thread read {@link #getStatus()} instead of making a network call.
+ * While the server is up it is probed every {@link #HEALTHY_INTERVAL_MS}; after a failure the
+ * delay doubles from {@link #MIN_BACKOFF_MS} up to {@link #MAX_BACKOFF_MS}. Whenever the server
+ * comes (back) up, the MCP session is initialized so the first tool call doesn't pay for it.
+ */
+public class MCPHealthMonitor {
+    private static final Logger logger = LogManager.getLogger(MCPHealthMonitor.class);
+
+    private static final long HEALTHY_INTERVAL_MS = 5000;
+    private static final long MIN_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 30000;
+
+    public enum Status {
+        UNKNOWN,    // Not probed yet
+        CONNECTED,  // Health check passed and session initialized
+        DEGRADED,   // Health check passed but initialize failed
+        DOWN        // Health check failed
+    }
+
+    private final MCPClient client;
+    private final ScheduledExecutorService scheduler;
+
+    private volatile Status status = Status.UNKNOWN;
+    private volatile long lastCheckMillis = 0;
+    private volatile long lastLatencyMs = -1;
+
+    // Scheduler thread only
+    private long backoffMs = MIN_BACKOFF_MS;
+    private ScheduledFuture<?> pending;
+    private boolean started = false;
+
+    public MCPHealthMonitor(MCPClient client) {
+        this.client = client;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "STSAgent-MCP-Health");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Start probing. Does nothing if already started.
+     */
+    public synchronized void start() {
+        if (started) return;
+        started = true;
+        schedule(0);
+    }
+
+    public synchronized void stop() {
+        started = false;
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Probe as soon as possible instead of waiting for the next scheduled check.
+     * Never blocks; the result shows up in {@link #getStatus()}.
+     */
+    public synchronized void requestCheck() {
+        if (!started) {
+            start();
+            return;
+        }
+        backoffMs = MIN_BACKOFF_MS;
+        schedule(0);
+    }
+
+    public Status getStatus() { return status; }
+
+    public boolean isConnected() { return status == Status.CONNECTED; }
+
+    public long getLastCheckMillis() { return lastCheckMillis; }
+
+    public long getLastLatencyMs() { return lastLatencyMs; }
+
+    private synchronized void schedule(long delayMs) {
+        if (scheduler.isShutdown()) return;
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        pending = scheduler.schedule(this::probe, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void probe() {
+        long start = System.nanoTime();
+        boolean healthy = client.checkHealth();
+        lastLatencyMs = (System.nanoTime() - start) / 1_000_000;
+        lastCheckMillis = System.currentTimeMillis();
+
+        Status next;
+        if (!healthy) {
+            // The server may come back as a new process, so start a fresh session then
+            client.resetSession();
+            next = Status.DOWN;
+        } else if (client.isInitialized() || client.initialize()) {
+            next = Status.CONNECTED;
+        } else {
+            next = Status.DEGRADED;
+        }
+
+        if (next != status) {
+            logger.info("MCP server {} -> {} ({} ms)", status, next, lastLatencyMs);
+        }
+        status = next;
+
+        long delay;
+        synchronized (this) {
+            if (next == Status.CONNECTED) {
+                backoffMs = MIN_BACKOFF_MS;
+                delay = HEALTHY_INTERVAL_MS;
+            } else {
+                delay = backoffMs;
+                backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+            }
+        }
+        schedule(delay);
+    }
+}
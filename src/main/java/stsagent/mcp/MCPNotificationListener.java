@@ -0,0 +1,16 @@
+package stsagent.mcp;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Receives JSON-RPC notifications pushed by the MCP server.
+ * Called on the event stream thread; implementations must not block.
+ */
+public interface MCPNotificationListener {
+
+    /**
+     * @param method Notification method, e.g. {@link MCPClient#NOTIFY_STATE_CHANGED}
+     * @param params Notification params (empty if none were sent)
+     */
+    void onNotification(String method, JsonObject params);
+}
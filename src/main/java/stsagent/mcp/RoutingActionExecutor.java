@@ -0,0 +1,101 @@
+package stsagent.mcp;
+
+import com.google.gson.JsonArray;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.function.Predicate;
+
+/**
+ * Runs action batches in-process when the local executor can handle them and sends the
+ * rest to the fallback (the MCP server).
+ *
+ * Latency is kept per path, from sending a batch until the game has settled, as the caller
+ * reports it through {@link #recordLatency}. The local path settles before returning and
+ * the MCP path after, so only the caller can time both the same way. Both paths can then
+ * be compared on the same run. With the local path disabled every batch goes to the
+ * fallback, which gives the baseline.
+ */
+public class RoutingActionExecutor implements ActionExecutor {
+    private static final Logger logger = LogManager.getLogger(RoutingActionExecutor.class);
+
+    private final ActionExecutor local;
+    private final Predicate<JsonArray> handlesLocally;
+    private final ActionExecutor fallback;
+    private final boolean localEnabled;
+
+    private final LatencyStats localStats = new LatencyStats("local");
+    private final LatencyStats fallbackStats = new LatencyStats("mcp");
+
+    /**
+     * @param handlesLocally True if the local executor supports every action in a batch
+     * @param localEnabled   False to send everything to the fallback
+     */
+    public RoutingActionExecutor(ActionExecutor local, Predicate<JsonArray> handlesLocally,
+                                 ActionExecutor fallback, boolean localEnabled) {
+        this.local = local;
+        this.handlesLocally = handlesLocally;
+        this.fallback = fallback;
+        this.localEnabled = localEnabled;
+    }
+
+    @Override
+    public MCPClient.ToolResult executeActions(JsonArray actions) {
+        return isLocal(actions) ? local.executeActions(actions) : fallback.executeActions(actions);
+    }
+
+    @Override
+    public void recordLatency(JsonArray actions, long nanos) {
+        boolean isLocal = isLocal(actions);
+        (isLocal ? localStats : fallbackStats).record(actions.size(), nanos);
+        logger.debug("{} action(s) via {} settled in {} ms", actions.size(),
+                isLocal ? "local" : "mcp", nanos / 1_000_000);
+    }
+
+    @Override
+    public boolean awaitsSettle(JsonArray actions) {
+        return isLocal(actions) ? local.awaitsSettle(actions) : fallback.awaitsSettle(actions);
+    }
+
+    private boolean isLocal(JsonArray actions) {
+        return localEnabled && handlesLocally.test(actions);
+    }
+
+    /**
+     * One line per path: batches, actions, mean and max latency.
+     */
+    public String getLatencySummary() {
+        return localStats + "\n" + fallbackStats;
+    }
+
+    private static class LatencyStats {
+        private final String name;
+        private long batches;
+        private long actions;
+        private long totalNanos;
+        private long maxNanos;
+
+        LatencyStats(String name) {
+            this.name = name;
+        }
+
+        synchronized void record(int actionCount, long nanos) {
+            batches++;
+            actions += actionCount;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        @Override
+        public synchronized String toString() {
+            if (batches == 0) {
+                return name + ": no batches";
+            }
+            return String.format("%s: %d batches, %d actions, %.1f ms/action, %.1f ms/batch, max %.1f ms",
+                    name, batches, actions,
+                    totalNanos / 1e6 / Math.max(1, actions),
+                    totalNanos / 1e6 / batches,
+                    maxNanos / 1e6);
+        }
+    }
+}
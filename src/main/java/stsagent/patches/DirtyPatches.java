@@ -0,0 +1,263 @@
+package stsagent.patches;
+
+import com.evacipated.cardcrawl.modthespire.lib.SpirePatch;
+import com.evacipated.cardcrawl.modthespire.lib.SpirePostfixPatch;
+import com.evacipated.cardcrawl.modthespire.lib.SpirePrefixPatch;
+import com.megacrit.cardcrawl.cards.AbstractCard;
+import com.megacrit.cardcrawl.cards.CardGroup;
+import com.megacrit.cardcrawl.cards.DamageInfo;
+import com.megacrit.cardcrawl.characters.AbstractPlayer;
+import com.megacrit.cardcrawl.core.AbstractCreature;
+import com.megacrit.cardcrawl.dungeons.AbstractDungeon;
+import com.megacrit.cardcrawl.map.MapRoomNode;
+import com.megacrit.cardcrawl.monsters.AbstractMonster;
+import com.megacrit.cardcrawl.potions.AbstractPotion;
+import com.megacrit.cardcrawl.powers.AbstractPower;
+import com.megacrit.cardcrawl.relics.AbstractRelic;
+import com.megacrit.cardcrawl.ui.panels.EnergyPanel;
+import com.megacrit.cardcrawl.ui.panels.TopPanel;
+import stsagent.tools.DirtySections;
+import stsagent.tools.StateSection;
+
+/**
+ * Marks snapshot sections dirty where the game changes them, so GameStateReader only
+ * rebuilds what changed.
+ *
+ * Each patch sets a bit and nothing else, except on methods the game calls every frame,
+ * where the values are compared before and after. Changes that happen without passing
+ * through one of these are caught by the reader: it compares relic counters and power
+ * amounts on every capture, and rebuilds everything when the floor, screen, room phase
+ * or turn changes.
+ */
+public class DirtyPatches {
+
+    private static void cardsChanged(CardGroup group) {
+        DirtySections.mark(group.type == CardGroup.CardGroupType.MASTER_DECK
+                ? StateSection.DECK : StateSection.COMBAT_STATE);
+    }
+
+    // ========== Cards ==========
+
+    @SpirePatch(clz = CardGroup.class, method = "addToTop", paramtypez = {AbstractCard.class})
+    @SpirePatch(clz = CardGroup.class, method = "addToBottom", paramtypez = {AbstractCard.class})
+    @SpirePatch(clz = CardGroup.class, method = "addToHand", paramtypez = {AbstractCard.class})
+    @SpirePatch(clz = CardGroup.class, method = "addToRandomSpot", paramtypez = {AbstractCard.class})
+    @SpirePatch(clz = CardGroup.class, method = "removeCard", paramtypez = {AbstractCard.class})
+    @SpirePatch(clz = CardGroup.class, method = "moveToDiscardPile", paramtypez = {AbstractCard.class})
+    @SpirePatch(clz = CardGroup.class, method = "moveToExhaustPile", paramtypez = {AbstractCard.class})
+    @SpirePatch(clz = CardGroup.class, method = "moveToBottomOfDeck", paramtypez = {AbstractCard.class})
+    public static class CardMoved {
+        @SpirePostfixPatch
+        public static void Postfix(CardGroup __instance, AbstractCard card) {
+            cardsChanged(__instance);
+        }
+    }
+
+    @SpirePatch(clz = CardGroup.class, method = "removeTopCard")
+    @SpirePatch(clz = CardGroup.class, method = "clear")
+    public static class PileChanged {
+        @SpirePostfixPatch
+        public static void Postfix(CardGroup __instance) {
+            cardsChanged(__instance);
+        }
+    }
+
+    // The hand recalculates damage and block every frame in combat; only a change counts
+    @SpirePatch(clz = CardGroup.class, method = "applyPowers")
+    public static class CardValuesChanged {
+        private static int before;  // Render thread only
+
+        @SpirePrefixPatch
+        public static void Prefix(CardGroup __instance) {
+            before = cardValues(__instance);
+        }
+
+        @SpirePostfixPatch
+        public static void Postfix(CardGroup __instance) {
+            if (cardValues(__instance) != before) {
+                cardsChanged(__instance);
+            }
+        }
+
+        private static int cardValues(CardGroup group) {
+            int hash = group.size();
+            for (AbstractCard card : group.group) {
+                hash = hash * 31 + card.damage;
+                hash = hash * 31 + card.block;
+            }
+            return hash;
+        }
+    }
+
+    @SpirePatch(clz = AbstractCard.class, method = "upgradeName")
+    public static class CardUpgraded {
+        @SpirePostfixPatch
+        public static void Postfix(AbstractCard __instance) {
+            DirtySections.mark(StateSection.DECK);
+            DirtySections.mark(StateSection.COMBAT_STATE);
+        }
+    }
+
+    @SpirePatch(clz = AbstractCard.class, method = "setCostForTurn", paramtypez = {int.class})
+    @SpirePatch(clz = AbstractCard.class, method = "modifyCostForCombat", paramtypez = {int.class})
+    @SpirePatch(clz = AbstractCard.class, method = "updateCost", paramtypez = {int.class})
+    public static class CardCostChanged {
+        @SpirePostfixPatch
+        public static void Postfix(AbstractCard __instance, int amount) {
+            DirtySections.mark(StateSection.COMBAT_STATE);
+        }
+    }
+
+    // ========== Damage, block, energy ==========
+
+    @SpirePatch(clz = AbstractPlayer.class, method = "damage", paramtypez = {DamageInfo.class})
+    @SpirePatch(clz = AbstractMonster.class, method = "damage", paramtypez = {DamageInfo.class})
+    public static class Damaged {
+        @SpirePostfixPatch
+        public static void Postfix(AbstractCreature __instance, DamageInfo info) {
+            DirtySections.mark(StateSection.COMBAT_STATE);
+        }
+    }
+
+    @SpirePatch(clz = AbstractCreature.class, method = "addBlock", paramtypez = {int.class})
+    public static class BlockGained {
+        @SpirePostfixPatch
+        public static void Postfix(AbstractCreature __instance, int amount) {
+            DirtySections.mark(StateSection.COMBAT_STATE);
+        }
+    }
+
+    @SpirePatch(clz = AbstractCreature.class, method = "loseBlock", paramtypez = {int.class, boolean.class})
+    @SpirePatch(clz = AbstractCreature.class, method = "heal", paramtypez = {int.class, boolean.class})
+    public static class HpOrBlockChanged {
+        @SpirePostfixPatch
+        public static void Postfix(AbstractCreature __instance, int amount, boolean flag) {
+            DirtySections.mark(StateSection.COMBAT_STATE);
+        }
+    }
+
+    @SpirePatch(clz = EnergyPanel.class, method = "useEnergy", paramtypez = {int.class})
+    @SpirePatch(clz = EnergyPanel.class, method = "addEnergy", paramtypez = {int.class})
+    @SpirePatch(clz = EnergyPanel.class, method = "setEnergy", paramtypez = {int.class})
+    public static class EnergyChanged {
+        @SpirePostfixPatch
+        public static void Postfix(int amount) {
+            DirtySections.mark(StateSection.COMBAT_STATE);
+        }
+    }
+
+    @SpirePatch(clz = AbstractMonster.class, method = "createIntent")
+    public static class IntentChanged {
+        @SpirePostfixPatch
+        public static void Postfix(AbstractMonster __instance) {
+            DirtySections.mark(StateSection.COMBAT_STATE);
+        }
+    }
+
+    // Intent damage is recalculated every frame as well
+    @SpirePatch(clz = AbstractMonster.class, method = "applyPowers")
+    public static class IntentDamageChanged {
+        private static int before;  // Render thread only
+
+        @SpirePrefixPatch
+        public static void Prefix(AbstractMonster __instance) {
+            before = __instance.getIntentDmg();
+        }
+
+        @SpirePostfixPatch
+        public static void Postfix(AbstractMonster __instance) {
+            if (__instance.getIntentDmg() != before) {
+                DirtySections.mark(StateSection.COMBAT_STATE);
+            }
+        }
+    }
+
+    // ========== Powers ==========
+
+    @SpirePatch(clz = AbstractPower.class, method = "stackPower", paramtypez = {int.class})
+    @SpirePatch(clz = AbstractPower.class, method = "reducePower", paramtypez = {int.class})
+    public static class PowerAmountChanged {
+        @SpirePostfixPatch
+        public static void Postfix(AbstractPower __instance, int amount) {
+            DirtySections.mark(StateSection.COMBAT_STATE);
+        }
+    }
+
+    // Powers change their amount in place when they trigger, which is when they flash
+    @SpirePatch(clz = AbstractPower.class, method = "onInitialApplication")
+    @SpirePatch(clz = AbstractPower.class, method = "onRemove")
+    @SpirePatch(clz = AbstractPower.class, method = "flash")
+    @SpirePatch(clz = AbstractPower.class, method = "flashWithoutSound")
+    public static class PowerChanged {
+        @SpirePostfixPatch
+        public static void Postfix(AbstractPower __instance) {
+            DirtySections.mark(StateSection.COMBAT_STATE);
+        }
+    }
+
+    // ========== Relics ==========
+
+    // Relic counters change in place when the relic triggers, which is when it flashes
+    @SpirePatch(clz = AbstractRelic.class, method = "onEquip")
+    @SpirePatch(clz = AbstractRelic.class, method = "onUnequip")
+    @SpirePatch(clz = AbstractRelic.class, method = "flash")
+    public static class RelicChanged {
+        @SpirePostfixPatch
+        public static void Postfix(AbstractRelic __instance) {
+            DirtySections.mark(StateSection.RELICS);
+        }
+    }
+
+    @SpirePatch(clz = AbstractRelic.class, method = "setCounter", paramtypez = {int.class})
+    public static class RelicCounterSet {
+        @SpirePostfixPatch
+        public static void Postfix(AbstractRelic __instance, int counter) {
+            DirtySections.mark(StateSection.RELICS);
+        }
+    }
+
+    @SpirePatch(clz = AbstractPlayer.class, method = "loseRelic", paramtypez = {String.class})
+    public static class RelicLost {
+        @SpirePostfixPatch
+        public static void Postfix(AbstractPlayer __instance, String relicId) {
+            DirtySections.mark(StateSection.RELICS);
+        }
+    }
+
+    // ========== Potions ==========
+
+    @SpirePatch(clz = AbstractPlayer.class, method = "obtainPotion", paramtypez = {AbstractPotion.class})
+    @SpirePatch(clz = AbstractPlayer.class, method = "removePotion", paramtypez = {AbstractPotion.class})
+    public static class PotionChanged {
+        @SpirePostfixPatch
+        public static void Postfix(AbstractPlayer __instance, AbstractPotion potion) {
+            DirtySections.mark(StateSection.POTIONS);
+        }
+    }
+
+    @SpirePatch(clz = AbstractPlayer.class, method = "obtainPotion", paramtypez = {int.class, AbstractPotion.class})
+    public static class PotionSlotFilled {
+        @SpirePostfixPatch
+        public static void Postfix(AbstractPlayer __instance, int slot, AbstractPotion potion) {
+            DirtySections.mark(StateSection.POTIONS);
+        }
+    }
+
+    @SpirePatch(clz = TopPanel.class, method = "destroyPotion", paramtypez = {int.class})
+    public static class PotionDestroyed {
+        @SpirePostfixPatch
+        public static void Postfix(TopPanel __instance, int slot) {
+            DirtySections.mark(StateSection.POTIONS);
+        }
+    }
+
+    // ========== Map ==========
+
+    @SpirePatch(clz = AbstractDungeon.class, method = "setCurrMapNode", paramtypez = {MapRoomNode.class})
+    public static class MapNodeChanged {
+        @SpirePostfixPatch
+        public static void Postfix(MapRoomNode node) {
+            DirtySections.mark(StateSection.MAP);
+        }
+    }
+}
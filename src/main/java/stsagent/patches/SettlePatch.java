@@ -0,0 +1,21 @@
+package stsagent.patches;
+
+import com.evacipated.cardcrawl.modthespire.lib.SpirePatch;
+import com.evacipated.cardcrawl.modthespire.lib.SpirePostfixPatch;
+import com.megacrit.cardcrawl.dungeons.AbstractDungeon;
+import stsagent.tools.GameSettleMonitor;
+
+/**
+ * Runs the settle check after every dungeon update.
+ *
+ * AbstractDungeon.update drives the action manager and the screens, so by the end of it
+ * the frame's actions have resolved and the screen for the frame is known.
+ */
+@SpirePatch(clz = AbstractDungeon.class, method = "update")
+public class SettlePatch {
+
+    @SpirePostfixPatch
+    public static void Postfix(AbstractDungeon __instance) {
+        GameSettleMonitor.onFrame();
+    }
+}
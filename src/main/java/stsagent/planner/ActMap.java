@@ -0,0 +1,106 @@
+package stsagent.planner;
+
+/**
+ * Primitive-array copy of the current act's map, for route planning.
+ *
+ * Nodes are the map's rooms that are part of a path, numbered by row then column.
+ * Edges are stored as adjacency ranges: the successors of node n are
+ * {@code edgeTarget[edgeStart[n] .. edgeStart[n + 1])}, in column order, which is the
+ * order the map screen lists them as choices. The map of an act never changes, so one
+ * copy is built per act; only the current node moves (see {@link #at}).
+ */
+public class ActMap {
+    // Room kinds, by the map symbol the game shows
+    public static final int MONSTER = 0;
+    public static final int ELITE = 1;
+    public static final int REST = 2;
+    public static final int SHOP = 3;
+    public static final int EVENT = 4;
+    public static final int TREASURE = 5;
+    public static final int OTHER = 6;
+    public static final int KINDS = 7;
+
+    public final int act;
+    public final int[] nodeX;
+    public final int[] nodeY;
+    public final int[] nodeKind;
+    public final int[] edgeStart;      // Length nodes + 1
+    public final int[] edgeTarget;
+
+    /**
+     * Node the player is on, or -1 before the first room of the act, when every node on
+     * the first row can be entered.
+     */
+    public final int current;
+
+    public ActMap(int act, int[] nodeX, int[] nodeY, int[] nodeKind, int[] edgeStart, int[] edgeTarget,
+                  int current) {
+        this.act = act;
+        this.nodeX = nodeX;
+        this.nodeY = nodeY;
+        this.nodeKind = nodeKind;
+        this.edgeStart = edgeStart;
+        this.edgeTarget = edgeTarget;
+        this.current = current;
+    }
+
+    public int getNodeCount() {
+        return nodeX.length;
+    }
+
+    /**
+     * The same map with the player on another node (or -1).
+     */
+    public ActMap at(int node) {
+        if (node == current) return this;
+        return new ActMap(act, nodeX, nodeY, nodeKind, edgeStart, edgeTarget, node);
+    }
+
+    /**
+     * Node at a map position, or -1.
+     */
+    public int nodeAt(int x, int y) {
+        for (int n = 0; n < nodeX.length; n++) {
+            if (nodeX[n] == x && nodeY[n] == y) return n;
+        }
+        return -1;
+    }
+
+    /**
+     * Nodes the player can enter next, in choice order.
+     */
+    public int[] nextNodes() {
+        if (current >= 0) {
+            int[] next = new int[edgeStart[current + 1] - edgeStart[current]];
+            System.arraycopy(edgeTarget, edgeStart[current], next, 0, next.length);
+            return next;
+        }
+        int count = 0;
+        for (int n = 0; n < nodeY.length; n++) {
+            if (nodeY[n] == 0) count++;
+        }
+        int[] next = new int[count];
+        count = 0;
+        for (int n = 0; n < nodeY.length; n++) {
+            if (nodeY[n] == 0) next[count++] = n;
+        }
+        return next;
+    }
+
+    public static int kindOf(String symbol) {
+        if (symbol == null || symbol.isEmpty()) return OTHER;
+        switch (symbol.charAt(0)) {
+            case 'M': return MONSTER;
+            case 'E': return ELITE;
+            case 'R': return REST;
+            case '$': return SHOP;
+            case '?': return EVENT;
+            case 'T': return TREASURE;
+            default: return OTHER;
+        }
+    }
+
+    public static char symbolOf(int kind) {
+        return "MER$?T*".charAt(kind);
+    }
+}
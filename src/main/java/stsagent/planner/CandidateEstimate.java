@@ -0,0 +1,23 @@
+package stsagent.planner;
+
+/**
+ * Rollout statistics for one candidate first action.
+ */
+public class CandidateEstimate {
+    public final String action;
+    public final int cardIndex;    // 1-based hand index, 0 for end_turn
+    public final int targetIndex;  // 1-based enemy index, 0 if untargeted
+    public final long rollouts;
+    public final double winProbability;
+    public final double expectedHp;
+
+    public CandidateEstimate(String action, int cardIndex, int targetIndex, long rollouts,
+                             double winProbability, double expectedHp) {
+        this.action = action;
+        this.cardIndex = cardIndex;
+        this.targetIndex = targetIndex;
+        this.rollouts = rollouts;
+        this.winProbability = winProbability;
+        this.expectedHp = expectedHp;
+    }
+}
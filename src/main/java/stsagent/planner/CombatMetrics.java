@@ -0,0 +1,99 @@
+package stsagent.planner;
+
+/**
+ * Numbers the model would otherwise work out from the combat state each turn: damage
+ * coming in, block still missing, and which enemies the hand can kill right now.
+ *
+ * Intent damage is taken as the game shows it, which already includes the enemy's
+ * Strength and Weak and the player's Vulnerable. Hand damage is per card as shown (the
+ * player's Strength and Weak applied), times 1.5 against a Vulnerable enemy. Multi-hit
+ * attack cards count one hit, so a kill they would make can be missed.
+ * Each enemy is checked on its own: two enemies marked lethal may need the same cards.
+ */
+public class CombatMetrics {
+    public final int incoming;            // Total intent damage this turn
+    public final int blockShortfall;      // Incoming damage current block doesn't cover
+    public final int[] enemyIncoming;     // Per enemy: hits times damage per hit, 0 if not attacking
+    public final int[] enemyToKill;       // Per enemy: HP plus block
+    public final int[] handDamage;        // Per enemy: most damage the hand deals with the energy left
+    public final boolean[] lethal;        // Per enemy: handDamage >= enemyToKill
+
+    private CombatMetrics(int incoming, int blockShortfall, int[] enemyIncoming, int[] enemyToKill,
+                          int[] handDamage, boolean[] lethal) {
+        this.incoming = incoming;
+        this.blockShortfall = blockShortfall;
+        this.enemyIncoming = enemyIncoming;
+        this.enemyToKill = enemyToKill;
+        this.handDamage = handDamage;
+        this.lethal = lethal;
+    }
+
+    /**
+     * @param vulnerable Per enemy, whether it takes 50% more attack damage; null if none do
+     */
+    public static CombatMetrics of(CombatModel model, boolean[] vulnerable) {
+        int enemies = model.getEnemyCount();
+        int[] enemyIncoming = new int[enemies];
+        int[] enemyToKill = new int[enemies];
+        int[] handDamage = new int[enemies];
+        boolean[] lethal = new boolean[enemies];
+
+        int incoming = 0;
+        for (int i = 0; i < enemies; i++) {
+            enemyIncoming[i] = model.enemyIntentDamage[i] * model.enemyIntentHits[i];
+            incoming += enemyIncoming[i];
+        }
+
+        // The hand's best damage depends only on the multiplier, so at most two runs
+        int plain = bestDamage(model, false);
+        int boosted = -1;
+        for (int i = 0; i < enemies; i++) {
+            boolean vuln = vulnerable != null && i < vulnerable.length && vulnerable[i];
+            if (vuln && boosted < 0) {
+                boosted = bestDamage(model, true);
+            }
+            enemyToKill[i] = model.enemyHp[i] + model.enemyBlock[i];
+            handDamage[i] = vuln ? boosted : plain;
+            lethal[i] = handDamage[i] >= enemyToKill[i];
+        }
+
+        return new CombatMetrics(incoming, Math.max(0, incoming - model.playerBlock),
+                enemyIncoming, enemyToKill, handDamage, lethal);
+    }
+
+    /**
+     * Most attack damage the hand can deal with the current energy: a 0/1 knapsack over
+     * costed attacks, then X-cost attacks spending whatever is left.
+     */
+    private static int bestDamage(CombatModel model, boolean vulnerable) {
+        int energy = Math.max(0, model.energy);
+        int[] best = new int[energy + 1];   // Best damage using at most e energy
+        int bestX = 0;                      // Best per-energy damage of an X-cost attack
+        int free = 0;                       // 0-cost attacks, always played
+        for (int card : model.hand) {
+            if (!model.hasFlag(card, CombatModel.FLAG_ATTACK) || model.hasFlag(card, CombatModel.FLAG_UNPLAYABLE)) {
+                continue;
+            }
+            int damage = vulnerable ? model.cardDamage[card] * 3 / 2 : model.cardDamage[card];
+            if (model.hasFlag(card, CombatModel.FLAG_X_COST)) {
+                bestX = Math.max(bestX, damage);
+                continue;
+            }
+            int cost = model.cardCost[card];
+            if (cost <= 0) {
+                free += damage;
+                continue;
+            }
+            for (int e = energy; e >= cost; e--) {
+                best[e] = Math.max(best[e], best[e - cost] + damage);
+            }
+        }
+        int result = best[energy];
+        if (bestX > 0) {
+            for (int spent = 1; spent <= energy; spent++) {
+                result = Math.max(result, best[energy - spent] + bestX * spent);
+            }
+        }
+        return result + free;
+    }
+}
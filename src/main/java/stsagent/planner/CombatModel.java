@@ -0,0 +1,125 @@
+package stsagent.planner;
+
+/**
+ * Primitive-array copy of a combat, used as the starting point for rollouts.
+ *
+ * Every card the player owns in this combat (hand, draw pile, discard pile) gets
+ * a slot id; piles are arrays of slot ids. Enemies are the living monsters in the
+ * same order as get_combat_state, so enemy i here is target_index i + 1.
+ * Also used by the plan executor to check a step still makes sense.
+ */
+public class CombatModel {
+    // Card flags
+    public static final int FLAG_ATTACK = 1;
+    public static final int FLAG_AOE = 1 << 1;
+    public static final int FLAG_EXHAUST = 1 << 2;
+    public static final int FLAG_UNPLAYABLE = 1 << 3;
+    public static final int FLAG_X_COST = 1 << 4;
+
+    // Player
+    public final int playerHp;
+    public final int playerBlock;
+    public final int energy;
+    public final int energyPerTurn;
+    public final int handSize;
+
+    // Cards (indexed by slot id)
+    public final String[] cardNames;
+    public final int[] cardCost;
+    public final int[] cardDamage;
+    public final int[] cardBlock;
+    public final int[] cardFlags;
+    public final String[] cardHandles;     // Stable card ids (see Handles), null entries if unknown
+
+    // Piles (arrays of slot ids)
+    public final int[] hand;
+    public final int[] drawPile;
+    public final int[] discardPile;
+
+    // Enemies
+    public final String[] enemyNames;
+    public final int[] enemyIds;           // Per-combat monster ids (see Handles), stable within a fight
+    public final int[] enemyHp;
+    public final int[] enemyBlock;
+    public final int[] enemyIntentDamage;  // Per hit, 0 if not attacking
+    public final int[] enemyIntentHits;
+
+    public CombatModel(int playerHp, int playerBlock, int energy, int energyPerTurn, int handSize,
+                       String[] cardNames, int[] cardCost, int[] cardDamage, int[] cardBlock, int[] cardFlags,
+                       String[] cardHandles, int[] hand, int[] drawPile, int[] discardPile,
+                       String[] enemyNames, int[] enemyIds, int[] enemyHp, int[] enemyBlock,
+                       int[] enemyIntentDamage, int[] enemyIntentHits) {
+        this.playerHp = playerHp;
+        this.playerBlock = playerBlock;
+        this.energy = energy;
+        this.energyPerTurn = energyPerTurn;
+        this.handSize = handSize;
+        this.cardNames = cardNames;
+        this.cardCost = cardCost;
+        this.cardDamage = cardDamage;
+        this.cardBlock = cardBlock;
+        this.cardFlags = cardFlags;
+        this.cardHandles = cardHandles;
+        this.hand = hand;
+        this.drawPile = drawPile;
+        this.discardPile = discardPile;
+        this.enemyNames = enemyNames;
+        this.enemyIds = enemyIds;
+        this.enemyHp = enemyHp;
+        this.enemyBlock = enemyBlock;
+        this.enemyIntentDamage = enemyIntentDamage;
+        this.enemyIntentHits = enemyIntentHits;
+    }
+
+    public int getCardCount() {
+        return cardCost.length;
+    }
+
+    public int getEnemyCount() {
+        return enemyHp.length;
+    }
+
+    public boolean hasFlag(int card, int flag) {
+        return (cardFlags[card] & flag) != 0;
+    }
+
+    /**
+     * Find the current enemy index (0-based) for a monster id, or -1 if it is gone or unknown.
+     */
+    public int findEnemyById(int id) {
+        if (id < 0) return -1;
+        for (int i = 0; i < enemyIds.length; i++) {
+            if (enemyIds[i] == id) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Find the first hand position holding a card with this name, or -1.
+     */
+    public int findInHand(String name) {
+        for (int pos = 0; pos < hand.length; pos++) {
+            if (cardNames[hand[pos]].equalsIgnoreCase(name)) return pos;
+        }
+        return -1;
+    }
+
+    /**
+     * Find the hand position holding the card with this handle, or -1.
+     */
+    public int findInHandByHandle(String handle) {
+        for (int pos = 0; pos < hand.length; pos++) {
+            if (handle.equalsIgnoreCase(cardHandles[hand[pos]])) return pos;
+        }
+        return -1;
+    }
+
+    /**
+     * Whether a card can be played with the given energy.
+     */
+    public boolean isPlayable(int card, int availableEnergy) {
+        if (hasFlag(card, FLAG_UNPLAYABLE)) return false;
+        if (hasFlag(card, FLAG_X_COST)) return true;
+        return cardCost[card] <= availableEnergy;
+    }
+}
@@ -0,0 +1,186 @@
+package stsagent.planner;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Multi-turn Monte Carlo planner for long fights.
+ *
+ * Each candidate first action (play a hand card at a target, or end turn) is
+ * scored by running random rollouts from a {@link CombatModel} until the time
+ * budget runs out. Rollouts are spread over a fork-join pool sized to the number
+ * of cores; every leaf owns its own RNG and {@link Rollout} state, so rollouts
+ * neither allocate nor contend.
+ */
+public class MonteCarloPlanner {
+    private static final Logger logger = LogManager.getLogger(MonteCarloPlanner.class);
+
+    // Leaf tasks per worker thread, keeps cores busy when candidates are uneven
+    private static final int SLICES_PER_THREAD = 2;
+    private static final int ROLLOUTS_PER_ROUND = 32;
+
+    private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private final SplittableRandom seedSource = new SplittableRandom();
+    private long timeBudgetMs;
+
+    public MonteCarloPlanner(long timeBudgetMs) {
+        this.timeBudgetMs = timeBudgetMs;
+    }
+
+    /**
+     * Estimate win probability and expected HP for each candidate first action.
+     */
+    public PlanResult plan(CombatModel model) {
+        List<Candidate> candidates = listCandidates(model);
+        int n = candidates.size();
+
+        // Every leaf owns a candidate, an RNG and reusable rollout state
+        int slices = Math.max(1, (pool.getParallelism() * SLICES_PER_THREAD + n - 1) / n);
+        Leaf[] leaves = new Leaf[n * slices];
+        SplittableRandom seed;
+        synchronized (seedSource) {
+            seed = seedSource.split();
+        }
+        for (int i = 0; i < leaves.length; i++) {
+            leaves[i] = new Leaf(candidates.get(i / slices), new Rollout(model, seed.split()));
+        }
+
+        // Run in short rounds so every candidate gets a fair share of the budget,
+        // even when there are more leaves than cores
+        long start = System.nanoTime();
+        long deadline = start + timeBudgetMs * 1_000_000L;
+        do {
+            pool.invoke(new RoundTask(leaves, 0, leaves.length, deadline));
+        } while (System.nanoTime() < deadline);
+
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000L;
+
+        long[] rollouts = new long[n];
+        long[] wins = new long[n];
+        long[] hpSum = new long[n];
+        for (int i = 0; i < leaves.length; i++) {
+            int c = i / slices;
+            rollouts[c] += leaves[i].count;
+            wins[c] += leaves[i].won;
+            hpSum[c] += leaves[i].hp;
+        }
+
+        List<CandidateEstimate> estimates = new ArrayList<>();
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            Candidate c = candidates.get(i);
+            long count = rollouts[i];
+            total += count;
+            estimates.add(new CandidateEstimate(
+                    c.describe(model),
+                    c.handPos >= 0 ? c.handPos + 1 : 0,
+                    c.target >= 0 ? c.target + 1 : 0,
+                    count,
+                    count > 0 ? (double) wins[i] / count : 0,
+                    count > 0 ? (double) hpSum[i] / count : 0
+            ));
+        }
+
+        logger.info("Planner ran {} rollouts over {} candidates in {} ms", total, n, elapsedMs);
+        return new PlanResult(estimates, total, elapsedMs, pool.getParallelism());
+    }
+
+    public long getTimeBudgetMs() { return timeBudgetMs; }
+    public void setTimeBudgetMs(long timeBudgetMs) { this.timeBudgetMs = timeBudgetMs; }
+
+    // ========== Candidates ==========
+
+    private static List<Candidate> listCandidates(CombatModel model) {
+        List<Candidate> candidates = new ArrayList<>();
+        for (int pos = 0; pos < model.hand.length; pos++) {
+            int card = model.hand[pos];
+            if (!model.isPlayable(card, model.energy)) continue;
+
+            boolean singleTarget = model.hasFlag(card, CombatModel.FLAG_ATTACK) &&
+                                   !model.hasFlag(card, CombatModel.FLAG_AOE);
+            if (singleTarget) {
+                for (int e = 0; e < model.getEnemyCount(); e++) {
+                    candidates.add(new Candidate(pos, e));
+                }
+            } else {
+                candidates.add(new Candidate(pos, -1));
+            }
+        }
+        candidates.add(new Candidate(-1, -1));  // end_turn
+        return candidates;
+    }
+
+    private static class Candidate {
+        final int handPos;
+        final int target;
+
+        Candidate(int handPos, int target) {
+            this.handPos = handPos;
+            this.target = target;
+        }
+
+        String describe(CombatModel model) {
+            if (handPos < 0) return "end_turn";
+            String name = model.cardNames[model.hand[handPos]];
+            return target >= 0 ? name + " -> " + model.enemyNames[target] : name;
+        }
+    }
+
+    // ========== Fork-Join ==========
+
+    private static class Leaf {
+        final Candidate candidate;
+        final Rollout rollout;
+        long count, won, hp;
+
+        Leaf(Candidate candidate, Rollout rollout) {
+            this.candidate = candidate;
+            this.rollout = rollout;
+        }
+
+        void runBatch(long deadline) {
+            for (int i = 0; i < ROLLOUTS_PER_ROUND && System.nanoTime() < deadline; i++) {
+                rollout.run(candidate.handPos, candidate.target);
+                count++;
+                if (rollout.won) won++;
+                hp += rollout.finalHp;
+            }
+        }
+    }
+
+    /**
+     * One round: splits the leaf range in half until a single leaf remains,
+     * which then runs a batch of rollouts.
+     */
+    private static class RoundTask extends RecursiveAction {
+        private final Leaf[] leaves;
+        private final int from;
+        private final int to;
+        private final long deadline;
+
+        RoundTask(Leaf[] leaves, int from, int to, long deadline) {
+            this.leaves = leaves;
+            this.from = from;
+            this.to = to;
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new RoundTask(leaves, from, mid, deadline),
+                          new RoundTask(leaves, mid, to, deadline));
+                return;
+            }
+            leaves[from].runBatch(deadline);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package stsagent.planner;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of a planner run, ranked best first.
+ */
+public class PlanResult {
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+
+    public final List<CandidateEstimate> estimates;
+    public final long totalRollouts;
+    public final long elapsedMs;
+    public final int threads;
+
+    public PlanResult(List<CandidateEstimate> estimates, long totalRollouts, long elapsedMs, int threads) {
+        List<CandidateEstimate> sorted = new ArrayList<>(estimates);
+        sorted.sort(Comparator.comparingDouble((CandidateEstimate e) -> e.winProbability)
+                .thenComparingDouble(e -> e.expectedHp)
+                .reversed());
+        this.estimates = sorted;
+        this.totalRollouts = totalRollouts;
+        this.elapsedMs = elapsedMs;
+        this.threads = threads;
+    }
+
+    /**
+     * Format for LLM consumption.
+     */
+    public String toJson() {
+        List<Map<String, Object>> candidates = new ArrayList<>();
+        for (CandidateEstimate e : estimates) {
+            Map<String, Object> c = new LinkedHashMap<>();
+            c.put("action", e.action);
+            if (e.cardIndex > 0) {
+                c.put("card_index", e.cardIndex);
+            }
+            if (e.targetIndex > 0) {
+                c.put("target_index", e.targetIndex);
+            }
+            c.put("win_probability", Math.round(e.winProbability * 1000) / 1000.0);
+            c.put("expected_hp", Math.round(e.expectedHp * 10) / 10.0);
+            c.put("rollouts", e.rollouts);
+            candidates.add(c);
+        }
+
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("candidates", candidates);
+        state.put("total_rollouts", totalRollouts);
+        state.put("elapsed_ms", elapsedMs);
+        state.put("threads", threads);
+        return gson.toJson(state);
+    }
+}
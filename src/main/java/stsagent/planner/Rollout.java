@@ -0,0 +1,218 @@
+package stsagent.planner;
+
+import java.util.SplittableRandom;
+
+/**
+ * Reusable rollout state for one worker.
+ *
+ * All arrays are sized once from the model, so running a rollout does not allocate.
+ * The playout policy is deliberately simple: play random affordable cards, focus
+ * attacks on the weakest enemy, and assume every enemy repeats its current intent.
+ */
+class Rollout {
+    static final int MAX_TURNS = 12;
+
+    private final CombatModel model;
+    private final SplittableRandom random;
+
+    private final int[] hand;
+    private final int[] draw;
+    private final int[] discard;
+    private final int[] playable;
+    private final int[] enemyHp;
+    private final int[] enemyBlock;
+
+    private int handCount;
+    private int drawCount;
+    private int discardCount;
+    private int playerHp;
+    private int playerBlock;
+    private int energy;
+
+    // Outcome of the last run
+    boolean won;
+    int finalHp;
+
+    Rollout(CombatModel model, SplittableRandom random) {
+        this.model = model;
+        this.random = random;
+
+        int cards = model.getCardCount();
+        this.hand = new int[cards];
+        this.draw = new int[cards];
+        this.discard = new int[cards];
+        this.playable = new int[cards];
+        this.enemyHp = new int[model.getEnemyCount()];
+        this.enemyBlock = new int[model.getEnemyCount()];
+    }
+
+    /**
+     * Run one rollout starting with the given first action.
+     *
+     * @param handPos Position in the starting hand, or -1 to end the turn immediately
+     * @param target  Enemy index for single-target attacks
+     */
+    void run(int handPos, int target) {
+        reset();
+
+        if (handPos >= 0) {
+            playFromHand(handPos, target);
+            playTurn();
+        }
+
+        for (int turn = 0; turn < MAX_TURNS; turn++) {
+            if (allEnemiesDead()) {
+                finish(true);
+                return;
+            }
+
+            enemyTurn();
+            if (playerHp <= 0) {
+                finish(false);
+                return;
+            }
+
+            startTurn();
+            playTurn();
+        }
+
+        finish(allEnemiesDead());
+    }
+
+    // ========== Simulation ==========
+
+    private void reset() {
+        handCount = copy(model.hand, hand);
+        drawCount = copy(model.drawPile, draw);
+        discardCount = copy(model.discardPile, discard);
+        System.arraycopy(model.enemyHp, 0, enemyHp, 0, enemyHp.length);
+        System.arraycopy(model.enemyBlock, 0, enemyBlock, 0, enemyBlock.length);
+        playerHp = model.playerHp;
+        playerBlock = model.playerBlock;
+        energy = model.energy;
+
+        // Draw order is unknown to the player, so every rollout samples its own
+        shuffle(draw, drawCount);
+    }
+
+    private void playTurn() {
+        while (!allEnemiesDead()) {
+            int count = 0;
+            for (int i = 0; i < handCount; i++) {
+                if (model.isPlayable(hand[i], energy)) {
+                    playable[count++] = i;
+                }
+            }
+            if (count == 0) return;
+
+            playFromHand(playable[random.nextInt(count)], weakestEnemy());
+        }
+    }
+
+    private void playFromHand(int handPos, int target) {
+        int card = hand[handPos];
+        hand[handPos] = hand[--handCount];
+
+        int times = 1;
+        if (model.hasFlag(card, CombatModel.FLAG_X_COST)) {
+            times = energy;
+            energy = 0;
+        } else {
+            energy -= Math.max(0, model.cardCost[card]);
+        }
+
+        if (model.hasFlag(card, CombatModel.FLAG_ATTACK)) {
+            int damage = model.cardDamage[card] * times;
+            if (model.hasFlag(card, CombatModel.FLAG_AOE)) {
+                for (int e = 0; e < enemyHp.length; e++) {
+                    if (enemyHp[e] > 0) damageEnemy(e, damage);
+                }
+            } else if (target >= 0 && enemyHp[target] > 0) {
+                damageEnemy(target, damage);
+            }
+        }
+        playerBlock += model.cardBlock[card] * times;
+
+        if (!model.hasFlag(card, CombatModel.FLAG_EXHAUST)) {
+            discard[discardCount++] = card;
+        }
+    }
+
+    private void damageEnemy(int e, int damage) {
+        int blocked = Math.min(enemyBlock[e], damage);
+        enemyBlock[e] -= blocked;
+        enemyHp[e] -= damage - blocked;
+    }
+
+    private void enemyTurn() {
+        // Hand is discarded at end of turn
+        for (int i = 0; i < handCount; i++) {
+            discard[discardCount++] = hand[i];
+        }
+        handCount = 0;
+
+        for (int e = 0; e < enemyHp.length; e++) {
+            if (enemyHp[e] <= 0) continue;
+            enemyBlock[e] = 0;
+            for (int hit = 0; hit < model.enemyIntentHits[e]; hit++) {
+                int damage = model.enemyIntentDamage[e];
+                int blocked = Math.min(playerBlock, damage);
+                playerBlock -= blocked;
+                playerHp -= damage - blocked;
+            }
+        }
+    }
+
+    private void startTurn() {
+        playerBlock = 0;
+        energy = model.energyPerTurn;
+        for (int i = 0; i < model.handSize; i++) {
+            if (drawCount == 0) {
+                if (discardCount == 0) break;
+                System.arraycopy(discard, 0, draw, 0, discardCount);
+                drawCount = discardCount;
+                discardCount = 0;
+                shuffle(draw, drawCount);
+            }
+            hand[handCount++] = draw[--drawCount];
+        }
+    }
+
+    private int weakestEnemy() {
+        int best = -1;
+        for (int e = 0; e < enemyHp.length; e++) {
+            if (enemyHp[e] > 0 && (best < 0 || enemyHp[e] + enemyBlock[e] < enemyHp[best] + enemyBlock[best])) {
+                best = e;
+            }
+        }
+        return best;
+    }
+
+    private boolean allEnemiesDead() {
+        for (int hp : enemyHp) {
+            if (hp > 0) return false;
+        }
+        return true;
+    }
+
+    private void finish(boolean won) {
+        this.won = won;
+        this.finalHp = Math.max(0, playerHp);
+    }
+
+    // ========== Helper Methods ==========
+
+    private void shuffle(int[] arr, int count) {
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = arr[i];
+            arr[i] = arr[j];
+            arr[j] = tmp;
+        }
+    }
+
+    private static int copy(int[] src, int[] dst) {
+        System.arraycopy(src, 0, dst, 0, src.length);
+        return src.length;
+    }
+}
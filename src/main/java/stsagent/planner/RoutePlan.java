@@ -0,0 +1,92 @@
+package stsagent.planner;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of a route planner run: the best routes from the current node, best first, and
+ * what every path from there ranges over.
+ */
+public class RoutePlan {
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+
+    public final ActMap map;
+    public final List<Route> routes;
+    public final long totalPaths;
+    public final int[] minRooms;       // Fewest rooms of each kind on any path
+    public final int[] maxRooms;       // Most rooms of each kind on any path
+    public final long elapsedNanos;
+
+    public RoutePlan(ActMap map, List<Route> routes, long totalPaths, int[] minRooms, int[] maxRooms,
+                     long elapsedNanos) {
+        this.map = map;
+        this.routes = routes;
+        this.totalPaths = totalPaths;
+        this.minRooms = minRooms;
+        this.maxRooms = maxRooms;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * One path to the end of the act.
+     */
+    public static class Route {
+        public final double score;
+        public final int choice;       // 1-based map choice for the first step
+        public final int[] nodes;      // ActMap nodes, first step first
+        public final int[] rooms;      // Rooms per kind
+
+        public Route(double score, int choice, int[] nodes, int[] rooms) {
+            this.score = score;
+            this.choice = choice;
+            this.nodes = nodes;
+            this.rooms = rooms;
+        }
+    }
+
+    /**
+     * Format for LLM consumption.
+     */
+    public String toJson() {
+        Map<String, Object> state = new LinkedHashMap<>();
+        if (map.current >= 0) {
+            state.put("from", map.nodeX[map.current] + "," + map.nodeY[map.current]);
+        } else {
+            state.put("from", "start of act");
+        }
+        state.put("total_paths", totalPaths);
+
+        Map<String, Object> ranges = new LinkedHashMap<>();
+        for (int kind = 0; kind < RoutePlanner.KIND_NAMES.length; kind++) {
+            ranges.put(RoutePlanner.KIND_NAMES[kind],
+                    minRooms[kind] == maxRooms[kind] ? String.valueOf(minRooms[kind])
+                                                     : minRooms[kind] + "-" + maxRooms[kind]);
+        }
+        state.put("rooms_on_any_path", ranges);
+
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (Route route : routes) {
+            Map<String, Object> r = new LinkedHashMap<>();
+            r.put("choice", route.choice);
+            int first = route.nodes[0];
+            r.put("first_node", map.nodeX[first] + "," + map.nodeY[first]);
+            StringBuilder path = new StringBuilder();
+            for (int node : route.nodes) {
+                path.append(ActMap.symbolOf(map.nodeKind[node]));
+            }
+            r.put("path", path.toString());
+            r.put("score", Math.round(route.score * 100) / 100.0);
+            for (int kind = 0; kind < RoutePlanner.KIND_NAMES.length; kind++) {
+                r.put(RoutePlanner.KIND_NAMES[kind] + "s", route.rooms[kind]);
+            }
+            list.add(r);
+        }
+        state.put("routes", list);
+        return gson.toJson(state);
+    }
+}
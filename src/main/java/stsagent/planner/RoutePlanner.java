@@ -0,0 +1,207 @@
+package stsagent.planner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Ranks every path from the current map node to the end of the act.
+ *
+ * Rows only lead upward, so the map is a DAG and one pass from the top row down gives,
+ * for every node, the best few continuations and the range of room counts over all
+ * paths through it. A path scores the sum of its rooms' weights; the weights say how much
+ * the player wants each kind of room this act (e.g. elites when strong, rest sites when
+ * low). A full act takes well under a millisecond.
+ */
+public class RoutePlanner {
+    public static final String[] KIND_NAMES = {"monster", "elite", "rest", "shop", "event", "treasure"};
+    public static final String DEFAULT_WEIGHTS = "monster=0.3, elite=1, rest=1.2, shop=0.6, event=0.6, treasure=0.8";
+    public static final int MAX_ROUTES = 5;
+    // Paths through different columns often have the same rooms in the same order; more
+    // are ranked than returned so that duplicates can be dropped
+    private static final int CANDIDATES_PER_ROUTE = 4;
+
+    private final double[] weights;
+
+    public RoutePlanner() {
+        this(parseWeights(DEFAULT_WEIGHTS, new double[ActMap.KINDS]));
+    }
+
+    /**
+     * @param weights Weight per room kind, indexed by the ActMap kind constants
+     */
+    public RoutePlanner(double[] weights) {
+        this.weights = Arrays.copyOf(weights, ActMap.KINDS);
+    }
+
+    /**
+     * Weights from a spec such as {@code "elite=1.5, rest=1"}. Kinds the spec doesn't
+     * name keep their value from {@code base}; unknown names and bad numbers are skipped.
+     */
+    public static double[] parseWeights(String spec, double[] base) {
+        double[] result = Arrays.copyOf(base, ActMap.KINDS);
+        if (spec == null) return result;
+        for (String entry : spec.split(",")) {
+            int eq = entry.indexOf('=');
+            if (eq < 0) continue;
+            int kind = kindByName(entry.substring(0, eq).trim());
+            if (kind < 0) continue;
+            try {
+                result[kind] = Double.parseDouble(entry.substring(eq + 1).trim());
+            } catch (NumberFormatException e) {
+                // Keep the base weight
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Room kind for a weight name, or -1.
+     */
+    public static int kindByName(String name) {
+        for (int kind = 0; kind < KIND_NAMES.length; kind++) {
+            if (KIND_NAMES[kind].equalsIgnoreCase(name)) return kind;
+        }
+        return -1;
+    }
+
+    public double[] getWeights() {
+        return Arrays.copyOf(weights, weights.length);
+    }
+
+    public RoutePlan plan(ActMap map, int count) {
+        return plan(map, weights, count);
+    }
+
+    /**
+     * Best routes from the map's current node, best first.
+     *
+     * @param weights Weight per room kind, overriding the planner's
+     * @param count   Routes to return, at most {@link #MAX_ROUTES}
+     */
+    public RoutePlan plan(ActMap map, double[] weights, int count) {
+        long start = System.nanoTime();
+        int wanted = Math.max(1, Math.min(count, MAX_ROUTES));
+        int k = wanted * CANDIDATES_PER_ROUTE;
+        int n = map.getNodeCount();
+
+        // Best k continuations per node (the node included), as score plus a link to the
+        // child and the child's rank, filled from the top row down
+        double[][] score = new double[n][k];
+        int[][] nextNode = new int[n][k];
+        int[][] nextRank = new int[n][k];
+        int[] found = new int[n];
+
+        // Fewest and most rooms of each kind, and path counts, over all paths from a node
+        int[][] min = new int[n][ActMap.KINDS];
+        int[][] max = new int[n][ActMap.KINDS];
+        long[] paths = new long[n];
+
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Integer.compare(map.nodeY[b], map.nodeY[a]));
+
+        for (int node : order) {
+            int kind = map.nodeKind[node];
+            double own = weights[kind];
+            int from = map.edgeStart[node];
+            int to = map.edgeStart[node + 1];
+            if (from == to) {
+                score[node][0] = own;
+                nextNode[node][0] = -1;
+                found[node] = 1;
+                min[node][kind] = max[node][kind] = 1;
+                paths[node] = 1;
+                continue;
+            }
+            Arrays.fill(min[node], Integer.MAX_VALUE);
+            for (int e = from; e < to; e++) {
+                int child = map.edgeTarget[e];
+                for (int r = 0; r < found[child]; r++) {
+                    insert(score[node], nextNode[node], nextRank[node], found, node, k,
+                            own + score[child][r], child, r);
+                }
+                for (int c = 0; c < ActMap.KINDS; c++) {
+                    min[node][c] = Math.min(min[node][c], min[child][c]);
+                    max[node][c] = Math.max(max[node][c], max[child][c]);
+                }
+                paths[node] += paths[child];
+            }
+            min[node][kind]++;
+            max[node][kind]++;
+        }
+
+        // Same merge over the nodes the player can enter next
+        int[] next = map.nextNodes();
+        double[] bestScore = new double[k];
+        int[] bestNode = new int[k];
+        int[] bestRank = new int[k];
+        int[] bestFound = new int[1];
+        int[] rangeMin = new int[ActMap.KINDS];
+        int[] rangeMax = new int[ActMap.KINDS];
+        long totalPaths = 0;
+        Arrays.fill(rangeMin, next.length > 0 ? Integer.MAX_VALUE : 0);
+        for (int child : next) {
+            for (int r = 0; r < found[child]; r++) {
+                insert(bestScore, bestNode, bestRank, bestFound, 0, k, score[child][r], child, r);
+            }
+            for (int c = 0; c < ActMap.KINDS; c++) {
+                rangeMin[c] = Math.min(rangeMin[c], min[child][c]);
+                rangeMax[c] = Math.max(rangeMax[c], max[child][c]);
+            }
+            totalPaths += paths[child];
+        }
+
+        List<RoutePlan.Route> routes = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (int r = 0; r < bestFound[0] && routes.size() < wanted; r++) {
+            List<Integer> nodes = new ArrayList<>();
+            int node = bestNode[r];
+            int rank = bestRank[r];
+            while (node >= 0) {
+                nodes.add(node);
+                int child = nextNode[node][rank];
+                rank = nextRank[node][rank];
+                node = child;
+            }
+            int[] path = new int[nodes.size()];
+            int[] counts = new int[ActMap.KINDS];
+            StringBuilder symbols = new StringBuilder();
+            for (int i = 0; i < path.length; i++) {
+                path[i] = nodes.get(i);
+                counts[map.nodeKind[path[i]]]++;
+                symbols.append(ActMap.symbolOf(map.nodeKind[path[i]]));
+            }
+            int choice = 0;
+            for (int i = 0; i < next.length; i++) {
+                if (next[i] == path[0]) choice = i + 1;
+            }
+            if (!seen.add(choice + ":" + symbols)) continue;
+            routes.add(new RoutePlan.Route(bestScore[r], choice, path, counts));
+        }
+
+        return new RoutePlan(map, routes, totalPaths, rangeMin, rangeMax, System.nanoTime() - start);
+    }
+
+    /**
+     * Insert a candidate into a top-k list kept in descending score order.
+     */
+    private static void insert(double[] score, int[] nextNode, int[] nextRank, int[] found, int slot, int k,
+                               double candidate, int child, int rank) {
+        int size = found[slot];
+        if (size == k && candidate <= score[k - 1]) return;
+        int i = Math.min(size, k - 1);
+        while (i > 0 && score[i - 1] < candidate) {
+            score[i] = score[i - 1];
+            nextNode[i] = nextNode[i - 1];
+            nextRank[i] = nextRank[i - 1];
+            i--;
+        }
+        score[i] = candidate;
+        nextNode[i] = child;
+        nextRank[i] = rank;
+        if (size < k) found[slot] = size + 1;
+    }
+}
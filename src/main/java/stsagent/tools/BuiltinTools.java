@@ -1,10 +1,19 @@
 package stsagent.tools;
 
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import stsagent.planner.CombatModel;
+import stsagent.planner.ActMap;
+import stsagent.planner.MonteCarloPlanner;
+import stsagent.planner.RoutePlanner;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -21,20 +30,35 @@ public class BuiltinTools {
     public static final String GET_RELICS = "get_relics";
     public static final String GET_POTIONS = "get_potions";
     public static final String GET_MAP = "get_map";
+    public static final String SIMULATE_COMBAT = "simulate_combat";
+    public static final String LOOKUP_CATALOG = "lookup_catalog";
+    public static final String PLAN_ROUTE = "plan_route";
+
+    private static final long DEFAULT_PLANNER_BUDGET_MS = 200;
 
     private static final Set<String> BUILTIN_TOOL_NAMES = new HashSet<>(Arrays.asList(
             GET_GAME_STATE, GET_COMBAT_STATE, GET_SCREEN,
-            GET_DECK, GET_RELICS, GET_POTIONS, GET_MAP
+            GET_DECK, GET_RELICS, GET_POTIONS, GET_MAP,
+            SIMULATE_COMBAT, LOOKUP_CATALOG, PLAN_ROUTE
     ));
 
-    private final GameStateReader reader;
+    private final GameStateSource reader;
+    private final MonteCarloPlanner planner;
+    private final RoutePlanner routePlanner;
+    private final JsonArray toolDefinitions = buildToolDefinitions();
+
+    public BuiltinTools(GameStateSource reader) {
+        this(reader, new MonteCarloPlanner(DEFAULT_PLANNER_BUDGET_MS));
+    }
 
-    public BuiltinTools() {
-        this.reader = new GameStateReader();
+    public BuiltinTools(GameStateSource reader, MonteCarloPlanner planner) {
+        this(reader, planner, new RoutePlanner());
     }
 
-    public BuiltinTools(GameStateReader reader) {
+    public BuiltinTools(GameStateSource reader, MonteCarloPlanner planner, RoutePlanner routePlanner) {
         this.reader = reader;
+        this.planner = planner;
+        this.routePlanner = routePlanner;
     }
 
     /**
@@ -63,15 +87,65 @@ public class BuiltinTools {
                 return reader.getPotions();
             case GET_MAP:
                 return reader.getMap();
+            case SIMULATE_COMBAT:
+                return simulateCombat();
+            case LOOKUP_CATALOG:
+                return lookupCatalog(args);
+            case PLAN_ROUTE:
+                return planRoute(args);
             default:
                 return "{\"error\": \"Unknown tool: " + toolName + "\"}";
         }
     }
 
+    /**
+     * Execute a built-in tool within a run. A call with the same name and arguments as an
+     * earlier one in the run, made while the state is unchanged, returns a marker pointing
+     * back to that call instead of the payload. The state counts as unchanged when the
+     * source's output fingerprint is the same, without running the tool, or when the
+     * result is the same string. The plain fingerprint won't do: it leaves out card and
+     * enemy handles, and a marker must not send the model back to stale ids.
+     *
+     * @param memo   The run's earlier results, or null to always return the payload
+     * @param callId Id of this tool call, which later markers refer to
+     */
+    public String execute(String toolName, JsonObject args, ToolMemo memo, String callId) {
+        if (memo == null) {
+            return execute(toolName, args);
+        }
+        memo.countCall();
+        String key = args != null && args.size() > 0 ? toolName + args : toolName;
+        long fingerprint = reader.getOutputFingerprint();
+        ToolMemo.Entry previous = memo.get(key);
+        if (previous != null && fingerprint != 0 && previous.fingerprint == fingerprint) {
+            return unchanged(memo, previous);
+        }
+
+        String result = execute(toolName, args);
+        if (previous != null && result.equals(previous.result)) {
+            // Another part of the state changed (e.g. get_deck after a card was played)
+            memo.put(key, new ToolMemo.Entry(fingerprint, previous.result, previous.callId));
+            return unchanged(memo, previous);
+        }
+        memo.put(key, new ToolMemo.Entry(fingerprint, result, callId));
+        return result;
+    }
+
+    private static String unchanged(ToolMemo memo, ToolMemo.Entry previous) {
+        String marker = "{\"unchanged_since_call\": \"" + previous.callId + "\"}";
+        memo.countRepeat(previous.result, marker);
+        return marker;
+    }
+
     /**
      * Get all built-in tool definitions in OpenAI function calling format.
+     * Built once; the returned array is shared and must not be modified.
      */
     public JsonArray getToolDefinitions() {
+        return toolDefinitions;
+    }
+
+    private JsonArray buildToolDefinitions() {
         JsonArray tools = new JsonArray();
 
         tools.add(createTool(
@@ -82,31 +156,37 @@ public class BuiltinTools {
 
         tools.add(createTool(
                 GET_COMBAT_STATE,
-                "Get combat state: energy, hand cards (with index, name, cost, type, playable status), " +
-                "enemies (with index, name, HP, intent, powers), player powers/buffs. " +
-                "Only available during combat. Card and enemy indices are 1-based."
+                "Get combat state: energy, hand cards (with index, id, name, ref, cost this turn, " +
+                "playable status, damage/block after modifiers), enemies (with index, id, name, HP, " +
+                "intent, powers), player powers/buffs. " +
+                "Also computed for you: incoming (total intent damage), block_shortfall (incoming not " +
+                "covered by block), per enemy incoming for multi-hit intents and lethal when the hand " +
+                "can kill it this turn with the energy left. " +
+                "Only available during combat. Card and enemy indices are 1-based; " +
+                "ids stay the same for the whole combat (use as card_id/target_id)."
         ));
 
         tools.add(createTool(
                 GET_SCREEN,
-                "Get current screen state: screen type, available choices (with 1-based index), " +
+                "Get current screen state: screen type, available choices (with 1-based index; shop items " +
+                "with price, event and rest site options with disabled ones marked), " +
                 "button availability (can_proceed, can_skip, can_cancel). " +
                 "Use this to understand what actions are available."
         ));
 
         tools.add(createTool(
                 GET_DECK,
-                "Get full deck information: all cards with name, type, cost, rarity, upgrade status."
+                "Get full deck information: all cards with name, ref, cost, upgrade status."
         ));
 
         tools.add(createTool(
                 GET_RELICS,
-                "Get equipped relics: name, id, counter value."
+                "Get equipped relics: name, ref, counter value."
         ));
 
         tools.add(createTool(
                 GET_POTIONS,
-                "Get potion slots: slot number (1-based), name, whether empty, " +
+                "Get potion slots: slot number (1-based), name, ref, whether empty, " +
                 "can_use status, requires_target."
         ));
 
@@ -116,19 +196,160 @@ public class BuiltinTools {
                 "available next nodes with symbols, boss name."
         ));
 
+        tools.add(createTool(
+                SIMULATE_COMBAT,
+                "Simulate the rest of the current fight with Monte Carlo rollouts over draw/discard piles. " +
+                "Returns win_probability and expected_hp for each candidate first action " +
+                "(card_index/target_index are 1-based, as in get_combat_state). " +
+                "Use in elite and boss fights when the best play is unclear."
+        ));
+
+        JsonObject routeProperties = new JsonObject();
+        JsonObject weights = new JsonObject();
+        weights.addProperty("type", "object");
+        weights.addProperty("description",
+                "How much you want each room kind, e.g. {\"elite\": 2, \"rest\": 0.5}; " +
+                "kinds: monster, elite, rest, shop, event, treasure. Omitted kinds keep their defaults.");
+        routeProperties.add("weights", weights);
+        JsonObject count = new JsonObject();
+        count.addProperty("type", "integer");
+        count.addProperty("description", "Routes to return (default 3, max " + RoutePlanner.MAX_ROUTES + ")");
+        routeProperties.add("count", count);
+        tools.add(createTool(
+                PLAN_ROUTE,
+                "Rank every path from your map position to the boss by the rooms on it. Returns the best " +
+                "routes (choice = map choice for the first step; path symbols M monster, E elite, " +
+                "R rest, $ shop, ? event, T treasure) and each room kind's range over all paths.",
+                routeProperties
+        ));
+
+        JsonObject properties = new JsonObject();
+        properties.add("refs", arrayParam("integer", "\"ref\" values from state output"));
+        properties.add("names", arrayParam("string", "Names, e.g. \"Bash\", \"Vulnerable\""));
+        tools.add(createTool(
+                LOOKUP_CATALOG,
+                "What a card, relic, potion or power does: text, type, rarity, base cost, upgrade, " +
+                "keywords. State output leaves these out.",
+                properties
+        ));
+
         return tools;
     }
 
     /**
-     * Get the GameStateReader instance.
+     * Capture the output of every state tool as one JSON document.
+     * Used to record snapshots for the headless replay benchmark.
+     */
+    public JsonObject captureSnapshot() {
+        JsonObject snapshot = new JsonObject();
+        snapshot.addProperty("in_game", reader.isInGame());
+        snapshot.addProperty("in_combat", reader.isInCombat());
+        // Recorded as JSON whatever the model reads, so replays can use any format
+        StateFormat format = reader.getStateFormat();
+        reader.setStateFormat(StateFormat.PRETTY);
+        try {
+            for (String tool : new String[]{GET_GAME_STATE, GET_SCREEN, GET_COMBAT_STATE,
+                                            GET_DECK, GET_RELICS, GET_POTIONS, GET_MAP}) {
+                String output = execute(tool, null);
+                try {
+                    snapshot.add(tool, new JsonParser().parse(output));
+                } catch (Exception e) {
+                    // Plain-text output (e.g. "Not in game")
+                    snapshot.addProperty(tool, output);
+                }
+            }
+        } finally {
+            reader.setStateFormat(format);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Get the game state source.
      */
-    public GameStateReader getReader() {
+    public GameStateSource getReader() {
         return reader;
     }
 
     // ========== Helper Methods ==========
 
+    private String lookupCatalog(JsonObject args) {
+        List<Integer> refs = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        if (args != null) {
+            collectLookupKeys(args.get("refs"), refs, names);
+            collectLookupKeys(args.get("names"), refs, names);
+        }
+        if (refs.isEmpty() && names.isEmpty()) {
+            return "{\"error\": \"Pass refs or names to look up\"}";
+        }
+        return Catalog.lookup(refs, names, reader.getStateFormat());
+    }
+
+    /**
+     * Refs and names from an argument, which models send as an array or a single value,
+     * and numbers sometimes as strings.
+     */
+    private static void collectLookupKeys(JsonElement value, List<Integer> refs, List<String> names) {
+        if (value == null || value.isJsonNull()) return;
+        if (value.isJsonArray()) {
+            for (JsonElement item : value.getAsJsonArray()) {
+                collectLookupKeys(item, refs, names);
+            }
+            return;
+        }
+        if (!value.isJsonPrimitive()) return;
+        String text = value.getAsString().trim();
+        if (text.isEmpty()) return;
+        try {
+            refs.add(Integer.parseInt(text));
+        } catch (NumberFormatException e) {
+            names.add(text);
+        }
+    }
+
+    private String planRoute(JsonObject args) {
+        ActMap map = reader.getActMap();
+        if (map == null) {
+            return "{\"error\": \"No act map here\"}";
+        }
+        double[] weights = routePlanner.getWeights();
+        int count = 3;
+        if (args != null) {
+            JsonElement given = args.get("weights");
+            if (given != null && given.isJsonObject()) {
+                for (Map.Entry<String, JsonElement> entry : given.getAsJsonObject().entrySet()) {
+                    int kind = RoutePlanner.kindByName(entry.getKey().replaceAll("s$", ""));
+                    try {
+                        if (kind >= 0) weights[kind] = entry.getValue().getAsDouble();
+                    } catch (RuntimeException e) {
+                        // Keep the default for this kind
+                    }
+                }
+            }
+            try {
+                if (args.has("count")) count = args.get("count").getAsInt();
+            } catch (RuntimeException e) {
+                // Keep the default count
+            }
+        }
+        return routePlanner.plan(map, weights, count).toJson();
+    }
+
+    private String simulateCombat() {
+        CombatModel model = reader.getCombatModel();
+        if (model == null) {
+            return "{\"error\": \"Not in combat\"}";
+        }
+        return planner.plan(model).toJson();
+    }
+
     private JsonObject createTool(String name, String description) {
+        // No parameters for these tools
+        return createTool(name, description, new JsonObject());
+    }
+
+    private JsonObject createTool(String name, String description, JsonObject properties) {
         JsonObject tool = new JsonObject();
         tool.addProperty("type", "function");
 
@@ -136,13 +357,22 @@ public class BuiltinTools {
         function.addProperty("name", name);
         function.addProperty("description", description);
 
-        // No parameters for these tools
         JsonObject parameters = new JsonObject();
         parameters.addProperty("type", "object");
-        parameters.add("properties", new JsonObject());
+        parameters.add("properties", properties);
         function.add("parameters", parameters);
 
         tool.add("function", function);
         return tool;
     }
+
+    private static JsonObject arrayParam(String itemType, String description) {
+        JsonObject items = new JsonObject();
+        items.addProperty("type", itemType);
+        JsonObject param = new JsonObject();
+        param.addProperty("type", "array");
+        param.add("items", items);
+        param.addProperty("description", description);
+        return param;
+    }
 }
@@ -0,0 +1,192 @@
+package stsagent.tools;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Static game data the model can look up on demand: card, relic, potion and power
+ * descriptions, keywords and base stats.
+ *
+ * Every entry gets a small number, its ref, which state output prints next to the name.
+ * That way state output carries only what changes during a run, and {@link #lookup}
+ * returns the rest for refs or names. Cards, relics and potions are added once at startup
+ * from the game's libraries (see GameCatalog). The game keeps no power library, so powers
+ * are added the first time the reader sees one. Entries never change once added.
+ */
+public final class Catalog {
+    public enum Kind { CARD, RELIC, POTION, POWER }
+
+    public static final int NO_COST = Integer.MIN_VALUE;
+    private static final int MAX_LOOKUP = 20;  // Entries per lookup; names like "Strike" match several
+
+    private static final List<Entry> entries = new CopyOnWriteArrayList<>();   // Index ref - 1
+    private static final Map<Kind, Map<String, Entry>> byId = new EnumMap<>(Kind.class);
+
+    static {
+        for (Kind kind : Kind.values()) {
+            byId.put(kind, new ConcurrentHashMap<>());
+        }
+    }
+
+    private Catalog() {}
+
+    /**
+     * Add an entry unless one with this kind and id exists.
+     *
+     * @param type         Card type or power type, or null
+     * @param rarity       Card or potion rarity, relic tier, or null
+     * @param cost         Base cost, or {@link #NO_COST}
+     * @param upgradedText Text after upgrading, if it differs, or null
+     * @return The entry's ref
+     */
+    public static synchronized int add(Kind kind, String id, String name, String type, String rarity,
+                                       int cost, String text, String upgradedText, List<String> keywords) {
+        Map<String, Entry> ids = byId.get(kind);
+        Entry existing = ids.get(id);
+        if (existing != null) {
+            return existing.ref;
+        }
+        Entry entry = new Entry(entries.size() + 1, kind, id, name, type, rarity, cost, text, upgradedText,
+                keywords != null ? keywords.toArray(new String[0]) : new String[0]);
+        entries.add(entry);
+        ids.put(id, entry);
+        return entry.ref;
+    }
+
+    /**
+     * Ref for a game id, or 0 if it isn't in the catalog.
+     */
+    public static int ref(Kind kind, String id) {
+        if (id == null) return 0;
+        Entry entry = byId.get(kind).get(id);
+        return entry != null ? entry.ref : 0;
+    }
+
+    public static int size() {
+        return entries.size();
+    }
+
+    public static int size(Kind kind) {
+        return byId.get(kind).size();
+    }
+
+    /**
+     * Entries for refs and for names or game ids (ignoring case and a trailing upgrade
+     * mark such as "+" or "+3"), followed by whatever matched nothing.
+     */
+    public static String lookup(List<Integer> refs, List<String> names, StateFormat format) {
+        if (entries.isEmpty()) {
+            return "{\"error\": \"Catalog not loaded\"}";
+        }
+        List<Entry> found = new ArrayList<>();
+        Set<Integer> seen = new HashSet<>();
+        List<String> missing = new ArrayList<>();
+
+        for (Integer ref : refs) {
+            if (ref != null && ref >= 1 && ref <= entries.size()) {
+                if (seen.add(ref)) found.add(entries.get(ref - 1));
+            } else {
+                missing.add(String.valueOf(ref));
+            }
+        }
+        for (String name : names) {
+            String key = baseName(name);
+            boolean matched = false;
+            for (Entry entry : entries) {
+                if (key.equalsIgnoreCase(entry.name) || key.equalsIgnoreCase(entry.id)) {
+                    matched = true;
+                    if (seen.add(entry.ref)) found.add(entry);
+                }
+            }
+            if (!matched) missing.add(name);
+        }
+
+        StateTape tape = new StateTape();
+        tape.beginObject().name("entries").beginArray();
+        for (int i = 0; i < found.size() && i < MAX_LOOKUP; i++) {
+            found.get(i).write(tape);
+        }
+        tape.endArray();
+        if (found.size() > MAX_LOOKUP) {
+            tape.field("truncated", found.size() - MAX_LOOKUP);
+        }
+        if (!missing.isEmpty()) {
+            tape.name("not_found").beginArray();
+            for (String name : missing) {
+                tape.value(name);
+            }
+            tape.endArray();
+        }
+        tape.endObject();
+        return StateEncoder.encode(tape, format);
+    }
+
+    private static String baseName(String name) {
+        String key = name.trim();
+        int plus = key.lastIndexOf('+');
+        if (plus > 0) {
+            boolean upgradeMark = true;
+            for (int i = plus + 1; i < key.length(); i++) {
+                if (!Character.isDigit(key.charAt(i))) upgradeMark = false;
+            }
+            if (upgradeMark) key = key.substring(0, plus).trim();
+        }
+        return key;
+    }
+
+    private static final class Entry {
+        final int ref;
+        final Kind kind;
+        final String id;
+        final String name;
+        final String type;
+        final String rarity;
+        final int cost;
+        final String text;
+        final String upgradedText;
+        final String[] keywords;
+
+        Entry(int ref, Kind kind, String id, String name, String type, String rarity, int cost,
+              String text, String upgradedText, String[] keywords) {
+            this.ref = ref;
+            this.kind = kind;
+            this.id = id;
+            this.name = name;
+            this.type = type;
+            this.rarity = rarity;
+            this.cost = cost;
+            this.text = text;
+            this.upgradedText = upgradedText;
+            this.keywords = keywords;
+        }
+
+        void write(StateTape tape) {
+            tape.beginObject();
+            tape.field("ref", ref);
+            tape.field("kind", kind.name().toLowerCase());
+            tape.field("id", id);
+            tape.field("name", name);
+            tape.field("type", type);
+            tape.field("rarity", rarity);
+            if (cost != NO_COST) {
+                tape.field("cost", cost);
+            }
+            tape.field("text", text);
+            tape.field("upgraded", upgradedText);
+            if (keywords.length > 0) {
+                tape.name("keywords").beginArray();
+                for (String keyword : keywords) {
+                    tape.value(keyword);
+                }
+                tape.endArray();
+            }
+            tape.endObject();
+        }
+    }
+}
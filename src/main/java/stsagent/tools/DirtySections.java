@@ -0,0 +1,40 @@
+package stsagent.tools;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sections changed since the last snapshot, as a bit mask over {@link StateSection}.
+ *
+ * Set by the patches in {@link stsagent.patches.DirtyPatches} on the render thread and
+ * drained when a snapshot is captured. Marking is a single atomic or, cheap enough for
+ * methods that run many times per frame. Everything starts dirty.
+ */
+public final class DirtySections {
+    private static final int ALL = (1 << StateSection.values().length) - 1;
+
+    private static final AtomicInteger dirty = new AtomicInteger(ALL);
+
+    private DirtySections() {}
+
+    public static void mark(StateSection section) {
+        int bit = section.bit();
+        if ((dirty.get() & bit) == 0) {
+            dirty.accumulateAndGet(bit, (mask, b) -> mask | b);
+        }
+    }
+
+    public static void markAll() {
+        dirty.set(ALL);
+    }
+
+    /**
+     * Dirty mask since the last call, clearing it.
+     */
+    static int drain() {
+        return dirty.getAndSet(0);
+    }
+
+    static boolean isDirty(int mask, StateSection section) {
+        return (mask & section.bit()) != 0;
+    }
+}
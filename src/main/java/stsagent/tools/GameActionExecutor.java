@@ -0,0 +1,281 @@
+package stsagent.tools;
+
+import com.badlogic.gdx.Gdx;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.megacrit.cardcrawl.cards.AbstractCard;
+import com.megacrit.cardcrawl.cards.CardQueueItem;
+import com.megacrit.cardcrawl.characters.AbstractPlayer;
+import com.megacrit.cardcrawl.dungeons.AbstractDungeon;
+import com.megacrit.cardcrawl.monsters.AbstractMonster;
+import com.megacrit.cardcrawl.potions.AbstractPotion;
+import com.megacrit.cardcrawl.potions.PotionSlot;
+import com.megacrit.cardcrawl.relics.AbstractRelic;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import stsagent.mcp.ActionExecutor;
+import stsagent.mcp.MCPClient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs combat actions inside the game instead of sending them to MCPTheSpire over HTTP.
+ *
+ * Speaks the same execute_actions vocabulary for play_card, end_turn, use_potion and
+ * discard_potion. Game state is only changed on the render thread (Gdx.app.postRunnable),
+ * one action at a time; the next action is sent once the game has settled again.
+ * Indices are resolved against the state when the batch starts, so they stay stable while
+ * the batch runs. Batches with any other action are left to the MCP server.
+ */
+public class GameActionExecutor implements ActionExecutor {
+    private static final Logger logger = LogManager.getLogger(GameActionExecutor.class);
+
+    private static final Set<String> SUPPORTED = new HashSet<>(Arrays.asList(
+            "play_card", "end_turn", "use_potion", "discard_potion"));
+
+    private static final long POST_TIMEOUT_MS = 5000;     // Render thread picking up a task
+    private static final long SETTLE_TIMEOUT_MS = 20000;  // Includes the enemy turn after end_turn
+
+    private final GameStateReader reader;
+
+    public GameActionExecutor(GameStateReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * True if every action in the batch can run in-process. Only in combat; screens and
+     * map navigation go through MCP.
+     */
+    public boolean supports(JsonArray actions) {
+        if (actions.size() == 0 || !reader.isInCombat()) return false;
+        for (JsonElement elem : actions) {
+            if (!elem.isJsonObject()) return false;
+            JsonElement name = elem.getAsJsonObject().get("action");
+            if (name == null || !name.isJsonPrimitive() || !SUPPORTED.contains(name.getAsString())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean awaitsSettle(JsonArray actions) {
+        return true;
+    }
+
+    @Override
+    public MCPClient.ToolResult executeActions(JsonArray actions) {
+        if (!supports(actions)) {
+            return MCPClient.ToolResult.error("Actions not supported in-process");
+        }
+
+        List<String> results = new ArrayList<>();
+        try {
+            Batch batch = onGameThread(Batch::capture);
+            for (int i = 0; i < actions.size(); i++) {
+                JsonObject action = actions.get(i).getAsJsonObject();
+                String name = action.get("action").getAsString();
+
+                if (!GameSettleMonitor.awaitSettled(SETTLE_TIMEOUT_MS)) {
+                    results.add((i + 1) + ". " + name + ": game did not settle");
+                    return MCPClient.ToolResult.error(String.join("\n", results));
+                }
+                try {
+                    results.add((i + 1) + ". " + onGameThread(() -> batch.run(action)));
+                } catch (ExecutionException e) {
+                    // Stop here: later actions were planned assuming this one worked
+                    results.add((i + 1) + ". " + name + ": " + e.getCause().getMessage());
+                    return MCPClient.ToolResult.error(String.join("\n", results));
+                }
+            }
+            GameSettleMonitor.awaitSettled(SETTLE_TIMEOUT_MS);
+        } catch (Exception e) {
+            logger.error("In-process actions failed", e);
+            results.add("Error: " + e.getMessage());
+            return MCPClient.ToolResult.error(String.join("\n", results));
+        }
+        return MCPClient.ToolResult.success(String.join("\n", results));
+    }
+
+    /**
+     * Run a task on the render thread and wait for its result.
+     * Must not be called from the render thread itself.
+     */
+    private static <T> T onGameThread(Supplier<T> task)
+            throws ExecutionException, InterruptedException, TimeoutException {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Gdx.app.postRunnable(() -> {
+            try {
+                future.complete(task.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future.get(POST_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Hand and enemies as they were when the batch started. Render thread only.
+     */
+    private static class Batch {
+        private final List<AbstractCard> hand;
+        private final List<AbstractMonster> enemies;
+        private final Set<AbstractCard> played = new HashSet<>();
+
+        private Batch(List<AbstractCard> hand, List<AbstractMonster> enemies) {
+            this.hand = hand;
+            this.enemies = enemies;
+        }
+
+        static Batch capture() {
+            List<AbstractMonster> enemies = new ArrayList<>();
+            for (AbstractMonster m : AbstractDungeon.getCurrRoom().monsters.monsters) {
+                if (!m.isDead && !m.escaped) {
+                    enemies.add(m);
+                }
+            }
+            return new Batch(new ArrayList<>(AbstractDungeon.player.hand.group), enemies);
+        }
+
+        /**
+         * Start one action. Throws IllegalArgumentException if it can't be done.
+         *
+         * @return Description of what was done
+         */
+        String run(JsonObject action) {
+            String name = action.get("action").getAsString();
+            switch (name) {
+                case "play_card":
+                    return playCard(action);
+                case "end_turn":
+                    if (!AbstractDungeon.overlayMenu.endTurnButton.enabled) {
+                        throw new IllegalArgumentException("End turn not available");
+                    }
+                    AbstractDungeon.overlayMenu.endTurnButton.disable(true);
+                    return "end_turn";
+                case "use_potion":
+                    return usePotion(action, true);
+                case "discard_potion":
+                    return usePotion(action, false);
+                default:
+                    throw new IllegalArgumentException("Unknown action");
+            }
+        }
+
+        private String playCard(JsonObject action) {
+            AbstractPlayer player = AbstractDungeon.player;
+            AbstractCard card = findCard(action);
+            if (!player.hand.group.contains(card)) {
+                throw new IllegalArgumentException(card.name + " is no longer in hand");
+            }
+
+            AbstractMonster target = findTarget(action);
+            if (target == null && needsTarget(card)) {
+                if (enemies.size() != 1) {
+                    throw new IllegalArgumentException(card.name + " needs target_index");
+                }
+                target = enemies.get(0);
+            }
+            if (!card.canUse(player, target)) {
+                throw new IllegalArgumentException(card.name + " can't be played now");
+            }
+
+            AbstractDungeon.actionManager.cardQueue.add(new CardQueueItem(card, target));
+            played.add(card);
+            return "play_card " + card.name + (target != null ? " -> " + target.name : "");
+        }
+
+        private String usePotion(JsonObject action, boolean use) {
+            AbstractPlayer player = AbstractDungeon.player;
+            int slot = getInt(action, "potion_slot");
+            if (slot < 1 || slot > player.potions.size()) {
+                throw new IllegalArgumentException("No potion slot " + slot);
+            }
+            AbstractPotion potion = player.potions.get(slot - 1);
+            if (potion instanceof PotionSlot) {
+                throw new IllegalArgumentException("Potion slot " + slot + " is empty");
+            }
+
+            if (use) {
+                if (!potion.canUse()) {
+                    throw new IllegalArgumentException(potion.name + " can't be used now");
+                }
+                AbstractMonster target = findTarget(action);
+                if (target == null && potion.targetRequired) {
+                    if (enemies.size() != 1) {
+                        throw new IllegalArgumentException(potion.name + " needs target_index");
+                    }
+                    target = enemies.get(0);
+                }
+                potion.use(target);
+                for (AbstractRelic relic : player.relics) {
+                    relic.onUsePotion();
+                }
+            } else if (!potion.canDiscard()) {
+                throw new IllegalArgumentException(potion.name + " can't be discarded");
+            }
+            AbstractDungeon.topPanel.destroyPotion(potion.slot);
+            return (use ? "use_potion " : "discard_potion ") + potion.name;
+        }
+
+        /**
+         * Card by card_index in the starting hand, or the first unplayed card named card_name.
+         */
+        private AbstractCard findCard(JsonObject action) {
+            if (action.has("card_index")) {
+                int index = getInt(action, "card_index");
+                if (index < 1 || index > hand.size()) {
+                    throw new IllegalArgumentException("No card at index " + index);
+                }
+                return hand.get(index - 1);
+            }
+            if (action.has("card_name")) {
+                String cardName = action.get("card_name").getAsString();
+                for (AbstractCard card : hand) {
+                    if (card.name.equalsIgnoreCase(cardName) && !played.contains(card) &&
+                        AbstractDungeon.player.hand.group.contains(card)) {
+                        return card;
+                    }
+                }
+                throw new IllegalArgumentException("No " + cardName + " in hand");
+            }
+            throw new IllegalArgumentException("card_index or card_name required");
+        }
+
+        private AbstractMonster findTarget(JsonObject action) {
+            if (!action.has("target_index")) return null;
+            int index = getInt(action, "target_index");
+            if (index < 1 || index > enemies.size()) {
+                throw new IllegalArgumentException("No enemy at index " + index);
+            }
+            AbstractMonster target = enemies.get(index - 1);
+            if (target.isDead || target.isDying || target.escaped) {
+                throw new IllegalArgumentException(target.name + " is already dead");
+            }
+            return target;
+        }
+
+        private static boolean needsTarget(AbstractCard card) {
+            return card.target == AbstractCard.CardTarget.ENEMY ||
+                   card.target == AbstractCard.CardTarget.SELF_AND_ENEMY;
+        }
+
+        private static int getInt(JsonObject action, String key) {
+            try {
+                return action.get(key).getAsInt();
+            } catch (Exception e) {
+                throw new IllegalArgumentException(key + " must be a number");
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package stsagent.tools;
+
+import com.megacrit.cardcrawl.cards.AbstractCard;
+import com.megacrit.cardcrawl.characters.AbstractPlayer;
+import com.megacrit.cardcrawl.helpers.CardLibrary;
+import com.megacrit.cardcrawl.helpers.PotionHelper;
+import com.megacrit.cardcrawl.helpers.RelicLibrary;
+import com.megacrit.cardcrawl.potions.AbstractPotion;
+import com.megacrit.cardcrawl.powers.AbstractPower;
+import com.megacrit.cardcrawl.relics.AbstractRelic;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Fills the {@link Catalog} from the game's card, relic and potion libraries, and maps
+ * game objects to their refs.
+ *
+ * Descriptions are rendered to plain text once here: base numbers filled in, line breaks,
+ * color codes and keyword marks removed, energy icons written as [E].
+ */
+public final class GameCatalog {
+    private static final Logger logger = LogManager.getLogger(GameCatalog.class);
+
+    private static final Pattern ENERGY_ICON = Pattern.compile("\\[[RGBWE]\\]");
+
+    private GameCatalog() {}
+
+    /**
+     * Add every card, relic and potion the game knows. Called once at startup, after the
+     * libraries (and mods' additions to them) are loaded.
+     */
+    public static void build() {
+        long start = System.currentTimeMillis();
+        int skipped = 0;
+
+        for (AbstractCard card : CardLibrary.cards.values()) {
+            try {
+                addCard(card);
+            } catch (Exception e) {
+                logger.debug("Skipping card {} in catalog: {}", card.cardID, e.toString());
+                skipped++;
+            }
+        }
+
+        for (List<AbstractRelic> list : Arrays.asList(
+                RelicLibrary.starterList, RelicLibrary.commonList, RelicLibrary.uncommonList,
+                RelicLibrary.rareList, RelicLibrary.bossList, RelicLibrary.shopList, RelicLibrary.specialList,
+                RelicLibrary.redList, RelicLibrary.greenList, RelicLibrary.blueList, RelicLibrary.whiteList)) {
+            if (list == null) continue;
+            for (AbstractRelic relic : list) {
+                try {
+                    Catalog.add(Catalog.Kind.RELIC, relic.relicId, relic.name, null,
+                            relic.tier != null ? relic.tier.name() : null, Catalog.NO_COST,
+                            clean(relic.description), null, null);
+                } catch (Exception e) {
+                    logger.debug("Skipping relic {} in catalog: {}", relic.relicId, e.toString());
+                    skipped++;
+                }
+            }
+        }
+
+        try {
+            for (String id : PotionHelper.getPotions(AbstractPlayer.PlayerClass.IRONCLAD, true)) {
+                try {
+                    AbstractPotion potion = PotionHelper.getPotion(id);
+                    Catalog.add(Catalog.Kind.POTION, potion.ID, potion.name, null,
+                            potion.rarity != null ? potion.rarity.name() : null, Catalog.NO_COST,
+                            clean(potion.description), null, null);
+                } catch (Exception e) {
+                    logger.debug("Skipping potion {} in catalog: {}", id, e.toString());
+                    skipped++;
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Could not list potions for the catalog", e);
+        }
+
+        logger.info("Catalog: {} cards, {} relics, {} potions in {} ms ({} skipped)",
+                Catalog.size(Catalog.Kind.CARD), Catalog.size(Catalog.Kind.RELIC),
+                Catalog.size(Catalog.Kind.POTION), System.currentTimeMillis() - start, skipped);
+    }
+
+    public static int card(AbstractCard card) {
+        return Catalog.ref(Catalog.Kind.CARD, card.cardID);
+    }
+
+    public static int relic(AbstractRelic relic) {
+        return Catalog.ref(Catalog.Kind.RELIC, relic.relicId);
+    }
+
+    public static int potion(AbstractPotion potion) {
+        return Catalog.ref(Catalog.Kind.POTION, potion.ID);
+    }
+
+    /**
+     * Ref for a power, adding it on first sight. Power text is written for the owner's
+     * amount, so the entry keeps the text as first seen.
+     */
+    public static int power(AbstractPower power) {
+        int ref = Catalog.ref(Catalog.Kind.POWER, power.ID);
+        if (ref != 0 || power.ID == null) {
+            return ref;
+        }
+        return Catalog.add(Catalog.Kind.POWER, power.ID, power.name,
+                power.type != null ? power.type.name() : null, null, Catalog.NO_COST,
+                clean(power.description), null, null);
+    }
+
+    private static void addCard(AbstractCard card) {
+        String text = cardText(card);
+        String upgradedText = null;
+        if (card.canUpgrade()) {
+            AbstractCard upgraded = card.makeCopy();
+            upgraded.upgrade();
+            String after = cardText(upgraded);
+            if (upgraded.cost != card.cost) {
+                after = "Cost " + upgraded.cost + ". " + after;
+            }
+            if (!after.equals(text)) {
+                upgradedText = after;
+            }
+        }
+        List<String> keywords = card.keywords != null
+                ? new ArrayList<>(new LinkedHashSet<>(card.keywords)) : null;
+        Catalog.add(Catalog.Kind.CARD, card.cardID, card.name, card.type.name(),
+                card.rarity != null ? card.rarity.name() : null, card.cost,
+                text, upgradedText, keywords);
+    }
+
+    private static String cardText(AbstractCard card) {
+        if (card.rawDescription == null) return "";
+        return clean(card.rawDescription
+                .replace("!D!", String.valueOf(card.baseDamage))
+                .replace("!B!", String.valueOf(card.baseBlock))
+                .replace("!M!", String.valueOf(card.baseMagicNumber)));
+    }
+
+    /**
+     * Game description markup as plain text.
+     */
+    static String clean(String description) {
+        if (description == null) return null;
+        StringBuilder sb = new StringBuilder(description.length());
+        for (String word : description.split("\\s+")) {
+            if (word.isEmpty() || word.equals("NL")) continue;
+            if (word.length() > 2 && word.charAt(0) == '#') {
+                word = word.substring(2);  // Color code, e.g. #yStrength
+            } else if (word.length() > 1 && word.charAt(0) == '*') {
+                word = word.substring(1);  // Keyword highlight
+            }
+            word = ENERGY_ICON.matcher(word).replaceAll("[E]");
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(word);
+        }
+        return sb.toString();
+    }
+}
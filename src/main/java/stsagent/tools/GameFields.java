@@ -0,0 +1,164 @@
+package stsagent.tools;
+
+import com.megacrit.cardcrawl.monsters.AbstractMonster;
+import com.megacrit.cardcrawl.rooms.CampfireUI;
+import com.megacrit.cardcrawl.shop.ShopScreen;
+import com.megacrit.cardcrawl.ui.campfire.AbstractCampfireOption;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Private game fields the reader needs, resolved once when this class loads.
+ *
+ * A field a game update renamed or retyped is reported at startup by {@link #verify()}
+ * instead of failing quietly on every read; reads through it return the fallback value.
+ * Add new private state here rather than calling getDeclaredField at the read site.
+ */
+public final class GameFields {
+    private static final Logger logger = LogManager.getLogger(GameFields.class);
+
+    private static final List<Accessor> all = new ArrayList<>();
+
+    public static final Accessor MONSTER_IS_MULTI_DMG =
+            register(AbstractMonster.class, "isMultiDmg", boolean.class);
+    public static final Accessor MONSTER_INTENT_MULTI_AMT =
+            register(AbstractMonster.class, "intentMultiAmt", int.class);
+    public static final Accessor SHOP_COLORED_CARDS =
+            register(ShopScreen.class, "coloredCards", ArrayList.class);
+    public static final Accessor SHOP_COLORLESS_CARDS =
+            register(ShopScreen.class, "colorlessCards", ArrayList.class);
+    public static final Accessor SHOP_RELICS =
+            register(ShopScreen.class, "relics", ArrayList.class);
+    public static final Accessor SHOP_POTIONS =
+            register(ShopScreen.class, "potions", ArrayList.class);
+    public static final Accessor CAMPFIRE_BUTTONS =
+            register(CampfireUI.class, "buttons", ArrayList.class);
+    public static final Accessor CAMPFIRE_OPTION_LABEL =
+            register(AbstractCampfireOption.class, "label", String.class);
+
+    private GameFields() {}
+
+    /**
+     * Log which fields resolved. Called once at startup.
+     *
+     * @return False if any field is missing
+     */
+    public static boolean verify() {
+        int missing = 0;
+        for (Accessor accessor : all) {
+            if (!accessor.isResolved()) {
+                logger.error("Private field {} unavailable ({}); output that uses it falls back to defaults",
+                        accessor.name, accessor.error);
+                missing++;
+            }
+        }
+        if (missing == 0) {
+            logger.info("Resolved {} private game fields", all.size());
+        }
+        return missing == 0;
+    }
+
+    /**
+     * Reads and failures per field, one line each.
+     */
+    public static String getSummary() {
+        StringBuilder sb = new StringBuilder("private fields:");
+        for (Accessor accessor : all) {
+            sb.append("\n  ").append(accessor.name).append(": ");
+            if (accessor.isResolved()) {
+                sb.append(accessor.reads.get()).append(" reads, ")
+                  .append(accessor.failures.get()).append(" failed");
+            } else {
+                sb.append("missing");
+            }
+        }
+        return sb.toString();
+    }
+
+    private static Accessor register(Class<?> owner, String name, Class<?> type) {
+        Accessor accessor = new Accessor(owner, name, type);
+        all.add(accessor);
+        return accessor;
+    }
+
+    /**
+     * One resolved field. Reads never throw; they count failures and return the fallback.
+     */
+    public static final class Accessor {
+        public final String name;       // Owner.field, for diagnostics
+        private final Field field;      // Null if not resolved
+        private final String error;
+        private final AtomicLong reads = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+
+        private Accessor(Class<?> owner, String fieldName, Class<?> type) {
+            this.name = owner.getSimpleName() + "." + fieldName;
+            Field resolved = null;
+            String problem = null;
+            try {
+                resolved = owner.getDeclaredField(fieldName);
+                if (resolved.getType() != type) {
+                    problem = "type is " + resolved.getType().getName() + ", expected " + type.getName();
+                    resolved = null;
+                } else {
+                    resolved.setAccessible(true);
+                }
+            } catch (NoSuchFieldException e) {
+                problem = "no such field";
+            } catch (RuntimeException e) {
+                problem = e.toString();
+                resolved = null;
+            }
+            this.field = resolved;
+            this.error = problem;
+        }
+
+        public boolean isResolved() {
+            return field != null;
+        }
+
+        public boolean getBoolean(Object target, boolean fallback) {
+            if (field == null) return fallback;
+            reads.incrementAndGet();
+            try {
+                return field.getBoolean(target);
+            } catch (Exception e) {
+                failures.incrementAndGet();
+                return fallback;
+            }
+        }
+
+        /**
+         * Object field value, cast to the caller's type (the type was checked on resolve),
+         * or the fallback if it is null.
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T get(Object target, T fallback) {
+            if (field == null) return fallback;
+            reads.incrementAndGet();
+            try {
+                T value = (T) field.get(target);
+                return value != null ? value : fallback;
+            } catch (Exception e) {
+                failures.incrementAndGet();
+                return fallback;
+            }
+        }
+
+        public int getInt(Object target, int fallback) {
+            if (field == null) return fallback;
+            reads.incrementAndGet();
+            try {
+                return field.getInt(target);
+            } catch (Exception e) {
+                failures.incrementAndGet();
+                return fallback;
+            }
+        }
+    }
+}
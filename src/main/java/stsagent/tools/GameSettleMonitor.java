@@ -0,0 +1,117 @@
+package stsagent.tools;
+
+import com.megacrit.cardcrawl.actions.GameActionManager;
+import com.megacrit.cardcrawl.dungeons.AbstractDungeon;
+import com.megacrit.cardcrawl.rooms.AbstractRoom;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Completes futures once the game has settled after an action: the action queue is empty,
+ * the game waits on the player and the screen has stayed the same for a few frames.
+ *
+ * Checked once per frame from {@link stsagent.patches.SettlePatch}, after the dungeon
+ * update has run the action manager. Waiters register from any thread.
+ */
+public final class GameSettleMonitor {
+
+    // Consecutive settled frames required, so screen transitions don't count as settled
+    private static final int SETTLE_FRAMES = 3;
+
+    private static final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+
+    // Render thread only
+    private static AbstractDungeon.CurrentScreen lastScreen;
+    private static AbstractRoom.RoomPhase lastPhase;
+
+    private GameSettleMonitor() {}
+
+    /**
+     * Future completed once the game has been settled for a few frames after this call.
+     * Never completes while no dungeon is updating (main menu); use a timeout.
+     */
+    public static CompletableFuture<Void> whenSettled() {
+        Waiter waiter = new Waiter();
+        waiters.add(waiter);
+        return waiter.future;
+    }
+
+    /**
+     * Block until the game has settled.
+     *
+     * @return False on timeout or interrupt
+     */
+    public static boolean awaitSettled(long timeoutMs) {
+        CompletableFuture<Void> future = whenSettled();
+        try {
+            future.get(timeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        } finally {
+            future.cancel(false);  // Dropped on the next frame if still pending
+        }
+    }
+
+    /**
+     * Called by the patch after every dungeon update. Render thread only.
+     */
+    public static void onFrame() {
+        boolean settled = isSettled();
+        if (waiters.isEmpty()) return;
+
+        for (Iterator<Waiter> it = waiters.iterator(); it.hasNext(); ) {
+            Waiter waiter = it.next();
+            if (waiter.future.isDone()) {
+                it.remove();
+            } else if (!settled) {
+                waiter.settledFrames = 0;
+            } else if (++waiter.settledFrames >= SETTLE_FRAMES) {
+                waiter.future.complete(null);
+                it.remove();
+            }
+        }
+    }
+
+    private static boolean isSettled() {
+        AbstractRoom room = AbstractDungeon.getCurrRoom();
+        AbstractDungeon.CurrentScreen screen = AbstractDungeon.screen;
+        AbstractRoom.RoomPhase phase = room != null ? room.phase : null;
+        boolean unchanged = screen == lastScreen && phase == lastPhase;
+        lastScreen = screen;
+        lastPhase = phase;
+        if (!unchanged || room == null) {
+            return false;
+        }
+
+        GameActionManager manager = AbstractDungeon.actionManager;
+        if (manager.phase != GameActionManager.Phase.WAITING_ON_USER ||
+            manager.currentAction != null ||
+            !manager.actions.isEmpty() ||
+            !manager.preTurnActions.isEmpty() ||
+            !manager.cardQueue.isEmpty()) {
+            // A card or effect asking the player to pick (hand select, grid) waits on input
+            return AbstractDungeon.isScreenUp;
+        }
+
+        // In combat the player's turn starts once the end turn button is back
+        if (phase == AbstractRoom.RoomPhase.COMBAT && !room.isBattleOver && !AbstractDungeon.isScreenUp) {
+            return AbstractDungeon.overlayMenu.endTurnButton.enabled;
+        }
+        return true;
+    }
+
+    private static class Waiter {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        int settledFrames = 0;  // Render thread only
+    }
+}
@@ -0,0 +1,112 @@
+package stsagent.tools;
+
+import stsagent.planner.ActMap;
+import stsagent.planner.CombatModel;
+
+/**
+ * Copy of the game state taken in one frame on the render thread.
+ *
+ * Sections hold the state tools' output as recorded {@link StateTape}s of plain values, so
+ * the agent thread can format them while the game moves on. Nothing in a snapshot is
+ * modified after it is published; a newer state is a new snapshot with a higher version.
+ * Sections that didn't change are shared with the previous snapshot, encodings included.
+ * Sections are null when they don't apply (not in game, not in combat).
+ *
+ * Each section carries a 64-bit fingerprint of its recorded values, and the snapshot one
+ * over all sections, so equal game states compare equal without encoding anything. Capture
+ * metadata (version, times) and {@link #COSMETIC_FIELDS} are left out: card handles come
+ * from random uuids and would make the same state fingerprint differently in every run.
+ * A second fingerprint keeps them, for telling whether the output itself is the same.
+ */
+public final class GameSnapshot {
+    public static final String[] COSMETIC_FIELDS = {"id"};
+
+    public final long version;           // Increases with every capture
+    public final long request;           // Highest capture request this snapshot serves
+    public final long capturedAtMillis;
+    public final long captureNanos;      // Time spent copying on the render thread
+
+    public final boolean inGame;
+    public final boolean inCombat;
+    public final String screenType;      // As get_screen reports it
+
+    private final Section[] sections;    // By StateSection ordinal
+    public final CombatModel combat;
+    public final ActMap actMap;          // Shared by every snapshot of an act while the player stays put
+    public final long fingerprint;       // Over the flags and every section's fingerprint
+    public final long outputFingerprint; // The same, with handles
+
+    GameSnapshot(long version, long request, long capturedAtMillis, long captureNanos,
+                 boolean inGame, boolean inCombat, String screenType, Section[] sections, CombatModel combat,
+                 ActMap actMap) {
+        this.version = version;
+        this.request = request;
+        this.capturedAtMillis = capturedAtMillis;
+        this.captureNanos = captureNanos;
+        this.inGame = inGame;
+        this.inCombat = inCombat;
+        this.screenType = screenType;
+        this.sections = sections;
+        this.combat = combat;
+        this.actMap = actMap;
+
+        long[] fingerprints = new long[sections.length];
+        long[] outputFingerprints = new long[sections.length];
+        for (int i = 0; i < sections.length; i++) {
+            fingerprints[i] = sections[i] != null ? sections[i].fingerprint : 0;
+            outputFingerprints[i] = sections[i] != null ? sections[i].outputFingerprint : 0;
+        }
+        this.fingerprint = fingerprint(inGame, inCombat, fingerprints);
+        this.outputFingerprint = fingerprint(inGame, inCombat, outputFingerprints);
+    }
+
+    /**
+     * Snapshot fingerprint from the flags and section fingerprints by StateSection ordinal,
+     * 0 for absent sections. For sources that keep state outside snapshots.
+     */
+    public static long fingerprint(boolean inGame, boolean inCombat, long[] sections) {
+        long h = StateTape.combine(inGame ? 1 : 0, inCombat ? 1 : 0);
+        for (long section : sections) {
+            h = StateTape.combine(h, section);
+        }
+        return h;
+    }
+
+    public Section get(StateSection section) {
+        return sections[section.ordinal()];
+    }
+
+    public long ageMillis() {
+        return System.currentTimeMillis() - capturedAtMillis;
+    }
+
+    /**
+     * One section's tape, encoded in each format the first time it is asked for.
+     */
+    public static final class Section {
+        public final StateTape tape;
+        public final long fingerprint;
+        public final long outputFingerprint;  // Over every value, handles included
+        // Racing threads encode the same tape to equal strings, and strings are safe to share
+        private final String[] encoded = new String[StateFormat.values().length];
+
+        Section(StateTape tape) {
+            this(tape, tape.fingerprint(COSMETIC_FIELDS));
+        }
+
+        Section(StateTape tape, long fingerprint) {
+            this.tape = tape;
+            this.fingerprint = fingerprint;
+            this.outputFingerprint = tape.fingerprint();
+        }
+
+        public String encode(StateFormat format) {
+            String result = encoded[format.ordinal()];
+            if (result == null) {
+                result = StateEncoder.encode(tape, format);
+                encoded[format.ordinal()] = result;
+            }
+            return result;
+        }
+    }
+}
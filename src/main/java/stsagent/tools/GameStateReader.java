@@ -1,10 +1,10 @@
 package stsagent.tools;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.megacrit.cardcrawl.cards.AbstractCard;
+import com.megacrit.cardcrawl.cards.CardGroup;
 import com.megacrit.cardcrawl.characters.AbstractPlayer;
 import com.megacrit.cardcrawl.dungeons.AbstractDungeon;
+import com.megacrit.cardcrawl.map.MapEdge;
 import com.megacrit.cardcrawl.map.MapRoomNode;
 import com.megacrit.cardcrawl.monsters.AbstractMonster;
 import com.megacrit.cardcrawl.monsters.MonsterGroup;
@@ -13,23 +13,504 @@ import com.megacrit.cardcrawl.potions.PotionSlot;
 import com.megacrit.cardcrawl.powers.AbstractPower;
 import com.megacrit.cardcrawl.relics.AbstractRelic;
 import com.megacrit.cardcrawl.rooms.AbstractRoom;
-import com.megacrit.cardcrawl.screens.select.GridCardSelectScreen;
-import com.megacrit.cardcrawl.ui.buttons.GridSelectConfirmButton;
 import com.megacrit.cardcrawl.ui.panels.EnergyPanel;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import stsagent.planner.ActMap;
+import stsagent.planner.CombatMetrics;
+import stsagent.planner.CombatModel;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Reads game state directly from game memory.
  * Provides formatted output for LLM consumption.
+ *
+ * The game is only read on the render thread: {@link #onPostUpdate()} copies every state
+ * section into a {@link GameSnapshot} when the agent has asked for one, and the agent
+ * thread formats from the latest published snapshot. A snapshot is reused for
+ * {@link #MAX_AGE_MS} unless an action invalidated it.
+ *
+ * Static card, relic, potion and power data is not repeated in the output: entries carry a
+ * {@link Catalog} ref, and the model looks details up when it needs them.
+ *
+ * Deck, relics, potions, map and combat are only rebuilt when a patch marked them dirty
+ * ({@link DirtySections}); otherwise the next snapshot shares the previous section and
+ * its JSON. Everything is rebuilt when the floor, screen, room phase or turn changes.
  */
-public class GameStateReader {
+public class GameStateReader implements GameStateSource {
     private static final Logger logger = LogManager.getLogger(GameStateReader.class);
-    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
 
+    private static final long MAX_AGE_MS = 100;               // Reuse a snapshot this recent
+    private static final long CAPTURE_WAIT_MS = 500;          // Render thread picking up a request
+    private static final long FIRST_CAPTURE_WAIT_MS = 10_000; // First snapshot, e.g. through a load hitch
+    private static final long CAPTURE_BUDGET_NANOS = 100_000; // Captures slower than this are logged
+
+    private final Object lock = new Object();
+    private volatile GameSnapshot latest;
+    private volatile long requested = 0;     // Highest ticket handed out, written under lock
+    private volatile long staleBefore = 0;   // Versions below this are not reused
+    private volatile Thread gameThread;
+    private volatile StateFormat format = StateFormat.DEFAULT;
+    private final AtomicLong versions = new AtomicLong();
+
+    // Capture cost, for the latency summary
+    private final AtomicLong captures = new AtomicLong();
+    private final AtomicLong captureNanosTotal = new AtomicLong();
+    private volatile long captureNanosMax = 0;
+
+    // Sections reused or rebuilt per capture, by StateSection ordinal
+    private static final StateSection[] SECTIONS = StateSection.values();
+    private final AtomicLongArray sectionHits = new AtomicLongArray(SECTIONS.length);
+    private final AtomicLongArray sectionRebuilds = new AtomicLongArray(SECTIONS.length);
+    private final AtomicLongArray sectionUnchanged = new AtomicLongArray(SECTIONS.length);
+
+    // Render thread only: last built sections and what the game looked like then
+    private final StateTape scratch = new StateTape();
+    private final ScreenExtractors screens = new ScreenExtractors();
+    private final GameSnapshot.Section[] built = new GameSnapshot.Section[SECTIONS.length];
+    private CombatModel builtCombat;
+    private ArrayList<ArrayList<MapRoomNode>> builtMapRows;
+    private ActMap builtMap;
+    private final Map<AbstractMonster, Integer> enemyIds = new IdentityHashMap<>();
+    private MonsterGroup enemyIdGroup;     // Fight the ids belong to
+    private int lastFloor = -1;
+    private int lastAct = -1;
+    private int lastTurn = -1;
+    private boolean lastInCombat;
+    private AbstractDungeon.CurrentScreen lastScreen;
+    private AbstractRoom.RoomPhase lastPhase;
+    private long lastRelicCounters;
+    private long lastPowerAmounts;
+
+    @Override
     public boolean isInGame() {
+        return snapshot().inGame;
+    }
+
+    @Override
+    public boolean isInCombat() {
+        return snapshot().inCombat;
+    }
+
+    @Override
+    public boolean awaitSettled(long timeoutMs) {
+        // No dungeon frames run outside a game, so nothing would complete the wait
+        return !snapshot().inGame || GameSettleMonitor.awaitSettled(timeoutMs);
+    }
+
+    @Override
+    public void setStateFormat(StateFormat format) {
+        this.format = format;
+    }
+
+    @Override
+    public StateFormat getStateFormat() {
+        return format;
+    }
+
+    @Override
+    public void invalidate() {
+        staleBefore = versions.get() + 1;
+    }
+
+    @Override
+    public String getGameState() {
+        GameSnapshot snap = snapshot();
+        if (!snap.inGame) {
+            return "Not in game (main menu or loading).";
+        }
+        return snap.get(StateSection.GAME_STATE).encode(format);
+    }
+
+    @Override
+    public String getCombatState() {
+        GameSnapshot snap = snapshot();
+        if (!snap.inGame) {
+            return "{\"error\": \"Not in game\"}";
+        }
+        if (!snap.inCombat) {
+            return "{\"error\": \"Not in combat\"}";
+        }
+        return snap.get(StateSection.COMBAT_STATE).encode(format);
+    }
+
+    @Override
+    public CombatModel getCombatModel() {
+        return snapshot().combat;
+    }
+
+    @Override
+    public ActMap getActMap() {
+        return snapshot().actMap;
+    }
+
+    @Override
+    public long getFingerprint() {
+        return snapshot().fingerprint;
+    }
+
+    @Override
+    public long getOutputFingerprint() {
+        return StateTape.combine(snapshot().outputFingerprint, format.ordinal());
+    }
+
+    @Override
+    public String getScreenType() {
+        return snapshot().screenType;
+    }
+
+    @Override
+    public String getScreen() {
+        GameSnapshot snap = snapshot();
+        if (!snap.inGame) {
+            return "{\"screen_type\": \"MAIN_MENU\"}";
+        }
+        return snap.get(StateSection.SCREEN).encode(format);
+    }
+
+    @Override
+    public String getDeck() {
+        return format(snapshot(), StateSection.DECK);
+    }
+
+    @Override
+    public String getRelics() {
+        return format(snapshot(), StateSection.RELICS);
+    }
+
+    @Override
+    public String getPotions() {
+        return format(snapshot(), StateSection.POTIONS);
+    }
+
+    @Override
+    public String getPotions(StateFormat format) {
+        return format(snapshot(), StateSection.POTIONS, format);
+    }
+
+    @Override
+    public String getMap() {
+        return format(snapshot(), StateSection.MAP);
+    }
+
+    private String format(GameSnapshot snap, StateSection section) {
+        return format(snap, section, format);
+    }
+
+    private String format(GameSnapshot snap, StateSection section, StateFormat format) {
+        if (!snap.inGame) {
+            return "{\"error\": \"Not in game\"}";
+        }
+        return snap.get(section).encode(format);
+    }
+
+    // ========== Snapshots ==========
+
+    /**
+     * Latest snapshot, capturing a new one if it is too old or was invalidated.
+     *
+     * Off the render thread this asks the next frame for a capture and waits for it; on the
+     * render thread it captures directly. Other threads only capture before the render
+     * thread has run at all; after that, a snapshot that doesn't come in time is answered
+     * with the previous one, or an empty one if there is none yet.
+     */
+    public GameSnapshot snapshot() {
+        GameSnapshot current = latest;
+        if (isReusable(current)) {
+            return current;
+        }
+        Thread renderThread = gameThread;
+        if (Thread.currentThread() == renderThread) {
+            return publish(capture(requested));
+        }
+
+        long ticket;
+        synchronized (lock) {
+            ticket = ++requested;
+            long deadline = System.currentTimeMillis() + CAPTURE_WAIT_MS;
+            try {
+                while (renderThread != null && ((current = latest) == null || current.request < ticket)) {
+                    long left = deadline - System.currentTimeMillis();
+                    if (left <= 0) break;
+                    lock.wait(left);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            current = latest;
+        }
+        if (current != null && current.request >= ticket) {
+            return current;
+        }
+        if (renderThread != null) {
+            if (current != null) {
+                logger.warn("No snapshot within {} ms, using version {} ({} ms old)",
+                        CAPTURE_WAIT_MS, current.version, current.ageMillis());
+                return current;
+            }
+            // The capture state belongs to the render thread once it runs, so never capture
+            // here; a frame held up by loading gets longer to deliver the first snapshot
+            current = awaitFirstSnapshot();
+            if (current != null) {
+                return current;
+            }
+            logger.warn("No snapshot from the render thread within {} ms", FIRST_CAPTURE_WAIT_MS);
+            return new GameSnapshot(versions.get(), 0, System.currentTimeMillis(), 0, false, false,
+                    null, new GameSnapshot.Section[SECTIONS.length], null, null);
+        }
+        // Before the first frame there is nothing else to read from
+        logger.warn("Render thread not updating yet, reading game state directly");
+        return publish(capture(ticket));
+    }
+
+    private GameSnapshot awaitFirstSnapshot() {
+        long deadline = System.currentTimeMillis() + FIRST_CAPTURE_WAIT_MS;
+        synchronized (lock) {
+            try {
+                while (latest == null) {
+                    long left = deadline - System.currentTimeMillis();
+                    if (left <= 0) break;
+                    lock.wait(left);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return latest;
+        }
+    }
+
+    /**
+     * Called once per frame from the mod's post-update hook. Render thread only.
+     * Captures only when a snapshot was requested since the last one.
+     */
+    public void onPostUpdate() {
+        gameThread = Thread.currentThread();
+        long ticket = requested;
+        GameSnapshot current = latest;
+        if (current != null && current.request >= ticket) {
+            return;
+        }
+        publish(capture(ticket));
+    }
+
+    /**
+     * Snapshot captures so far, with average and worst cost.
+     */
+    public String getCaptureSummary() {
+        long count = captures.get();
+        if (count == 0) {
+            return "snapshots: none captured";
+        }
+        StringBuilder sb = new StringBuilder(String.format(
+                "snapshots: %d captured, avg %.1f us, max %.1f us",
+                count, captureNanosTotal.get() / 1000.0 / count, captureNanosMax / 1000.0));
+        for (StateSection section : SECTIONS) {
+            if (section.tracked) {
+                sb.append(String.format("\n  %s: %d reused, %d rebuilt (%d unchanged)",
+                        section.name().toLowerCase(), getSectionHits(section), getSectionRebuilds(section),
+                        getSectionUnchanged(section)));
+            }
+        }
+        sb.append("\n  ").append(screens.getSummary());
+        return sb.toString();
+    }
+
+    /**
+     * Captures that reused the previous copy of a section.
+     */
+    public long getSectionHits(StateSection section) {
+        return sectionHits.get(section.ordinal());
+    }
+
+    /**
+     * Rebuilds that read the same values as the previous copy, which was kept.
+     */
+    public long getSectionUnchanged(StateSection section) {
+        return sectionUnchanged.get(section.ordinal());
+    }
+
+    /**
+     * Captures that rebuilt a section from the game.
+     */
+    public long getSectionRebuilds(StateSection section) {
+        return sectionRebuilds.get(section.ordinal());
+    }
+
+    private boolean isReusable(GameSnapshot snap) {
+        return snap != null && snap.version >= staleBefore && snap.ageMillis() <= MAX_AGE_MS;
+    }
+
+    private GameSnapshot publish(GameSnapshot snap) {
+        synchronized (lock) {
+            GameSnapshot current = latest;
+            if (current == null || snap.version > current.version) {
+                latest = snap;
+            }
+            lock.notifyAll();
+        }
+        return snap;
+    }
+
+    /**
+     * Copy the game into a new snapshot, rebuilding only dirty sections. Render thread only,
+     * except before the first frame.
+     */
+    private GameSnapshot capture(long ticket) {
+        long start = System.nanoTime();
+        long version = versions.incrementAndGet();
+        boolean inGame = liveInGame();
+        boolean inCombat = inGame && liveInCombat();
+
+        if (worldChanged(inGame, inCombat)) {
+            DirtySections.markAll();
+        }
+        markInPlaceChanges(inGame, inCombat);
+        int dirty = DirtySections.drain();
+
+        GameSnapshot.Section[] sections = new GameSnapshot.Section[SECTIONS.length];
+        CombatModel combat = null;
+        ActMap actMap = null;
+        if (inGame) {
+            actMap = readActMap();
+            // Before the sections: combat state output carries metrics derived from the model
+            if (inCombat) {
+                if (builtCombat == null || DirtySections.isDirty(dirty, StateSection.COMBAT_STATE)) {
+                    builtCombat = readCombatModel();
+                }
+                combat = builtCombat;
+            }
+            for (StateSection section : SECTIONS) {
+                if (section == StateSection.COMBAT_STATE && !inCombat) continue;
+                sections[section.ordinal()] = buildSection(section, dirty);
+            }
+        }
+
+        long nanos = System.nanoTime() - start;
+        captures.incrementAndGet();
+        captureNanosTotal.addAndGet(nanos);
+        if (nanos > captureNanosMax) {
+            captureNanosMax = nanos;
+        }
+        if (nanos > CAPTURE_BUDGET_NANOS) {
+            logger.debug("Snapshot {} took {} us", version, nanos / 1000);
+        }
+        return new GameSnapshot(version, ticket, System.currentTimeMillis(), nanos, inGame, inCombat,
+                inGame ? readScreenType() : "MAIN_MENU", sections, combat, actMap);
+    }
+
+    /**
+     * The previous copy of a section if it is tracked and clean, or if a rebuild reads
+     * exactly the same values, otherwise a new one.
+     */
+    private GameSnapshot.Section buildSection(StateSection section, int dirty) {
+        int i = section.ordinal();
+        GameSnapshot.Section previous = built[i];
+        if (previous != null && section.tracked && !DirtySections.isDirty(dirty, section)) {
+            sectionHits.incrementAndGet(i);
+            return previous;
+        }
+        sectionRebuilds.incrementAndGet(i);
+        try {
+            scratch.clear();
+            readSection(section, scratch);
+            long fingerprint = scratch.fingerprint(GameSnapshot.COSMETIC_FIELDS);
+            if (previous != null && previous.fingerprint == fingerprint && scratch.sameAs(previous.tape)) {
+                // Dirty marks fire on any write, often of the same value; keep the encodings
+                sectionUnchanged.incrementAndGet(i);
+                return previous;
+            }
+            GameSnapshot.Section fresh = new GameSnapshot.Section(scratch.copy(), fingerprint);
+            built[i] = fresh;
+            return fresh;
+        } catch (Exception e) {
+            logger.error("Error reading " + section.name().toLowerCase().replace('_', ' '), e);
+            built[i] = null;  // Retry on the next capture
+            StateTape error = new StateTape();
+            error.beginObject().field("error", String.valueOf(e.getMessage())).endObject();
+            return new GameSnapshot.Section(error);
+        }
+    }
+
+    private void readSection(StateSection section, StateTape tape) {
+        switch (section) {
+            case GAME_STATE: readGameState(tape); break;
+            case COMBAT_STATE: readCombatState(tape); break;
+            case SCREEN: readScreen(tape); break;
+            case DECK: readDeck(tape); break;
+            case RELICS: readRelics(tape); break;
+            case POTIONS: readPotions(tape); break;
+            case MAP: readMap(tape); break;
+            default: throw new IllegalArgumentException(section.name());
+        }
+    }
+
+    /**
+     * True if the floor, screen, room phase, turn or combat flag differ from the last
+     * capture. These cover changes no dirty patch sees.
+     */
+    private boolean worldChanged(boolean inGame, boolean inCombat) {
+        AbstractRoom room = inGame ? AbstractDungeon.getCurrRoom() : null;
+        int floor = inGame ? AbstractDungeon.floorNum : -1;
+        int act = inGame ? AbstractDungeon.actNum : -1;
+        int turn = inCombat ? AbstractDungeon.actionManager.turn : -1;
+        AbstractDungeon.CurrentScreen screen = inGame ? AbstractDungeon.screen : null;
+        AbstractRoom.RoomPhase phase = room != null ? room.phase : null;
+
+        boolean changed = floor != lastFloor || act != lastAct || turn != lastTurn ||
+                          inCombat != lastInCombat || screen != lastScreen || phase != lastPhase;
+        lastFloor = floor;
+        lastAct = act;
+        lastTurn = turn;
+        lastInCombat = inCombat;
+        lastScreen = screen;
+        lastPhase = phase;
+        return changed;
+    }
+
+    /**
+     * Mark relics or combat dirty when a relic counter or power amount differs from the last
+     * capture. Most counter relics bump their counter in place and only flash at the
+     * threshold, and powers that override reducePower without calling it change where no
+     * patch sees them. A few dozen ints, compared every capture.
+     */
+    private void markInPlaceChanges(boolean inGame, boolean inCombat) {
+        long relics = 0;
+        long powers = 0;
+        if (inGame) {
+            AbstractPlayer player = AbstractDungeon.player;
+            relics = player.relics.size();
+            for (AbstractRelic r : player.relics) {
+                relics = relics * 31 + r.counter;
+            }
+            if (inCombat) {
+                powers = powerAmounts(powers, player.powers);
+                for (AbstractMonster m : AbstractDungeon.getCurrRoom().monsters.monsters) {
+                    powers = powerAmounts(powers, m.powers);
+                }
+            }
+        }
+        if (relics != lastRelicCounters) {
+            DirtySections.mark(StateSection.RELICS);
+        }
+        if (powers != lastPowerAmounts) {
+            DirtySections.mark(StateSection.COMBAT_STATE);
+        }
+        lastRelicCounters = relics;
+        lastPowerAmounts = powers;
+    }
+
+    private static long powerAmounts(long h, List<AbstractPower> powers) {
+        h = h * 31 + powers.size();
+        for (AbstractPower p : powers) {
+            h = h * 31 + p.amount;
+        }
+        return h;
+    }
+
+    private boolean liveInGame() {
         try {
             return AbstractDungeon.player != null && AbstractDungeon.currMapNode != null;
         } catch (Exception e) {
@@ -37,9 +518,9 @@ public class GameStateReader {
         }
     }
 
-    public boolean isInCombat() {
+    private boolean liveInCombat() {
         try {
-            if (!isInGame()) return false;
+            if (!liveInGame()) return false;
             AbstractRoom room = AbstractDungeon.getCurrRoom();
             return room != null &&
                    room.phase == AbstractRoom.RoomPhase.COMBAT &&
@@ -49,354 +530,502 @@ public class GameStateReader {
         }
     }
 
+    // ========== Sections (render thread) ==========
+
+    // Sections are written field by field into a reused tape (see StateTape): no maps, no
+    // boxing and no string building per capture.
+
     /**
      * Get basic game state: character, HP, gold, floor, etc.
      */
-    public String getGameState() {
-        try {
-            if (!isInGame()) {
-                return "Not in game (main menu or loading).";
-            }
-
-            AbstractPlayer player = AbstractDungeon.player;
-            Map<String, Object> state = new LinkedHashMap<>();
-
-            state.put("character", player.title);
-            state.put("hp", player.currentHealth + "/" + player.maxHealth);
-            state.put("gold", player.gold);
-            state.put("floor", AbstractDungeon.floorNum);
-            state.put("act", AbstractDungeon.actNum);
-            state.put("ascension", AbstractDungeon.ascensionLevel);
-
-            if (AbstractDungeon.id != null) {
-                state.put("dungeon", AbstractDungeon.id);
-            }
-
-            return gson.toJson(state);
-        } catch (Exception e) {
-            logger.error("Error reading game state", e);
-            return "{\"error\": \"" + e.getMessage() + "\"}";
+    private void readGameState(StateTape tape) {
+        AbstractPlayer player = AbstractDungeon.player;
+
+        tape.beginObject();
+        tape.field("character", player.title);
+        tape.ratio("hp", player.currentHealth, player.maxHealth);
+        tape.field("gold", player.gold);
+        tape.field("floor", AbstractDungeon.floorNum);
+        tape.field("act", AbstractDungeon.actNum);
+        tape.field("ascension", AbstractDungeon.ascensionLevel);
+
+        if (AbstractDungeon.id != null) {
+            tape.field("dungeon", AbstractDungeon.id);
         }
+        tape.endObject();
     }
 
     /**
      * Get combat state: energy, hand, enemies, buffs/debuffs.
      */
-    public String getCombatState() {
-        try {
-            if (!isInGame()) {
-                return "{\"error\": \"Not in game\"}";
-            }
-            if (!isInCombat()) {
-                return "{\"error\": \"Not in combat\"}";
-            }
+    private void readCombatState(StateTape tape) {
+        AbstractPlayer player = AbstractDungeon.player;
+        tape.beginObject();
 
-            AbstractPlayer player = AbstractDungeon.player;
-            Map<String, Object> state = new LinkedHashMap<>();
+        // Energy
+        tape.ratio("energy", EnergyPanel.totalCount, player.energy.energyMaster);
 
-            // Energy
-            state.put("energy", EnergyPanel.totalCount + "/" + player.energy.energyMaster);
+        // Player HP and Block
+        tape.ratio("player_hp", player.currentHealth, player.maxHealth);
+        if (player.currentBlock > 0) {
+            tape.field("player_block", player.currentBlock);
+        }
 
-            // Player HP and Block
-            state.put("player_hp", player.currentHealth + "/" + player.maxHealth);
-            if (player.currentBlock > 0) {
-                state.put("player_block", player.currentBlock);
-            }
+        // Derived from the model captured this frame (see capture)
+        MonsterGroup monsters = AbstractDungeon.getCurrRoom().monsters;
+        CombatMetrics metrics = null;
+        if (builtCombat != null && monsters != null) {
+            metrics = CombatMetrics.of(builtCombat, vulnerableEnemies(monsters));
+            tape.field("incoming", metrics.incoming);
+            tape.field("block_shortfall", metrics.blockShortfall);
+        }
 
-            // Player powers (buffs/debuffs)
-            if (!player.powers.isEmpty()) {
-                List<Map<String, Object>> powers = new ArrayList<>();
-                for (AbstractPower p : player.powers) {
-                    Map<String, Object> power = new LinkedHashMap<>();
-                    power.put("name", p.name);
-                    power.put("amount", p.amount);
-                    powers.add(power);
-                }
-                state.put("player_powers", powers);
-            }
-
-            // Hand (1-indexed for LLM)
-            List<Map<String, Object>> hand = new ArrayList<>();
-            for (int i = 0; i < player.hand.size(); i++) {
-                AbstractCard card = player.hand.group.get(i);
-                Map<String, Object> cardInfo = new LinkedHashMap<>();
-                cardInfo.put("index", i + 1);
-                cardInfo.put("name", card.name);
-                cardInfo.put("cost", card.costForTurn);
-                cardInfo.put("type", card.type.toString());
-                cardInfo.put("playable", card.canUse(player, null));
-                if (card.type == AbstractCard.CardType.ATTACK) {
-                    cardInfo.put("damage", card.damage);
-                    cardInfo.put("needs_target", true);
-                }
-                if (card.type == AbstractCard.CardType.SKILL && card.block > 0) {
-                    cardInfo.put("block", card.block);
-                }
-                hand.add(cardInfo);
+        // Player powers (buffs/debuffs)
+        if (!player.powers.isEmpty()) {
+            tape.name("player_powers").beginArray();
+            for (AbstractPower p : player.powers) {
+                tape.beginObject().field("name", p.name);
+                writeRef(tape, GameCatalog.power(p));
+                tape.field("amount", p.amount).endObject();
             }
-            state.put("hand", hand);
+            tape.endArray();
+        }
 
-            // Enemies (1-indexed, only alive)
-            MonsterGroup monsters = AbstractDungeon.getCurrRoom().monsters;
-            if (monsters != null) {
-                List<Map<String, Object>> enemies = new ArrayList<>();
-                int idx = 1;
-                for (AbstractMonster m : monsters.monsters) {
-                    if (!m.isDead && !m.escaped) {
-                        Map<String, Object> enemy = new LinkedHashMap<>();
-                        enemy.put("index", idx);
-                        enemy.put("name", m.name);
-                        enemy.put("hp", m.currentHealth + "/" + m.maxHealth);
-                        enemy.put("intent", getIntentDescription(m));
-                        if (m.currentBlock > 0) {
-                            enemy.put("block", m.currentBlock);
+        // Hand (1-indexed for LLM)
+        tape.name("hand").beginArray();
+        for (int i = 0; i < player.hand.size(); i++) {
+            AbstractCard card = player.hand.group.get(i);
+            tape.beginObject();
+            tape.field("index", i + 1);
+            tape.field("id", Handles.card(card.uuid));
+            tape.field("name", card.name);
+            writeRef(tape, GameCatalog.card(card));
+            tape.field("cost", card.costForTurn);
+            tape.field("playable", card.canUse(player, null));
+            if (card.type == AbstractCard.CardType.ATTACK) {
+                tape.field("damage", card.damage);
+                tape.field("needs_target", true);
+            }
+            if (card.type == AbstractCard.CardType.SKILL && card.block > 0) {
+                tape.field("block", card.block);
+            }
+            tape.endObject();
+        }
+        tape.endArray();
+
+        // Enemies (1-indexed, only alive)
+        if (monsters != null) {
+            tape.name("enemies").beginArray();
+            int idx = 1;
+            for (AbstractMonster m : monsters.monsters) {
+                if (!m.isDead && !m.escaped) {
+                    tape.beginObject();
+                    tape.field("index", idx);
+                    tape.field("id", Handles.enemy(enemyId(monsters, m)));
+                    tape.field("name", m.name);
+                    tape.ratio("hp", m.currentHealth, m.maxHealth);
+                    tape.name("intent");
+                    writeIntent(tape, m);
+                    if (m.currentBlock > 0) {
+                        tape.field("block", m.currentBlock);
+                    }
+                    if (metrics != null && idx <= metrics.lethal.length) {
+                        // Single hits are already in the intent as they are
+                        if (builtCombat.enemyIntentHits[idx - 1] > 1) {
+                            tape.field("incoming", metrics.enemyIncoming[idx - 1]);
                         }
-                        // Enemy powers
-                        if (!m.powers.isEmpty()) {
-                            List<String> powers = new ArrayList<>();
-                            for (AbstractPower p : m.powers) {
-                                powers.add(p.name + (p.amount != 0 ? " " + p.amount : ""));
+                        if (metrics.lethal[idx - 1]) {
+                            tape.field("lethal", true);
+                        }
+                    }
+                    // Enemy powers
+                    if (!m.powers.isEmpty()) {
+                        tape.name("powers").beginArray();
+                        for (AbstractPower p : m.powers) {
+                            GameCatalog.power(p);  // So it can be looked up by name
+                            tape.beginText().append(p.name);
+                            if (p.amount != 0) {
+                                tape.append(" ").append(p.amount);
                             }
-                            enemy.put("powers", powers);
+                            tape.endText();
                         }
-                        enemies.add(enemy);
-                        idx++;
+                        tape.endArray();
                     }
+                    tape.endObject();
+                    idx++;
                 }
-                state.put("enemies", enemies);
             }
+            tape.endArray();
+        }
 
-            // Draw pile and discard pile sizes
-            state.put("draw_pile", player.drawPile.size());
-            state.put("discard_pile", player.discardPile.size());
-            state.put("exhaust_pile", player.exhaustPile.size());
+        // Draw pile and discard pile sizes
+        tape.field("draw_pile", player.drawPile.size());
+        tape.field("discard_pile", player.discardPile.size());
+        tape.field("exhaust_pile", player.exhaustPile.size());
 
-            return gson.toJson(state);
-        } catch (Exception e) {
-            logger.error("Error reading combat state", e);
-            return "{\"error\": \"" + e.getMessage() + "\"}";
-        }
+        tape.endObject();
     }
 
     /**
-     * Get current screen state: type, choices, buttons.
+     * Capture the combat as primitive arrays for the Monte Carlo planner.
+     * Returns null when not in combat.
      */
-    public String getScreen() {
+    private CombatModel readCombatModel() {
         try {
-            if (!isInGame()) {
-                return "{\"screen_type\": \"MAIN_MENU\"}";
+            if (!liveInCombat()) {
+                return null;
             }
 
-            Map<String, Object> state = new LinkedHashMap<>();
-
-            // Screen type
-            String screenType = getScreenType();
-            state.put("screen_type", screenType);
+            AbstractPlayer player = AbstractDungeon.player;
+            List<AbstractCard> cards = new ArrayList<>();
+            int[] hand = addCards(cards, player.hand.group);
+            int handCount = cards.size();
+            int[] drawPile = addCards(cards, player.drawPile.group);
+            int[] discardPile = addCards(cards, player.discardPile.group);
+
+            int n = cards.size();
+            String[] cardNames = new String[n];
+            int[] cardCost = new int[n];
+            int[] cardDamage = new int[n];
+            int[] cardBlock = new int[n];
+            int[] cardFlags = new int[n];
+            String[] cardHandles = new String[n];
+            for (int i = 0; i < n; i++) {
+                AbstractCard card = cards.get(i);
+                boolean inHand = i < handCount;
+                // Only hand cards have damage/block calculated with current powers
+                int cost = inHand ? card.costForTurn : card.cost;
+                int flags = 0;
+                if (card.type == AbstractCard.CardType.ATTACK) flags |= CombatModel.FLAG_ATTACK;
+                if (card.isMultiDamage || card.target == AbstractCard.CardTarget.ALL_ENEMY) flags |= CombatModel.FLAG_AOE;
+                if (card.exhaust || card.type == AbstractCard.CardType.POWER) flags |= CombatModel.FLAG_EXHAUST;
+                if (cost == -2) flags |= CombatModel.FLAG_UNPLAYABLE;
+                if (cost == -1) flags |= CombatModel.FLAG_X_COST;
+
+                cardNames[i] = card.name;
+                cardCost[i] = cost;
+                cardDamage[i] = Math.max(0, inHand ? card.damage : card.baseDamage);
+                cardBlock[i] = Math.max(0, inHand ? card.block : card.baseBlock);
+                cardFlags[i] = flags;
+                cardHandles[i] = Handles.card(card.uuid);
+            }
 
-            // Room phase
-            AbstractRoom room = AbstractDungeon.getCurrRoom();
-            if (room != null) {
-                state.put("room_phase", room.phase.toString());
-            }
-
-            // Choices (if available)
-            List<String> choices = getChoices();
-            if (!choices.isEmpty()) {
-                List<Map<String, Object>> choiceList = new ArrayList<>();
-                for (int i = 0; i < choices.size(); i++) {
-                    Map<String, Object> choice = new LinkedHashMap<>();
-                    choice.put("index", i + 1);
-                    choice.put("name", choices.get(i));
-                    choiceList.add(choice);
+            MonsterGroup monsters = AbstractDungeon.getCurrRoom().monsters;
+            List<AbstractMonster> alive = new ArrayList<>();
+            for (AbstractMonster m : monsters.monsters) {
+                if (!m.isDead && !m.escaped) {
+                    alive.add(m);
+                }
+            }
+            int e = alive.size();
+            String[] enemyNames = new String[e];
+            int[] enemyIds = new int[e];
+            int[] enemyHp = new int[e];
+            int[] enemyBlock = new int[e];
+            int[] enemyIntentDamage = new int[e];
+            int[] enemyIntentHits = new int[e];
+            for (int i = 0; i < e; i++) {
+                AbstractMonster m = alive.get(i);
+                enemyNames[i] = m.name;
+                enemyIds[i] = enemyId(monsters, m);
+                enemyHp[i] = m.currentHealth;
+                enemyBlock[i] = m.currentBlock;
+                if (isAttackIntent(m.intent)) {
+                    enemyIntentDamage[i] = Math.max(0, m.getIntentDmg());
+                    enemyIntentHits[i] = getIntentHits(m);
                 }
-                state.put("choices", choiceList);
             }
 
-            // Button states
-            state.put("can_proceed", isProceedAvailable());
-            state.put("can_skip", isSkipAvailable());
-            state.put("can_cancel", isCancelAvailable());
-
-            return gson.toJson(state);
+            return new CombatModel(
+                    player.currentHealth, player.currentBlock,
+                    EnergyPanel.totalCount, player.energy.energyMaster, player.gameHandSize,
+                    cardNames, cardCost, cardDamage, cardBlock, cardFlags, cardHandles,
+                    hand, drawPile, discardPile,
+                    enemyNames, enemyIds, enemyHp, enemyBlock, enemyIntentDamage, enemyIntentHits
+            );
         } catch (Exception e) {
-            logger.error("Error reading screen state", e);
-            return "{\"error\": \"" + e.getMessage() + "\"}";
+            logger.error("Error capturing combat model", e);
+            return null;
         }
     }
 
     /**
-     * Get deck information.
+     * Per-combat id of a monster (see {@link Handles#enemy}), given in order of first sight.
+     * A new monster group means a new fight, and numbering starts over.
      */
-    public String getDeck() {
+    private int enemyId(MonsterGroup group, AbstractMonster m) {
+        if (group != enemyIdGroup) {
+            enemyIds.clear();
+            enemyIdGroup = group;
+        }
+        Integer id = enemyIds.get(m);
+        if (id == null) {
+            id = enemyIds.size();
+            enemyIds.put(m, id);
+        }
+        return id;
+    }
+
+    /**
+     * The act map at the player's position. The map is copied once per act; after that
+     * only the position is looked up.
+     */
+    private ActMap readActMap() {
         try {
-            if (!isInGame()) {
-                return "{\"error\": \"Not in game\"}";
+            ArrayList<ArrayList<MapRoomNode>> rows = AbstractDungeon.map;
+            if (rows == null) return null;
+            if (builtMap == null || rows != builtMapRows || builtMap.act != AbstractDungeon.actNum) {
+                builtMap = copyActMap(rows);
+                builtMapRows = rows;
             }
-
-            AbstractPlayer player = AbstractDungeon.player;
-            Map<String, Object> state = new LinkedHashMap<>();
-
-            // Master deck
-            List<Map<String, Object>> deck = new ArrayList<>();
-            for (AbstractCard card : player.masterDeck.group) {
-                Map<String, Object> cardInfo = new LinkedHashMap<>();
-                cardInfo.put("name", card.name);
-                cardInfo.put("type", card.type.toString());
-                cardInfo.put("cost", card.cost);
-                cardInfo.put("rarity", card.rarity.toString());
-                if (card.upgraded) {
-                    cardInfo.put("upgraded", true);
-                }
-                deck.add(cardInfo);
+            MapRoomNode node = AbstractDungeon.currMapNode;
+            if (node == null || node.y < 0) {
+                builtMap = builtMap.at(-1);
+                return builtMap;
             }
-            state.put("deck", deck);
-            state.put("deck_size", deck.size());
-
-            return gson.toJson(state);
+            int current = builtMap.nodeAt(node.x, node.y);
+            if (current < 0) return null;  // Boss room, past the map
+            builtMap = builtMap.at(current);
+            return builtMap;
         } catch (Exception e) {
-            logger.error("Error reading deck", e);
-            return "{\"error\": \"" + e.getMessage() + "\"}";
+            logger.error("Error reading act map", e);
+            return null;
         }
     }
 
-    /**
-     * Get relics.
-     */
-    public String getRelics() {
-        try {
-            if (!isInGame()) {
-                return "{\"error\": \"Not in game\"}";
+    private ActMap copyActMap(ArrayList<ArrayList<MapRoomNode>> rows) {
+        int height = rows.size();
+        int width = 0;
+        for (ArrayList<MapRoomNode> row : rows) {
+            width = Math.max(width, row.size());
+        }
+
+        // Nodes on some path: those with edges and those an edge leads to
+        boolean[][] onPath = new boolean[height][width];
+        for (ArrayList<MapRoomNode> row : rows) {
+            for (MapRoomNode node : row) {
+                if (node == null || !node.hasEdges()) continue;
+                onPath[node.y][node.x] = true;
+                for (MapEdge edge : node.getEdges()) {
+                    if (edge.dstY >= 0 && edge.dstY < height && edge.dstX >= 0 && edge.dstX < width) {
+                        onPath[edge.dstY][edge.dstX] = true;
+                    }
+                }
             }
+        }
 
-            AbstractPlayer player = AbstractDungeon.player;
-            List<Map<String, Object>> relics = new ArrayList<>();
+        int[][] index = new int[height][width];
+        List<MapRoomNode> nodes = new ArrayList<>();
+        for (int y = 0; y < height; y++) {
+            Arrays.fill(index[y], -1);
+            for (MapRoomNode node : rows.get(y)) {
+                if (node != null && onPath[node.y][node.x]) {
+                    index[node.y][node.x] = nodes.size();
+                    nodes.add(node);
+                }
+            }
+        }
 
-            for (AbstractRelic r : player.relics) {
-                Map<String, Object> relic = new LinkedHashMap<>();
-                relic.put("name", r.name);
-                relic.put("id", r.relicId);
-                if (r.counter >= 0) {
-                    relic.put("counter", r.counter);
+        int n = nodes.size();
+        int[] nodeX = new int[n];
+        int[] nodeY = new int[n];
+        int[] nodeKind = new int[n];
+        int[] edgeStart = new int[n + 1];
+        List<Integer> targets = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            MapRoomNode node = nodes.get(i);
+            nodeX[i] = node.x;
+            nodeY[i] = node.y;
+            nodeKind[i] = ActMap.kindOf(node.getRoomSymbol(true));
+            edgeStart[i] = targets.size();
+            // Column order, as the map screen lists choices
+            int y = node.y + 1;
+            for (int x = 0; y < height && x < width; x++) {
+                if (index[y][x] >= 0 && hasEdgeTo(node, x, y)) {
+                    targets.add(index[y][x]);
                 }
-                relics.add(relic);
             }
+        }
+        edgeStart[n] = targets.size();
+        int[] edgeTarget = new int[targets.size()];
+        for (int i = 0; i < edgeTarget.length; i++) {
+            edgeTarget[i] = targets.get(i);
+        }
+        return new ActMap(AbstractDungeon.actNum, nodeX, nodeY, nodeKind, edgeStart, edgeTarget, -1);
+    }
 
-            Map<String, Object> state = new LinkedHashMap<>();
-            state.put("relics", relics);
-            return gson.toJson(state);
-        } catch (Exception e) {
-            logger.error("Error reading relics", e);
-            return "{\"error\": \"" + e.getMessage() + "\"}";
+    private boolean hasEdgeTo(MapRoomNode node, int x, int y) {
+        for (MapEdge edge : node.getEdges()) {
+            if (edge.dstX == x && edge.dstY == y) return true;
         }
+        return false;
     }
 
     /**
-     * Get potions.
+     * Get current screen state: type, choices, buttons.
      */
-    public String getPotions() {
-        try {
-            if (!isInGame()) {
-                return "{\"error\": \"Not in game\"}";
+    private void readScreen(StateTape tape) {
+        tape.beginObject();
+
+        // Screen type
+        tape.field("screen_type", readScreenType());
+
+        // Room phase
+        AbstractRoom room = AbstractDungeon.getCurrRoom();
+        if (room != null) {
+            tape.field("room_phase", room.phase.toString());
+        }
+
+        // Choices and button states
+        screens.get(ScreenExtractors.current())
+               .write(tape, room != null && room.phase == AbstractRoom.RoomPhase.COMPLETE);
+
+        tape.endObject();
+    }
+
+    /**
+     * Get deck information.
+     */
+    private void readDeck(StateTape tape) {
+        CardGroup deck = AbstractDungeon.player.masterDeck;
+        tape.beginObject();
+
+        // Master deck
+        tape.name("deck").beginArray();
+        for (AbstractCard card : deck.group) {
+            tape.beginObject();
+            tape.field("name", card.name);
+            writeRef(tape, GameCatalog.card(card));
+            tape.field("cost", card.cost);
+            if (card.upgraded) {
+                tape.field("upgraded", true);
             }
+            tape.endObject();
+        }
+        tape.endArray();
+        tape.field("deck_size", deck.size());
 
-            AbstractPlayer player = AbstractDungeon.player;
-            List<Map<String, Object>> potions = new ArrayList<>();
-
-            for (int i = 0; i < player.potions.size(); i++) {
-                AbstractPotion p = player.potions.get(i);
-                Map<String, Object> potion = new LinkedHashMap<>();
-                potion.put("slot", i + 1);
-                if (p instanceof PotionSlot) {
-                    potion.put("name", "Empty");
-                    potion.put("empty", true);
-                } else {
-                    potion.put("name", p.name);
-                    potion.put("id", p.ID);
-                    potion.put("can_use", p.canUse());
-                    potion.put("requires_target", p.isThrown);
-                }
-                potions.add(potion);
+        tape.endObject();
+    }
+
+    /**
+     * Get relics.
+     */
+    private void readRelics(StateTape tape) {
+        AbstractPlayer player = AbstractDungeon.player;
+
+        tape.beginObject().name("relics").beginArray();
+        for (AbstractRelic r : player.relics) {
+            tape.beginObject();
+            tape.field("name", r.name);
+            writeRef(tape, GameCatalog.relic(r));
+            if (r.counter >= 0) {
+                tape.field("counter", r.counter);
             }
+            tape.endObject();
+        }
+        tape.endArray().endObject();
+    }
 
-            Map<String, Object> state = new LinkedHashMap<>();
-            state.put("potions", potions);
-            state.put("potion_slots", player.potionSlots);
-            return gson.toJson(state);
-        } catch (Exception e) {
-            logger.error("Error reading potions", e);
-            return "{\"error\": \"" + e.getMessage() + "\"}";
+    /**
+     * Get potions.
+     */
+    private void readPotions(StateTape tape) {
+        AbstractPlayer player = AbstractDungeon.player;
+
+        tape.beginObject().name("potions").beginArray();
+        for (int i = 0; i < player.potions.size(); i++) {
+            AbstractPotion p = player.potions.get(i);
+            tape.beginObject();
+            tape.field("slot", i + 1);
+            if (p instanceof PotionSlot) {
+                tape.field("name", "Empty");
+                tape.field("empty", true);
+            } else {
+                tape.field("name", p.name);
+                writeRef(tape, GameCatalog.potion(p));
+                tape.field("can_use", p.canUse());
+                tape.field("requires_target", p.isThrown);
+            }
+            tape.endObject();
         }
+        tape.endArray();
+        tape.field("potion_slots", player.potionSlots);
+        tape.endObject();
     }
 
     /**
      * Get map information.
      */
-    public String getMap() {
-        try {
-            if (!isInGame()) {
-                return "{\"error\": \"Not in game\"}";
-            }
-
-            Map<String, Object> state = new LinkedHashMap<>();
-            state.put("current_floor", AbstractDungeon.floorNum);
-            state.put("act", AbstractDungeon.actNum);
-
-            // Current node
-            MapRoomNode currentNode = AbstractDungeon.currMapNode;
-            if (currentNode != null && currentNode.room != null) {
-                state.put("current_room", currentNode.room.getClass().getSimpleName());
-            }
-
-            // Available paths (next nodes)
-            if (currentNode != null && AbstractDungeon.map != null) {
-                List<Map<String, Object>> nextNodes = new ArrayList<>();
-                ArrayList<ArrayList<MapRoomNode>> map = AbstractDungeon.map;
-                int nextY = currentNode.y + 1;
-                if (nextY < map.size()) {
-                    for (MapRoomNode nextNode : map.get(nextY)) {
-                        if (nextNode != null && nextNode.hasEdges()) {
-                            // Check if this node is connected from current
-                            for (com.megacrit.cardcrawl.map.MapEdge edge : currentNode.getEdges()) {
-                                if (edge.dstX == nextNode.x && edge.dstY == nextNode.y) {
-                                    Map<String, Object> node = new LinkedHashMap<>();
-                                    node.put("x", nextNode.x);
-                                    node.put("y", nextNode.y);
-                                    node.put("symbol", nextNode.getRoomSymbol(true));
-                                    nextNodes.add(node);
-                                    break;
-                                }
+    private void readMap(StateTape tape) {
+        tape.beginObject();
+        tape.field("current_floor", AbstractDungeon.floorNum);
+        tape.field("act", AbstractDungeon.actNum);
+
+        // Current node
+        MapRoomNode currentNode = AbstractDungeon.currMapNode;
+        if (currentNode != null && currentNode.room != null) {
+            tape.field("current_room", currentNode.room.getClass().getSimpleName());
+        }
+
+        // Available paths (next nodes)
+        if (currentNode != null && AbstractDungeon.map != null) {
+            long beforeNodes = tape.mark();
+            int count = 0;
+            tape.name("next_nodes").beginArray();
+            ArrayList<ArrayList<MapRoomNode>> map = AbstractDungeon.map;
+            int nextY = currentNode.y + 1;
+            if (nextY < map.size()) {
+                for (MapRoomNode nextNode : map.get(nextY)) {
+                    if (nextNode != null && nextNode.hasEdges()) {
+                        // Check if this node is connected from current
+                        for (com.megacrit.cardcrawl.map.MapEdge edge : currentNode.getEdges()) {
+                            if (edge.dstX == nextNode.x && edge.dstY == nextNode.y) {
+                                tape.beginObject()
+                                    .field("x", nextNode.x)
+                                    .field("y", nextNode.y)
+                                    .field("symbol", nextNode.getRoomSymbol(true))
+                                    .endObject();
+                                count++;
+                                break;
                             }
                         }
                     }
                 }
-                if (!nextNodes.isEmpty()) {
-                    state.put("next_nodes", nextNodes);
-                }
             }
-
-            // Boss
-            if (AbstractDungeon.bossKey != null) {
-                state.put("boss", AbstractDungeon.bossKey);
+            if (count > 0) {
+                tape.endArray();
+            } else {
+                tape.rewind(beforeNodes);
             }
+        }
 
-            return gson.toJson(state);
-        } catch (Exception e) {
-            logger.error("Error reading map", e);
-            return "{\"error\": \"" + e.getMessage() + "\"}";
+        // Boss
+        if (AbstractDungeon.bossKey != null) {
+            tape.field("boss", AbstractDungeon.bossKey);
         }
+
+        tape.endObject();
     }
 
     // ========== Helper Methods ==========
 
-    private String getScreenType() {
+    private String readScreenType() {
         try {
-            if (!isInGame()) return "MAIN_MENU";
+            if (!liveInGame()) return "MAIN_MENU";
 
             if (AbstractDungeon.screen != null) {
+                if (AbstractDungeon.screen == AbstractDungeon.CurrentScreen.NONE) {
+                    // Events, rest sites and Neow show no screen of their own
+                    ScreenExtractors.Screen screen = ScreenExtractors.current();
+                    if (screen != ScreenExtractors.Screen.OTHER) {
+                        return screen.name();
+                    }
+                }
                 return AbstractDungeon.screen.name();
             }
 
-            if (isInCombat()) {
+            if (liveInCombat()) {
                 return "COMBAT";
             }
 
@@ -411,196 +1040,123 @@ public class GameStateReader {
         }
     }
 
-    private String getIntentDescription(AbstractMonster m) {
-        if (m.intent == null) return "Unknown";
+    /**
+     * Catalog ref, if the catalog has the entry (see {@link Catalog}).
+     */
+    private void writeRef(StateTape tape, int ref) {
+        if (ref != 0) {
+            tape.field("ref", ref);
+        }
+    }
+
+    private void writeIntent(StateTape tape, AbstractMonster m) {
+        if (m.intent == null) {
+            tape.value("Unknown");
+            return;
+        }
 
         switch (m.intent) {
             case ATTACK:
-                int dmg = m.getIntentDmg();
-                // Use reflection for private fields
-                try {
-                    java.lang.reflect.Field isMultiDmgField = AbstractMonster.class.getDeclaredField("isMultiDmg");
-                    isMultiDmgField.setAccessible(true);
-                    boolean isMulti = isMultiDmgField.getBoolean(m);
-                    if (isMulti) {
-                        java.lang.reflect.Field multiAmtField = AbstractMonster.class.getDeclaredField("intentMultiAmt");
-                        multiAmtField.setAccessible(true);
-                        int multiAmt = multiAmtField.getInt(m);
-                        return "Attack " + dmg + "x" + multiAmt;
-                    }
-                } catch (Exception ignored) {}
-                return "Attack " + dmg;
+                appendAttack(tape.beginText(), m).endText();
+                return;
             case ATTACK_BUFF:
-                return "Attack " + m.getIntentDmg() + " + Buff";
+                appendAttack(tape.beginText(), m).append(" + Buff").endText();
+                return;
             case ATTACK_DEBUFF:
-                return "Attack " + m.getIntentDmg() + " + Debuff";
+                appendAttack(tape.beginText(), m).append(" + Debuff").endText();
+                return;
             case ATTACK_DEFEND:
-                return "Attack " + m.getIntentDmg() + " + Defend";
+                appendAttack(tape.beginText(), m).append(" + Defend").endText();
+                return;
             case BUFF:
-                return "Buff";
+                tape.value("Buff");
+                return;
             case DEBUFF:
-                return "Debuff";
+                tape.value("Debuff");
+                return;
             case STRONG_DEBUFF:
-                return "Strong Debuff";
+                tape.value("Strong Debuff");
+                return;
             case DEFEND:
-                return "Defend";
+                tape.value("Defend");
+                return;
             case DEFEND_DEBUFF:
-                return "Defend + Debuff";
+                tape.value("Defend + Debuff");
+                return;
             case DEFEND_BUFF:
-                return "Defend + Buff";
+                tape.value("Defend + Buff");
+                return;
             case ESCAPE:
-                return "Escape";
+                tape.value("Escape");
+                return;
             case MAGIC:
-                return "Magic";
+                tape.value("Magic");
+                return;
             case SLEEP:
-                return "Sleeping";
+                tape.value("Sleeping");
+                return;
             case STUN:
-                return "Stunned";
+                tape.value("Stunned");
+                return;
             case UNKNOWN:
             default:
-                return "Unknown";
+                tape.value("Unknown");
         }
     }
 
-    private List<String> getChoices() {
-        List<String> choices = new ArrayList<>();
-        try {
-            if (!isInGame()) return choices;
-
-            // Card reward screen
-            if (AbstractDungeon.screen == AbstractDungeon.CurrentScreen.CARD_REWARD) {
-                if (AbstractDungeon.cardRewardScreen != null &&
-                    AbstractDungeon.cardRewardScreen.rewardGroup != null) {
-                    for (AbstractCard card : AbstractDungeon.cardRewardScreen.rewardGroup) {
-                        choices.add(card.name);
-                    }
-                }
-            }
-            // Combat reward screen
-            else if (AbstractDungeon.screen == AbstractDungeon.CurrentScreen.COMBAT_REWARD) {
-                if (AbstractDungeon.combatRewardScreen != null &&
-                    AbstractDungeon.combatRewardScreen.rewards != null) {
-                    for (com.megacrit.cardcrawl.rewards.RewardItem reward :
-                         AbstractDungeon.combatRewardScreen.rewards) {
-                        choices.add(reward.type.toString());
-                    }
-                }
-            }
-            // Map screen
-            else if (AbstractDungeon.screen == AbstractDungeon.CurrentScreen.MAP) {
-                MapRoomNode currentNode = AbstractDungeon.currMapNode;
-                if (currentNode != null && AbstractDungeon.map != null) {
-                    ArrayList<ArrayList<MapRoomNode>> map = AbstractDungeon.map;
-                    int nextY = currentNode.y + 1;
-                    if (nextY < map.size()) {
-                        for (MapRoomNode nextNode : map.get(nextY)) {
-                            if (nextNode != null) {
-                                for (com.megacrit.cardcrawl.map.MapEdge edge : currentNode.getEdges()) {
-                                    if (edge.dstX == nextNode.x && edge.dstY == nextNode.y) {
-                                        choices.add(nextNode.getRoomSymbol(true));
-                                        break;
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-            // Grid select screen
-            else if (AbstractDungeon.screen == AbstractDungeon.CurrentScreen.GRID) {
-                if (AbstractDungeon.gridSelectScreen != null &&
-                    AbstractDungeon.gridSelectScreen.selectedCards != null) {
-                    for (AbstractCard card : AbstractDungeon.gridSelectScreen.targetGroup.group) {
-                        choices.add(card.name);
-                    }
-                }
-            }
-            // Boss reward screen
-            else if (AbstractDungeon.screen == AbstractDungeon.CurrentScreen.BOSS_REWARD) {
-                if (AbstractDungeon.bossRelicScreen != null &&
-                    AbstractDungeon.bossRelicScreen.relics != null) {
-                    for (AbstractRelic relic : AbstractDungeon.bossRelicScreen.relics) {
-                        choices.add(relic.name);
-                    }
-                }
-            }
-            // Shop screen
-            else if (AbstractDungeon.screen == AbstractDungeon.CurrentScreen.SHOP) {
-                if (AbstractDungeon.shopScreen != null) {
-                    // Shop has cards, relics, potions - simplified
-                    choices.add("(Shop items available)");
-                }
-            }
-        } catch (Exception e) {
-            logger.error("Error getting choices", e);
+    /**
+     * "Attack 6", or "Attack 6x3" for multi-hit intents.
+     */
+    private StateTape appendAttack(StateTape tape, AbstractMonster m) {
+        tape.append("Attack ").append(m.getIntentDmg());
+        int hits = getIntentHits(m);
+        if (hits > 1) {
+            tape.append("x").append(hits);
         }
-        return choices;
+        return tape;
     }
 
-    private boolean isProceedAvailable() {
-        try {
-            if (!isInGame()) return false;
-
-            AbstractRoom room = AbstractDungeon.getCurrRoom();
-            if (room == null) return false;
-
-            // Combat reward screen has proceed
-            if (AbstractDungeon.screen == AbstractDungeon.CurrentScreen.COMBAT_REWARD) {
-                return true;
-            }
-            // After rest
-            if (room.phase == AbstractRoom.RoomPhase.COMPLETE) {
-                return true;
-            }
-            // Grid confirm
-            if (AbstractDungeon.screen == AbstractDungeon.CurrentScreen.GRID) {
-                GridCardSelectScreen screen = AbstractDungeon.gridSelectScreen;
-                if (screen != null && screen.confirmButton != null) {
-                    return !screen.confirmButton.isDisabled;
-                }
+    /**
+     * Vulnerable flag per living monster, in combat model order.
+     */
+    private boolean[] vulnerableEnemies(MonsterGroup monsters) {
+        int alive = 0;
+        for (AbstractMonster m : monsters.monsters) {
+            if (!m.isDead && !m.escaped) alive++;
+        }
+        boolean[] vulnerable = new boolean[alive];
+        int i = 0;
+        for (AbstractMonster m : monsters.monsters) {
+            if (!m.isDead && !m.escaped) {
+                vulnerable[i++] = m.hasPower("Vulnerable");
             }
-
-            return false;
-        } catch (Exception e) {
-            return false;
         }
+        return vulnerable;
     }
 
-    private boolean isSkipAvailable() {
-        try {
-            if (!isInGame()) return false;
-
-            // Card reward can be skipped
-            if (AbstractDungeon.screen == AbstractDungeon.CurrentScreen.CARD_REWARD) {
-                return true;
-            }
-            // Boss reward can be skipped
-            if (AbstractDungeon.screen == AbstractDungeon.CurrentScreen.BOSS_REWARD) {
-                return true;
-            }
+    private boolean isAttackIntent(AbstractMonster.Intent intent) {
+        return intent == AbstractMonster.Intent.ATTACK ||
+               intent == AbstractMonster.Intent.ATTACK_BUFF ||
+               intent == AbstractMonster.Intent.ATTACK_DEBUFF ||
+               intent == AbstractMonster.Intent.ATTACK_DEFEND;
+    }
 
-            return false;
-        } catch (Exception e) {
-            return false;
+    /**
+     * Number of hits in an attack intent (private fields, see {@link GameFields}).
+     */
+    private int getIntentHits(AbstractMonster m) {
+        if (GameFields.MONSTER_IS_MULTI_DMG.getBoolean(m, false)) {
+            return GameFields.MONSTER_INTENT_MULTI_AMT.getInt(m, 1);
         }
+        return 1;
     }
 
-    private boolean isCancelAvailable() {
-        try {
-            if (!isInGame()) return false;
-
-            // Shop can be cancelled
-            if (AbstractDungeon.screen == AbstractDungeon.CurrentScreen.SHOP) {
-                return true;
-            }
-            // Map can be cancelled
-            if (AbstractDungeon.screen == AbstractDungeon.CurrentScreen.MAP) {
-                return true;
-            }
-
-            return false;
-        } catch (Exception e) {
-            return false;
+    private int[] addCards(List<AbstractCard> cards, List<AbstractCard> pile) {
+        int[] ids = new int[pile.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = cards.size();
+            cards.add(pile.get(i));
         }
+        return ids;
     }
 }
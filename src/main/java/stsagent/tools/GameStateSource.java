@@ -0,0 +1,102 @@
+package stsagent.tools;
+
+import stsagent.planner.ActMap;
+import stsagent.planner.CombatModel;
+
+/**
+ * Source of game state for the builtin tools.
+ *
+ * {@link GameStateReader} reads the live game; other implementations (e.g. recorded
+ * snapshots) let the agent loop run without the game on the classpath.
+ */
+public interface GameStateSource {
+
+    boolean isInGame();
+
+    boolean isInCombat();
+
+    String getGameState();
+
+    String getCombatState();
+
+    String getScreen();
+
+    String getDeck();
+
+    String getRelics();
+
+    String getPotions();
+
+    /**
+     * Potions in a given format, for callers that parse the output rather than pass it on.
+     */
+    default String getPotions(StateFormat format) {
+        return getPotions();
+    }
+
+    String getMap();
+
+    /**
+     * Combat as primitive arrays for planning and plan verification, or null when not in combat.
+     */
+    CombatModel getCombatModel();
+
+    /**
+     * The act's map with the player's position, for route planning, or null when there is
+     * none (not in game, or past the last row).
+     */
+    default ActMap getActMap() {
+        return null;
+    }
+
+    /**
+     * 64-bit fingerprint of the current state (see {@link GameSnapshot}): equal states give
+     * equal fingerprints, in any run. 0 if the source doesn't compute one.
+     */
+    default long getFingerprint() {
+        return 0;
+    }
+
+    /**
+     * Like {@link #getFingerprint()}, but over handles too, so equal fingerprints mean the
+     * state tools give the same output. Differs between runs. 0 if the source doesn't
+     * compute one.
+     */
+    default long getOutputFingerprint() {
+        return 0;
+    }
+
+    /**
+     * Screen type as get_screen reports it (e.g. MAP, CARD_REWARD), or null if unknown.
+     */
+    default String getScreenType() {
+        return null;
+    }
+
+    /**
+     * Wait until the game has finished reacting to the last action (action queue empty,
+     * screen settled). Sources without a live game are always settled.
+     *
+     * @return False on timeout
+     */
+    default boolean awaitSettled(long timeoutMs) {
+        return true;
+    }
+
+    /**
+     * Format for state tool output. Sources that serve prerecorded text may ignore it.
+     */
+    default void setStateFormat(StateFormat format) {
+    }
+
+    default StateFormat getStateFormat() {
+        return StateFormat.PRETTY;
+    }
+
+    /**
+     * Drop any cached state so the next read reflects the game as it is now.
+     * Called after actions have run.
+     */
+    default void invalidate() {
+    }
+}
@@ -0,0 +1,39 @@
+package stsagent.tools;
+
+import java.util.UUID;
+
+/**
+ * Short ids for cards and enemies that stay the same while a combat goes on.
+ *
+ * Positions shift after every play; handles don't, so a whole turn can be written
+ * against one state read. Cards use the start of their uuid ("c" + 6 hex digits),
+ * enemies a number the reader gives each monster the first time it sees it in a combat
+ * ("m" + id). Monsters spawned mid-fight are inserted into the room's list, so list slots
+ * would shift; the ids don't.
+ */
+public final class Handles {
+    private static final int CARD_HEX_DIGITS = 6;
+
+    private Handles() {}
+
+    public static String card(UUID uuid) {
+        if (uuid == null) return null;
+        return "c" + uuid.toString().substring(0, CARD_HEX_DIGITS);
+    }
+
+    public static String enemy(int id) {
+        return "m" + id;
+    }
+
+    /**
+     * Enemy id of an enemy handle, or -1 if it isn't one.
+     */
+    public static int enemyId(String handle) {
+        if (handle == null || handle.length() < 2 || handle.charAt(0) != 'm') return -1;
+        try {
+            return Integer.parseInt(handle.substring(1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
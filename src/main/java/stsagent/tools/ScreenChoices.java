@@ -0,0 +1,66 @@
+package stsagent.tools;
+
+/**
+ * What one screen offers: its choices, 1-based in the order the screen lists them, and
+ * which buttons work. Filled by a {@link ScreenExtractor} and kept while the screen stays
+ * the same.
+ */
+public final class ScreenChoices {
+    private final StateTape choices = new StateTape();
+    private int count;
+    private boolean proceed;
+    private boolean skip;
+    private boolean cancel;
+
+    /**
+     * Start a choice with its index and name. Add any other fields to the returned tape,
+     * then end the object.
+     */
+    public StateTape beginChoice(String name) {
+        return choices.beginObject().field("index", ++count).field("name", name);
+    }
+
+    public ScreenChoices choice(String name) {
+        beginChoice(name).endObject();
+        return this;
+    }
+
+    public ScreenChoices proceed(boolean available) {
+        proceed = available;
+        return this;
+    }
+
+    public ScreenChoices skip(boolean available) {
+        skip = available;
+        return this;
+    }
+
+    public ScreenChoices cancel(boolean available) {
+        cancel = available;
+        return this;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    void clear() {
+        choices.clear();
+        count = 0;
+        proceed = skip = cancel = false;
+    }
+
+    /**
+     * Write the choices, if there are any, and the button fields of a screen section.
+     *
+     * @param roomComplete Whether the room is done, which always allows proceeding
+     */
+    void write(StateTape tape, boolean roomComplete) {
+        if (count > 0) {
+            tape.name("choices").beginArray().write(choices).endArray();
+        }
+        tape.field("can_proceed", proceed || roomComplete);
+        tape.field("can_skip", skip);
+        tape.field("can_cancel", cancel);
+    }
+}
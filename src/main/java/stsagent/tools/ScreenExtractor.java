@@ -0,0 +1,14 @@
+package stsagent.tools;
+
+/**
+ * Reads one kind of screen's choices and buttons (see {@link ScreenExtractors}).
+ *
+ * {@link #extract} runs only when {@link #stamp} changes, so the stamp must change with
+ * anything the output shows: the identity of the screen's lists, their sizes, flags such
+ * as purchased or disabled. It runs every snapshot and should only touch a few fields.
+ */
+public interface ScreenExtractor {
+    long stamp();
+
+    void extract(ScreenChoices out);
+}
@@ -0,0 +1,426 @@
+package stsagent.tools;
+
+import com.megacrit.cardcrawl.cards.AbstractCard;
+import com.megacrit.cardcrawl.dungeons.AbstractDungeon;
+import com.megacrit.cardcrawl.events.AbstractEvent;
+import com.megacrit.cardcrawl.events.RoomEventDialog;
+import com.megacrit.cardcrawl.map.MapEdge;
+import com.megacrit.cardcrawl.map.MapRoomNode;
+import com.megacrit.cardcrawl.neow.NeowRoom;
+import com.megacrit.cardcrawl.relics.AbstractRelic;
+import com.megacrit.cardcrawl.rewards.RewardItem;
+import com.megacrit.cardcrawl.rooms.AbstractRoom;
+import com.megacrit.cardcrawl.rooms.CampfireUI;
+import com.megacrit.cardcrawl.rooms.RestRoom;
+import com.megacrit.cardcrawl.screens.select.GridCardSelectScreen;
+import com.megacrit.cardcrawl.shop.ShopScreen;
+import com.megacrit.cardcrawl.shop.StorePotion;
+import com.megacrit.cardcrawl.shop.StoreRelic;
+import com.megacrit.cardcrawl.ui.buttons.LargeDialogOptionButton;
+import com.megacrit.cardcrawl.ui.campfire.AbstractCampfireOption;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Screen choices and button states, by screen.
+ *
+ * Each kind of screen has one registered {@link ScreenExtractor}. The reader asks for the
+ * current screen every snapshot; the extractor's output is kept until its stamp changes,
+ * so a screen that sits open costs a stamp per snapshot. Screens without an extractor
+ * have no choices and only allow proceeding once the room is done. Render thread only.
+ */
+public final class ScreenExtractors {
+    private static final Logger logger = LogManager.getLogger(ScreenExtractors.class);
+
+    /**
+     * Screens with choices. Events, rest sites and Neow have no screen of their own in the
+     * game (it is NONE); they are told apart by the room.
+     */
+    public enum Screen {
+        CARD_REWARD, COMBAT_REWARD, MAP, GRID, BOSS_REWARD, SHOP, EVENT, REST, NEOW, OTHER
+    }
+
+    private final Map<Screen, Slot> slots = new EnumMap<>(Screen.class);
+    private final ScreenChoices none = new ScreenChoices();
+    private volatile long extractions;   // Written on the render thread only
+    private volatile long reuses;
+
+    public ScreenExtractors() {
+        register(Screen.CARD_REWARD, new CardReward());
+        register(Screen.COMBAT_REWARD, new CombatReward());
+        register(Screen.MAP, new MapChoices());
+        register(Screen.GRID, new Grid());
+        register(Screen.BOSS_REWARD, new BossReward());
+        register(Screen.SHOP, new Shop());
+        register(Screen.EVENT, new EventOptions());
+        register(Screen.REST, new RestSite());
+        register(Screen.NEOW, new EventOptions());
+    }
+
+    /**
+     * Use an extractor for a screen, replacing the current one.
+     */
+    public void register(Screen screen, ScreenExtractor extractor) {
+        slots.put(screen, new Slot(extractor));
+    }
+
+    /**
+     * The screen the player is looking at.
+     */
+    public static Screen current() {
+        AbstractDungeon.CurrentScreen screen = AbstractDungeon.screen;
+        if (screen != null && screen != AbstractDungeon.CurrentScreen.NONE) {
+            switch (screen) {
+                case CARD_REWARD: return Screen.CARD_REWARD;
+                case COMBAT_REWARD: return Screen.COMBAT_REWARD;
+                case MAP: return Screen.MAP;
+                case GRID: return Screen.GRID;
+                case BOSS_REWARD: return Screen.BOSS_REWARD;
+                case SHOP: return Screen.SHOP;
+                default: return Screen.OTHER;
+            }
+        }
+        AbstractRoom room = AbstractDungeon.getCurrRoom();
+        if (room instanceof NeowRoom) return Screen.NEOW;
+        if (room instanceof RestRoom) return Screen.REST;
+        if (room != null && room.event != null && room.phase == AbstractRoom.RoomPhase.EVENT) return Screen.EVENT;
+        return Screen.OTHER;
+    }
+
+    /**
+     * Choices and buttons of a screen, extracted again only if its stamp changed.
+     */
+    public ScreenChoices get(Screen screen) {
+        Slot slot = slots.get(screen);
+        if (slot == null) {
+            return none;
+        }
+        try {
+            long stamp = slot.extractor.stamp();
+            if (slot.valid && stamp == slot.stamp) {
+                reuses++;
+                return slot.choices;
+            }
+            slot.choices.clear();
+            slot.extractor.extract(slot.choices);
+            slot.stamp = stamp;
+            slot.valid = true;
+            extractions++;
+            return slot.choices;
+        } catch (Exception e) {
+            logger.error("Error getting choices for " + screen, e);
+            slot.valid = false;  // Retry on the next snapshot
+            slot.choices.clear();
+            return slot.choices;
+        }
+    }
+
+    public String getSummary() {
+        return String.format("screen choices: %d extracted, %d reused", extractions, reuses);
+    }
+
+    private static final class Slot {
+        final ScreenExtractor extractor;
+        final ScreenChoices choices = new ScreenChoices();
+        long stamp;
+        boolean valid;
+
+        Slot(ScreenExtractor extractor) {
+            this.extractor = extractor;
+        }
+    }
+
+    // ========== Stamps ==========
+
+    private static long key(long h, Object part) {
+        return StateTape.combine(h, System.identityHashCode(part));
+    }
+
+    private static long key(long h, int part) {
+        return StateTape.combine(h, part);
+    }
+
+    private static long key(long h, boolean part) {
+        return StateTape.combine(h, part ? 1 : 0);
+    }
+
+    private static long key(Object owner, List<?> list) {
+        return key(key(key(0, owner), list), list != null ? list.size() : -1);
+    }
+
+    private static void writeRef(StateTape tape, int ref) {
+        if (ref != 0) {
+            tape.field("ref", ref);
+        }
+    }
+
+    // ========== Extractors ==========
+
+    private static final class CardReward implements ScreenExtractor {
+        @Override
+        public long stamp() {
+            return AbstractDungeon.cardRewardScreen == null ? 0
+                    : key(AbstractDungeon.cardRewardScreen, AbstractDungeon.cardRewardScreen.rewardGroup);
+        }
+
+        @Override
+        public void extract(ScreenChoices out) {
+            out.skip(true);
+            if (AbstractDungeon.cardRewardScreen == null || AbstractDungeon.cardRewardScreen.rewardGroup == null) {
+                return;
+            }
+            for (AbstractCard card : AbstractDungeon.cardRewardScreen.rewardGroup) {
+                StateTape choice = out.beginChoice(card.name);
+                writeRef(choice, GameCatalog.card(card));
+                choice.endObject();
+            }
+        }
+    }
+
+    private static final class CombatReward implements ScreenExtractor {
+        @Override
+        public long stamp() {
+            return AbstractDungeon.combatRewardScreen == null ? 0
+                    : key(AbstractDungeon.combatRewardScreen, AbstractDungeon.combatRewardScreen.rewards);
+        }
+
+        @Override
+        public void extract(ScreenChoices out) {
+            out.proceed(true);
+            if (AbstractDungeon.combatRewardScreen == null || AbstractDungeon.combatRewardScreen.rewards == null) {
+                return;
+            }
+            for (RewardItem reward : AbstractDungeon.combatRewardScreen.rewards) {
+                out.choice(reward.type.toString());
+            }
+        }
+    }
+
+    /**
+     * Rooms reachable from the current node, in column order.
+     */
+    private static final class MapChoices implements ScreenExtractor {
+        @Override
+        public long stamp() {
+            return key(key(0, AbstractDungeon.currMapNode), AbstractDungeon.map);
+        }
+
+        @Override
+        public void extract(ScreenChoices out) {
+            out.cancel(true);
+            MapRoomNode current = AbstractDungeon.currMapNode;
+            ArrayList<ArrayList<MapRoomNode>> map = AbstractDungeon.map;
+            if (current == null || map == null || current.y + 1 >= map.size()) {
+                return;
+            }
+            for (MapRoomNode next : map.get(current.y + 1)) {
+                if (next == null) continue;
+                for (MapEdge edge : current.getEdges()) {
+                    if (edge.dstX == next.x && edge.dstY == next.y) {
+                        out.choice(next.getRoomSymbol(true));
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class Grid implements ScreenExtractor {
+        @Override
+        public long stamp() {
+            GridCardSelectScreen screen = AbstractDungeon.gridSelectScreen;
+            if (screen == null) return 0;
+            long h = key(screen, screen.targetGroup != null ? screen.targetGroup.group : null);
+            h = key(h, screen.selectedCards != null ? screen.selectedCards.size() : -1);
+            return key(h, screen.confirmButton != null && screen.confirmButton.isDisabled);
+        }
+
+        @Override
+        public void extract(ScreenChoices out) {
+            GridCardSelectScreen screen = AbstractDungeon.gridSelectScreen;
+            if (screen == null) return;
+            if (screen.confirmButton != null) {
+                out.proceed(!screen.confirmButton.isDisabled);
+            }
+            if (screen.targetGroup == null) return;
+            for (AbstractCard card : screen.targetGroup.group) {
+                out.choice(card.name);
+            }
+        }
+    }
+
+    private static final class BossReward implements ScreenExtractor {
+        @Override
+        public long stamp() {
+            return AbstractDungeon.bossRelicScreen == null ? 0
+                    : key(AbstractDungeon.bossRelicScreen, AbstractDungeon.bossRelicScreen.relics);
+        }
+
+        @Override
+        public void extract(ScreenChoices out) {
+            out.skip(true);
+            if (AbstractDungeon.bossRelicScreen == null || AbstractDungeon.bossRelicScreen.relics == null) {
+                return;
+            }
+            for (AbstractRelic relic : AbstractDungeon.bossRelicScreen.relics) {
+                StateTape choice = out.beginChoice(relic.name);
+                writeRef(choice, GameCatalog.relic(relic));
+                choice.endObject();
+            }
+        }
+    }
+
+    /**
+     * Everything still for sale, with prices: cards, colorless cards, relics, potions,
+     * then card removal. Items the player can't afford are marked.
+     */
+    private static final class Shop implements ScreenExtractor {
+        @Override
+        public long stamp() {
+            ShopScreen shop = AbstractDungeon.shopScreen;
+            if (shop == null) return 0;
+            long h = key(0, shop);
+            h = key(h, cards(GameFields.SHOP_COLORED_CARDS, shop).size());
+            h = key(h, cards(GameFields.SHOP_COLORLESS_CARDS, shop).size());
+            for (StoreRelic relic : relics(shop)) {
+                h = key(h, relic.isPurchased);
+            }
+            for (StorePotion potion : potions(shop)) {
+                h = key(h, potion.isPurchased);
+            }
+            h = key(h, shop.purgeAvailable);
+            return key(h, AbstractDungeon.player.gold);
+        }
+
+        @Override
+        public void extract(ScreenChoices out) {
+            out.cancel(true);
+            ShopScreen shop = AbstractDungeon.shopScreen;
+            if (shop == null) return;
+            int gold = AbstractDungeon.player.gold;
+            for (AbstractCard card : cards(GameFields.SHOP_COLORED_CARDS, shop)) {
+                item(out, card.name, GameCatalog.card(card), card.price, gold);
+            }
+            for (AbstractCard card : cards(GameFields.SHOP_COLORLESS_CARDS, shop)) {
+                item(out, card.name, GameCatalog.card(card), card.price, gold);
+            }
+            for (StoreRelic relic : relics(shop)) {
+                if (!relic.isPurchased && relic.relic != null) {
+                    item(out, relic.relic.name, GameCatalog.relic(relic.relic), relic.price, gold);
+                }
+            }
+            for (StorePotion potion : potions(shop)) {
+                if (!potion.isPurchased && potion.potion != null) {
+                    item(out, potion.potion.name, GameCatalog.potion(potion.potion), potion.price, gold);
+                }
+            }
+            if (shop.purgeAvailable) {
+                item(out, "Remove a card", 0, ShopScreen.actualPurgeCost, gold);
+            }
+        }
+
+        private static void item(ScreenChoices out, String name, int ref, int price, int gold) {
+            StateTape choice = out.beginChoice(name);
+            writeRef(choice, ref);
+            choice.field("price", price);
+            if (price > gold) {
+                choice.field("affordable", false);
+            }
+            choice.endObject();
+        }
+
+        private static List<AbstractCard> cards(GameFields.Accessor field, ShopScreen shop) {
+            return field.get(shop, Collections.<AbstractCard>emptyList());
+        }
+
+        private static List<StoreRelic> relics(ShopScreen shop) {
+            return GameFields.SHOP_RELICS.get(shop, Collections.<StoreRelic>emptyList());
+        }
+
+        private static List<StorePotion> potions(ShopScreen shop) {
+            return GameFields.SHOP_POTIONS.get(shop, Collections.<StorePotion>emptyList());
+        }
+    }
+
+    /**
+     * Dialog options of an event, Neow included. Image events list them in their own
+     * dialog, the others (and Neow) in the shared room dialog.
+     */
+    private static final class EventOptions implements ScreenExtractor {
+        @Override
+        public long stamp() {
+            AbstractEvent event = event();
+            List<LargeDialogOptionButton> options = options(event);
+            long h = key(event, options);
+            for (LargeDialogOptionButton option : options) {
+                h = key(key(h, option.msg), option.isDisabled);
+            }
+            return h;
+        }
+
+        @Override
+        public void extract(ScreenChoices out) {
+            for (LargeDialogOptionButton option : options(event())) {
+                StateTape choice = out.beginChoice(GameCatalog.clean(option.msg));
+                if (option.isDisabled) {
+                    choice.field("disabled", true);
+                }
+                choice.endObject();
+            }
+        }
+
+        private static AbstractEvent event() {
+            AbstractRoom room = AbstractDungeon.getCurrRoom();
+            return room != null ? room.event : null;
+        }
+
+        private static List<LargeDialogOptionButton> options(AbstractEvent event) {
+            if (event != null && event.imageEventText != null && event.imageEventText.optionList != null &&
+                !event.imageEventText.optionList.isEmpty()) {
+                return event.imageEventText.optionList;
+            }
+            return RoomEventDialog.optionList != null ? RoomEventDialog.optionList
+                                                      : Collections.<LargeDialogOptionButton>emptyList();
+        }
+    }
+
+    private static final class RestSite implements ScreenExtractor {
+        @Override
+        public long stamp() {
+            CampfireUI campfire = campfire();
+            List<AbstractCampfireOption> buttons = buttons(campfire);
+            long h = key(campfire, buttons);
+            for (AbstractCampfireOption button : buttons) {
+                h = key(h, button.usable);
+            }
+            return h;
+        }
+
+        @Override
+        public void extract(ScreenChoices out) {
+            for (AbstractCampfireOption button : buttons(campfire())) {
+                StateTape choice = out.beginChoice(GameFields.CAMPFIRE_OPTION_LABEL.get(button, "?"));
+                if (!button.usable) {
+                    choice.field("disabled", true);
+                }
+                choice.endObject();
+            }
+        }
+
+        private static CampfireUI campfire() {
+            AbstractRoom room = AbstractDungeon.getCurrRoom();
+            return room instanceof RestRoom ? ((RestRoom) room).campfireUI : null;
+        }
+
+        private static List<AbstractCampfireOption> buttons(CampfireUI campfire) {
+            if (campfire == null) return Collections.emptyList();
+            return GameFields.CAMPFIRE_BUTTONS.get(campfire, Collections.<AbstractCampfireOption>emptyList());
+        }
+    }
+}
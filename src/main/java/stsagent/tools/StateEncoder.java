@@ -0,0 +1,410 @@
+package stsagent.tools;
+
+import com.google.gson.JsonElement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a {@link StateTape} in a {@link StateFormat}, streaming straight into a reused
+ * per-thread buffer: no intermediate trees and no reflection, so the only allocation per
+ * call is the returned string.
+ *
+ * The compact format puts plain fields on one line as {@code key=value}, and lists of
+ * objects as a table: a {@code name[n]: col|col} header followed by one row per item.
+ * Column names appear once per table instead of once per item, and there are no quotes,
+ * braces or indentation. See {@link #legend} for the explanation the model gets.
+ *
+ * Pretty output is what the state tools printed through Gson before: two-space indent,
+ * HTML characters escaped, null fields left out. Minified output skips the whitespace and
+ * the HTML escaping.
+ */
+public final class StateEncoder {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+    private StateEncoder() {}
+
+    public static String encode(StateTape tape, StateFormat format) {
+        StringBuilder out = buffers.get().text;
+        out.setLength(0);
+        encodeTo(tape, format, out);
+        return out.toString();
+    }
+
+    /**
+     * Encode a Gson tree, e.g. a recorded snapshot.
+     */
+    public static String encode(JsonElement json, StateFormat format) {
+        return encode(StateTape.fromJson(json), format);
+    }
+
+    /**
+     * Append the encoded tape to a caller's buffer.
+     */
+    public static void encodeTo(StateTape tape, StateFormat format, StringBuilder out) {
+        if (tape.isEmpty()) return;
+        switch (format) {
+            case PRETTY:
+                writeJson(tape, 0, out, true, 0);
+                break;
+            case MINIFIED:
+                writeJson(tape, 0, out, false, 0);
+                break;
+            case COMPACT:
+            default:
+                int start = out.length();
+                if (tape.at(0) != StateTape.BEGIN_OBJECT) {
+                    writeJson(tape, 0, out, false, 0);
+                    break;
+                }
+                writeObject(tape, 0, "", out);
+                int end = out.length();
+                while (end > start && out.charAt(end - 1) == '\n') end--;
+                out.setLength(end);
+                break;
+        }
+    }
+
+    /**
+     * How to read the format, for the system prompt; null for the JSON formats.
+     */
+    public static String legend(StateFormat format) {
+        if (format != StateFormat.COMPACT) return null;
+        return "State tool results use a compact text format:\n" +
+               "- key=value pairs separated by \", \". Nested fields use dotted keys (a.b=1). A value that " +
+               "itself contains \", \" is wrapped in double quotes.\n" +
+               "- \"name[n]: col1|col2|...\" starts a table: the next n lines are its rows, with cells " +
+               "in column order separated by \"|\". An empty cell means the field is absent.\n" +
+               "- Lists inside a value are separated by \";\". Y and N mean true and false.";
+    }
+
+    /**
+     * Rough token count for comparing formats: words split into 4-letter pieces, numbers
+     * into 3-digit pieces, one token per symbol and per run of whitespace, with a single
+     * space joining the word after it. Close to BPE tokenizers on JSON and tables, not exact.
+     */
+    public static int estimateTokens(String text) {
+        int tokens = 0;
+        int i = 0;
+        int n = text.length();
+        while (i < n) {
+            char c = text.charAt(i);
+            int start = i;
+            if (Character.isLetter(c)) {
+                while (i < n && Character.isLetter(text.charAt(i))) i++;
+                tokens += (i - start + 3) / 4;
+            } else if (Character.isDigit(c)) {
+                while (i < n && Character.isDigit(text.charAt(i))) i++;
+                tokens += (i - start + 2) / 3;
+            } else if (c == ' ' && i + 1 < n && !Character.isWhitespace(text.charAt(i + 1))) {
+                i++;
+            } else if (Character.isWhitespace(c)) {
+                while (i < n && Character.isWhitespace(text.charAt(i))) i++;
+                tokens++;
+            } else {
+                i++;
+                tokens++;
+            }
+        }
+        return tokens;
+    }
+
+    // ========== JSON ==========
+
+    private static int writeJson(StateTape t, int i, StringBuilder out, boolean pretty, int depth) {
+        switch (t.at(i)) {
+            case StateTape.BEGIN_OBJECT: {
+                out.append('{');
+                boolean first = true;
+                i++;
+                while (t.at(i) != StateTape.END_OBJECT) {
+                    String name = t.str(t.at(i + 1));
+                    i += 2;
+                    if (isNull(t, i)) {
+                        i = t.skipValue(i);
+                        continue;
+                    }
+                    if (!first) out.append(',');
+                    first = false;
+                    if (pretty) newline(out, depth + 1);
+                    writeString(name, out, pretty);
+                    out.append(pretty ? ": " : ":");
+                    i = writeJson(t, i, out, pretty, depth + 1);
+                }
+                if (!first && pretty) newline(out, depth);
+                out.append('}');
+                return i + 1;
+            }
+            case StateTape.BEGIN_ARRAY: {
+                out.append('[');
+                boolean first = true;
+                i++;
+                while (t.at(i) != StateTape.END_ARRAY) {
+                    if (!first) out.append(',');
+                    first = false;
+                    if (pretty) newline(out, depth + 1);
+                    i = writeJson(t, i, out, pretty, depth + 1);
+                }
+                if (!first && pretty) newline(out, depth);
+                out.append(']');
+                return i + 1;
+            }
+            case StateTape.STRING: {
+                String value = t.str(t.at(i + 1));
+                if (value == null) out.append("null");
+                else writeString(value, out, pretty);
+                return i + 2;
+            }
+            case StateTape.INT:
+                out.append(t.at(i + 1));
+                return i + 2;
+            case StateTape.BOOL:
+                out.append(t.at(i + 1) != 0);
+                return i + 2;
+            case StateTape.NUMBER:
+                out.append(t.str(t.at(i + 1)));
+                return i + 2;
+            case StateTape.TEXT: {
+                out.append('"');
+                int end = i + t.length(i);
+                for (int p = i + 2; p < end; p += 2) {
+                    if (t.at(p) == StateTape.PART_INT) out.append(t.at(p + 1));
+                    else escape(t.str(t.at(p + 1)), out, pretty);
+                }
+                out.append('"');
+                return end;
+            }
+            default:
+                throw new IllegalStateException("Unexpected tape entry " + t.at(i) + " at " + i);
+        }
+    }
+
+    private static void writeString(String value, StringBuilder out, boolean htmlSafe) {
+        out.append('"');
+        escape(value, out, htmlSafe);
+        out.append('"');
+    }
+
+    /**
+     * JSON string escaping, as Gson does it.
+     */
+    private static void escape(String value, StringBuilder out, boolean htmlSafe) {
+        if (value == null) return;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\t': out.append("\\t"); break;
+                case '\b': out.append("\\b"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\f': out.append("\\f"); break;
+                case '<':
+                case '>':
+                case '&':
+                case '=':
+                case '\'':
+                    if (htmlSafe) unicode(c, out);
+                    else out.append(c);
+                    break;
+                default:
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') unicode(c, out);
+                    else out.append(c);
+            }
+        }
+    }
+
+    private static void unicode(char c, StringBuilder out) {
+        out.append("\\u")
+           .append(HEX[(c >> 12) & 0xf]).append(HEX[(c >> 8) & 0xf])
+           .append(HEX[(c >> 4) & 0xf]).append(HEX[c & 0xf]);
+    }
+
+    private static void newline(StringBuilder out, int depth) {
+        out.append('\n');
+        for (int d = 0; d < depth; d++) out.append("  ");
+    }
+
+    // ========== Compact format ==========
+
+    private static int writeObject(StateTape t, int i, String prefix, StringBuilder out) {
+        boolean lineOpen = false;
+        i++;
+        while (t.at(i) != StateTape.END_OBJECT) {
+            String key = t.str(t.at(i + 1));
+            i += 2;
+            int op = t.at(i);
+            if (isNull(t, i)) {
+                i = t.skipValue(i);
+            } else if (op == StateTape.BEGIN_OBJECT) {
+                lineOpen = closeLine(lineOpen, out);
+                i = writeObject(t, i, prefix + key + ".", out);
+            } else if (isTable(t, i)) {
+                lineOpen = closeLine(lineOpen, out);
+                i = writeTable(t, i, prefix, key, out);
+            } else {
+                if (lineOpen) out.append(", ");
+                out.append(prefix).append(key).append('=');
+                int start = out.length();
+                i = writeValue(t, i, out);
+                quoteIfSplit(out, start);
+                lineOpen = true;
+            }
+        }
+        closeLine(lineOpen, out);
+        return i + 1;
+    }
+
+    private static int writeTable(StateTape t, int i, String prefix, String key, StringBuilder out) {
+        List<String> columns = buffers.get().columns;
+        columns.clear();
+        int rows = 0;
+        int end = i + 1;
+        while (t.at(end) != StateTape.END_ARRAY) {
+            for (int f = end + 1; t.at(f) != StateTape.END_OBJECT; f = t.skipValue(f + 2)) {
+                String name = t.str(t.at(f + 1));
+                if (!columns.contains(name)) columns.add(name);
+            }
+            end = t.skipValue(end);
+            rows++;
+        }
+
+        out.append(prefix).append(key).append('[').append(rows).append("]: ");
+        for (int c = 0; c < columns.size(); c++) {
+            if (c > 0) out.append('|');
+            out.append(columns.get(c));
+        }
+        out.append('\n');
+
+        for (int row = i + 1; row < end; row = t.skipValue(row)) {
+            int lastCell = out.length();
+            for (int c = 0; c < columns.size(); c++) {
+                if (c > 0) out.append('|');
+                int value = findField(t, row, columns.get(c));
+                if (value >= 0 && !isNull(t, value)) {
+                    writeValue(t, value, out);
+                    lastCell = out.length();
+                }
+            }
+            out.setLength(lastCell);  // Trailing empty cells carry nothing
+            out.append('\n');
+        }
+        return end + 1;
+    }
+
+    private static int writeValue(StateTape t, int i, StringBuilder out) {
+        switch (t.at(i)) {
+            case StateTape.STRING:
+                appendText(t.str(t.at(i + 1)), out);
+                return i + 2;
+            case StateTape.INT:
+            case StateTape.NUMBER:
+                if (t.at(i) == StateTape.INT) out.append(t.at(i + 1));
+                else out.append(t.str(t.at(i + 1)));
+                return i + 2;
+            case StateTape.BOOL:
+                out.append(t.at(i + 1) != 0 ? 'Y' : 'N');
+                return i + 2;
+            case StateTape.TEXT: {
+                int end = i + t.length(i);
+                for (int p = i + 2; p < end; p += 2) {
+                    if (t.at(p) == StateTape.PART_INT) out.append(t.at(p + 1));
+                    else appendText(t.str(t.at(p + 1)), out);
+                }
+                return end;
+            }
+            case StateTape.BEGIN_ARRAY: {
+                boolean first = true;
+                i++;
+                while (t.at(i) != StateTape.END_ARRAY) {
+                    if (!first) out.append(';');
+                    first = false;
+                    i = writeValue(t, i, out);
+                }
+                return i + 1;
+            }
+            case StateTape.BEGIN_OBJECT: {
+                boolean first = true;
+                i++;
+                while (t.at(i) != StateTape.END_OBJECT) {
+                    if (!first) out.append(' ');
+                    first = false;
+                    out.append(t.str(t.at(i + 1))).append('=');
+                    i = writeValue(t, i + 2, out);
+                }
+                return i + 1;
+            }
+            default:
+                throw new IllegalStateException("Unexpected tape entry " + t.at(i) + " at " + i);
+        }
+    }
+
+    /**
+     * Wrap the value written from {@code start} in double quotes if it contains the field
+     * separator, so "text=Deal 6 damage, apply 2 Weak" doesn't read as two fields. Quotes
+     * inside it become single quotes.
+     */
+    private static void quoteIfSplit(StringBuilder out, int start) {
+        if (out.indexOf(", ", start) < 0) return;
+        for (int i = start; i < out.length(); i++) {
+            if (out.charAt(i) == '"') out.setCharAt(i, '\'');
+        }
+        out.insert(start, '"').append('"');
+    }
+
+    /**
+     * Text with the format's separators and line breaks replaced. The field separator is
+     * left alone here; line fields are quoted instead (see {@link #quoteIfSplit}).
+     */
+    private static void appendText(String text, StringBuilder out) {
+        if (text == null) return;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '|': out.append('/'); break;
+                case ';': out.append(','); break;
+                case '\n':
+                case '\r': out.append(' '); break;
+                default: out.append(c);
+            }
+        }
+    }
+
+    /**
+     * True for a non-empty array of objects only.
+     */
+    private static boolean isTable(StateTape t, int i) {
+        if (t.at(i) != StateTape.BEGIN_ARRAY || t.at(i + 1) == StateTape.END_ARRAY) return false;
+        for (int item = i + 1; t.at(item) != StateTape.END_ARRAY; item = t.skipValue(item)) {
+            if (t.at(item) != StateTape.BEGIN_OBJECT) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Index of a field's value in the object starting at i, or -1.
+     */
+    private static int findField(StateTape t, int i, String name) {
+        for (int f = i + 1; t.at(f) != StateTape.END_OBJECT; f = t.skipValue(f + 2)) {
+            if (name.equals(t.str(t.at(f + 1)))) return f + 2;
+        }
+        return -1;
+    }
+
+    private static boolean isNull(StateTape t, int i) {
+        return t.at(i) == StateTape.STRING && t.at(i + 1) < 0;
+    }
+
+    private static boolean closeLine(boolean lineOpen, StringBuilder out) {
+        if (lineOpen) out.append('\n');
+        return false;
+    }
+
+    private static final class Buffers {
+        final StringBuilder text = new StringBuilder(4096);
+        final List<String> columns = new ArrayList<>();
+    }
+}
@@ -0,0 +1,55 @@
+package stsagent.tools;
+
+/**
+ * How state tool output is written for the model.
+ *
+ * PRETTY is indented JSON for reading logs by hand, MINIFIED the same JSON without
+ * whitespace, COMPACT a line-based table format explained once in the system prompt
+ * (see {@link StateEncoder#legend}). Which one a model reads best varies, so the format
+ * can be chosen per model.
+ */
+public enum StateFormat {
+    PRETTY,
+    MINIFIED,
+    COMPACT;
+
+    public static final StateFormat DEFAULT = MINIFIED;
+
+    /**
+     * Format for a model from a spec such as {@code "minified"} or
+     * {@code "gpt-4o=compact, llama=pretty, minified"}: entries are matched as model name
+     * prefixes in order, and a bare format applies to every other model.
+     * Unknown names are skipped.
+     */
+    public static StateFormat select(String spec, String model) {
+        if (spec == null) return DEFAULT;
+        String name = model != null ? model.trim().toLowerCase() : "";
+        StateFormat fallback = DEFAULT;
+        for (String entry : spec.split(",")) {
+            int eq = entry.indexOf('=');
+            if (eq < 0) {
+                StateFormat format = parse(entry);
+                if (format != null) fallback = format;
+                continue;
+            }
+            String prefix = entry.substring(0, eq).trim().toLowerCase();
+            StateFormat format = parse(entry.substring(eq + 1));
+            if (format != null && !prefix.isEmpty() && name.startsWith(prefix)) {
+                return format;
+            }
+        }
+        return fallback;
+    }
+
+    /**
+     * Format by name, ignoring case; null if unknown.
+     */
+    public static StateFormat parse(String value) {
+        if (value == null) return null;
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
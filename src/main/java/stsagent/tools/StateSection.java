@@ -0,0 +1,29 @@
+package stsagent.tools;
+
+/**
+ * The parts of a {@link GameSnapshot}, one per state tool.
+ *
+ * Tracked sections are rebuilt only after a patched mutation marked them dirty
+ * ({@link DirtySections}). Game state and screen have no single mutation point (gold,
+ * floor, screen changes happen all over the game) and are small, so they are rebuilt
+ * with every snapshot.
+ */
+public enum StateSection {
+    GAME_STATE(false),
+    COMBAT_STATE(true),
+    SCREEN(false),
+    DECK(true),
+    RELICS(true),
+    POTIONS(true),
+    MAP(true);
+
+    public final boolean tracked;
+
+    StateSection(boolean tracked) {
+        this.tracked = tracked;
+    }
+
+    int bit() {
+        return 1 << ordinal();
+    }
+}
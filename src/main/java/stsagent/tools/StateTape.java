@@ -0,0 +1,455 @@
+package stsagent.tools;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A state tree recorded as a flat stream of write calls, for {@link StateEncoder} to write
+ * in any format.
+ *
+ * Readers write fields straight from game objects: numbers stay ints, strings are kept by
+ * reference, and values like "68/80" or "Attack 5x2" are recorded as their parts (see
+ * {@link #beginText}), so recording allocates nothing once the buffers have grown. A
+ * scratch tape is cleared and reused; {@link #copy} takes an exact-size copy to publish.
+ *
+ * Code stream layout, one entry per call: an opcode followed by its operands. Strings are
+ * operands by index into the string table, -1 for null.
+ *
+ * {@link #fingerprint} hashes the recorded values themselves, so two tapes with the same
+ * content hash the same in any run, whatever produced them.
+ */
+public final class StateTape {
+    static final int BEGIN_OBJECT = 1;
+    static final int END_OBJECT = 2;
+    static final int BEGIN_ARRAY = 3;
+    static final int END_ARRAY = 4;
+    static final int NAME = 5;       // string
+    static final int STRING = 6;     // string
+    static final int INT = 7;        // value
+    static final int BOOL = 8;       // 0 or 1
+    static final int NUMBER = 9;     // string holding a non-int JSON number
+    static final int TEXT = 10;      // part count, then (PART_STRING, string) or (PART_INT, value) pairs
+
+    static final int PART_STRING = 0;
+    static final int PART_INT = 1;
+
+    private static final String[] NO_NAMES = new String[0];
+    private static final long HASH_SEED = 0x2545F4914F6CDD1DL;
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private int[] code;
+    private String[] strings;
+    private int codeSize;
+    private int stringCount;
+    private int textStart = -1;      // Code index of the open TEXT, or -1
+
+    public StateTape() {
+        this(256, 64);
+    }
+
+    private StateTape(int codeCapacity, int stringCapacity) {
+        code = new int[codeCapacity];
+        strings = new String[stringCapacity];
+    }
+
+    /**
+     * Forget everything written, keeping the buffers.
+     */
+    public void clear() {
+        Arrays.fill(strings, 0, stringCount, null);
+        codeSize = 0;
+        stringCount = 0;
+        textStart = -1;
+    }
+
+    /**
+     * Exact-size copy, never written to again.
+     */
+    public StateTape copy() {
+        StateTape copy = new StateTape(0, 0);
+        copy.code = Arrays.copyOf(code, codeSize);
+        copy.strings = Arrays.copyOf(strings, stringCount);
+        copy.codeSize = codeSize;
+        copy.stringCount = stringCount;
+        return copy;
+    }
+
+    /**
+     * Append everything recorded in another tape, e.g. a part of a section kept from an
+     * earlier read.
+     */
+    public StateTape write(StateTape other) {
+        for (int i = 0; i < other.codeSize; i += other.length(i)) {
+            int op = other.code[i];
+            switch (op) {
+                case NAME:
+                case STRING:
+                case NUMBER:
+                    op(op, string(other.str(other.code[i + 1])));
+                    break;
+                case INT:
+                case BOOL:
+                    op(op, other.code[i + 1]);
+                    break;
+                case TEXT:
+                    op(TEXT, other.code[i + 1]);
+                    for (int p = i + 2; p < i + other.length(i); p += 2) {
+                        int part = other.code[p];
+                        op(part, part == PART_INT ? other.code[p + 1] : string(other.str(other.code[p + 1])));
+                    }
+                    break;
+                default:
+                    op(op);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Position to {@link #rewind} to, e.g. to drop a list that turned out empty.
+     */
+    public long mark() {
+        return ((long) codeSize << 32) | stringCount;
+    }
+
+    public void rewind(long mark) {
+        int strings = (int) mark;
+        Arrays.fill(this.strings, strings, stringCount, null);
+        codeSize = (int) (mark >>> 32);
+        stringCount = strings;
+    }
+
+    public boolean isEmpty() {
+        return codeSize == 0;
+    }
+
+    // ========== Writing ==========
+
+    public StateTape beginObject() {
+        return op(BEGIN_OBJECT);
+    }
+
+    public StateTape endObject() {
+        return op(END_OBJECT);
+    }
+
+    public StateTape beginArray() {
+        return op(BEGIN_ARRAY);
+    }
+
+    public StateTape endArray() {
+        return op(END_ARRAY);
+    }
+
+    public StateTape name(String name) {
+        return op(NAME, string(name));
+    }
+
+    public StateTape value(String value) {
+        return op(STRING, string(value));
+    }
+
+    public StateTape value(int value) {
+        return op(INT, value);
+    }
+
+    public StateTape value(boolean value) {
+        return op(BOOL, value ? 1 : 0);
+    }
+
+    public StateTape field(String name, String value) {
+        return name(name).value(value);
+    }
+
+    public StateTape field(String name, int value) {
+        return name(name).value(value);
+    }
+
+    public StateTape field(String name, boolean value) {
+        return name(name).value(value);
+    }
+
+    /**
+     * "a/b" without building the string.
+     */
+    public StateTape ratio(String name, int a, int b) {
+        return name(name).beginText().append(a).append("/").append(b).endText();
+    }
+
+    /**
+     * Start a string value made of parts, ended by {@link #endText}.
+     */
+    public StateTape beginText() {
+        textStart = codeSize;
+        return op(TEXT, 0);
+    }
+
+    public StateTape append(String part) {
+        code[textStart + 1]++;
+        return op(PART_STRING, string(part));
+    }
+
+    public StateTape append(int part) {
+        code[textStart + 1]++;
+        return op(PART_INT, part);
+    }
+
+    public StateTape endText() {
+        textStart = -1;
+        return this;
+    }
+
+    // ========== Fingerprints ==========
+
+    public long fingerprint() {
+        return fingerprint(NO_NAMES);
+    }
+
+    /**
+     * Stable 64-bit hash of the content. Text values hash like the string they spell, so
+     * "68/80" written in parts and as one string give the same hash. Allocates nothing.
+     *
+     * @param ignored Field names left out of the hash, with their values, at any depth
+     */
+    public long fingerprint(String... ignored) {
+        long h = HASH_SEED;
+        int i = 0;
+        while (i < codeSize) {
+            int op = code[i];
+            switch (op) {
+                case NAME:
+                    if (isIgnored(strings[code[i + 1]], ignored)) {
+                        i = skipValue(i + 2);
+                        continue;
+                    }
+                    h = hashChars(mix(h, op), strings[code[i + 1]]);
+                    break;
+                case NUMBER:
+                    h = hashChars(mix(h, op), strings[code[i + 1]]);
+                    break;
+                case STRING: {
+                    String value = str(code[i + 1]);
+                    h = value == null ? mix(h, -STRING) : hashChars(mix(h, STRING), value);
+                    break;
+                }
+                case TEXT:
+                    h = mix(h, STRING);
+                    for (int p = i + 2; p < i + length(i); p += 2) {
+                        h = code[p] == PART_INT ? hashDigits(h, code[p + 1]) : hashChars(h, str(code[p + 1]));
+                    }
+                    break;
+                case INT:
+                case BOOL:
+                    h = mix(mix(h, op), code[i + 1]);
+                    break;
+                default:
+                    h = mix(h, op);
+            }
+            i += length(i);
+        }
+        return finish(h);
+    }
+
+    /**
+     * True if both tapes hold exactly the same calls and values.
+     */
+    public boolean sameAs(StateTape other) {
+        if (other == null || other.codeSize != codeSize || other.stringCount != stringCount) return false;
+        for (int i = 0; i < codeSize; i++) {
+            if (code[i] != other.code[i]) return false;
+        }
+        for (int i = 0; i < stringCount; i++) {
+            String a = strings[i];
+            String b = other.strings[i];
+            if (a != b && (a == null || !a.equals(b))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Fold one fingerprint (or any long) into another, order-sensitive.
+     */
+    public static long combine(long h, long value) {
+        return finish(mix(mix(h, (int) (value >>> 32)), (int) value));
+    }
+
+    private static boolean isIgnored(String name, String[] ignored) {
+        for (String field : ignored) {
+            if (field.equals(name)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * One step per value or char: a bijection of h for any value, so two sequences that
+     * differ in one place never collide. {@link #finish} spreads the result.
+     */
+    private static long mix(long h, int value) {
+        return (h ^ (value & 0xFFFFFFFFL)) * HASH_MULTIPLIER;
+    }
+
+    private static long hashChars(long h, String value) {
+        if (value == null) value = "null";  // As a text part encodes
+        for (int i = 0; i < value.length(); i++) {
+            h = mix(h, value.charAt(i));
+        }
+        return h;
+    }
+
+    /**
+     * Hash an int's decimal digits, as {@link #hashChars} would its string.
+     */
+    private static long hashDigits(long h, int value) {
+        if (value < 0) {
+            h = mix(h, '-');
+        } else {
+            value = -value;  // Negative range holds Integer.MIN_VALUE
+        }
+        int divisor = 1;
+        while (value / divisor <= -10) divisor *= 10;
+        while (divisor != 0) {
+            h = mix(h, '0' - value / divisor);
+            value %= divisor;
+            divisor /= 10;
+        }
+        return h;
+    }
+
+    private static long finish(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    // ========== Reading (StateEncoder) ==========
+
+    int size() {
+        return codeSize;
+    }
+
+    int at(int i) {
+        return code[i];
+    }
+
+    String str(int index) {
+        return index < 0 ? null : strings[index];
+    }
+
+    /**
+     * Index just past the value starting at i.
+     */
+    int skipValue(int i) {
+        switch (code[i]) {
+            case BEGIN_OBJECT:
+            case BEGIN_ARRAY: {
+                int depth = 0;
+                do {
+                    int op = code[i];
+                    if (op == BEGIN_OBJECT || op == BEGIN_ARRAY) depth++;
+                    else if (op == END_OBJECT || op == END_ARRAY) depth--;
+                    i += length(i);
+                } while (depth > 0);
+                return i;
+            }
+            default:
+                return i + length(i);
+        }
+    }
+
+    /**
+     * Entries taken by the call at i, opcode included.
+     */
+    int length(int i) {
+        switch (code[i]) {
+            case NAME:
+            case STRING:
+            case INT:
+            case BOOL:
+            case NUMBER:
+                return 2;
+            case TEXT:
+                return 2 + 2 * code[i + 1];
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Record a Gson tree, e.g. a recorded snapshot.
+     */
+    public static StateTape fromJson(JsonElement json) {
+        return new StateTape().value(json);
+    }
+
+    /**
+     * Write a Gson tree as a value.
+     */
+    public StateTape value(JsonElement json) {
+        if (json == null || json.isJsonNull()) {
+            value((String) null);
+        } else if (json.isJsonObject()) {
+            beginObject();
+            for (Map.Entry<String, JsonElement> entry : json.getAsJsonObject().entrySet()) {
+                name(entry.getKey());
+                value(entry.getValue());
+            }
+            endObject();
+        } else if (json.isJsonArray()) {
+            beginArray();
+            for (JsonElement item : json.getAsJsonArray()) {
+                value(item);
+            }
+            endArray();
+        } else {
+            JsonPrimitive primitive = json.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                value(primitive.getAsBoolean());
+            } else if (primitive.isNumber()) {
+                String text = primitive.getAsString();
+                try {
+                    value(Integer.parseInt(text));
+                } catch (NumberFormatException e) {
+                    op(NUMBER, string(text));
+                }
+            } else {
+                value(primitive.getAsString());
+            }
+        }
+        return this;
+    }
+
+    // ========== Buffers ==========
+
+    private int string(String value) {
+        if (value == null) return -1;
+        if (stringCount == strings.length) {
+            strings = Arrays.copyOf(strings, Math.max(16, strings.length * 2));
+        }
+        strings[stringCount] = value;
+        return stringCount++;
+    }
+
+    private StateTape op(int op) {
+        ensure(1);
+        code[codeSize++] = op;
+        return this;
+    }
+
+    private StateTape op(int op, int operand) {
+        ensure(2);
+        code[codeSize++] = op;
+        code[codeSize++] = operand;
+        return this;
+    }
+
+    private void ensure(int n) {
+        if (codeSize + n > code.length) {
+            code = Arrays.copyOf(code, Math.max(64, code.length * 2));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package stsagent.tools;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builtin tool results seen during one agent run, so a repeat call on an unchanged state
+ * can answer with a short marker instead of the whole payload (see
+ * {@link BuiltinTools#execute(String, com.google.gson.JsonObject, ToolMemo, String)}).
+ *
+ * Results are keyed by tool name and arguments and remember the state fingerprint they
+ * were read at. A memo belongs to one run and one thread; it is dropped with the run, as
+ * the messages it points back to are.
+ */
+public final class ToolMemo {
+    private final Map<String, Entry> entries = new HashMap<>();
+    private int calls;
+    private int repeats;
+    private long tokensSaved;
+
+    static final class Entry {
+        final long fingerprint;   // 0 if the source computes none
+        final String result;
+        final String callId;
+
+        Entry(long fingerprint, String result, String callId) {
+            this.fingerprint = fingerprint;
+            this.result = result;
+            this.callId = callId;
+        }
+    }
+
+    Entry get(String key) {
+        return entries.get(key);
+    }
+
+    void put(String key, Entry entry) {
+        entries.put(key, entry);
+    }
+
+    void countCall() {
+        calls++;
+    }
+
+    void countRepeat(String result, String marker) {
+        repeats++;
+        tokensSaved += Math.max(0, StateEncoder.estimateTokens(result) - StateEncoder.estimateTokens(marker));
+    }
+
+    /**
+     * Builtin tool calls made through this memo.
+     */
+    public int getCalls() {
+        return calls;
+    }
+
+    /**
+     * Calls answered with the unchanged marker.
+     */
+    public int getRepeats() {
+        return repeats;
+    }
+
+    /**
+     * Estimated tokens the markers saved over sending the results again.
+     */
+    public long getTokensSaved() {
+        return tokensSaved;
+    }
+}
@@ -13,10 +13,16 @@ import com.megacrit.cardcrawl.helpers.input.InputHelper;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import stsagent.agent.Agent;
+import stsagent.mcp.ActionExecutor;
+import stsagent.mcp.RoutingActionExecutor;
+import stsagent.tools.GameFields;
+import stsagent.tools.GameStateReader;
+import stsagent.tools.GameStateSource;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.datatransfer.DataFlavor;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -26,6 +32,8 @@ import java.util.List;
 public class ChatOverlay {
     private static final Logger logger = LogManager.getLogger(ChatOverlay.class);
 
+    private static final String SNAPSHOT_DIR = "preferences/STSAgent/snapshots";
+
     // Layout
     private static final float WIDTH = 500f * Settings.scale;
     private static final float HEIGHT = 560f * Settings.scale;
@@ -56,6 +64,11 @@ public class ChatOverlay {
     private static final Color BTN_HOVER = new Color(0.18f, 0.22f, 0.30f, 0.98f);
     private static final Color BTN_BORDER = new Color(0.35f, 0.35f, 0.40f, 0.7f);
 
+    private static final Color MCP_CONNECTED = new Color(0.3f, 0.95f, 0.5f, 0.95f);
+    private static final Color MCP_DEGRADED = new Color(1f, 0.8f, 0.2f, 0.95f);
+    private static final Color MCP_DOWN = new Color(0.95f, 0.3f, 0.3f, 0.95f);
+    private static final Color MCP_UNKNOWN = new Color(0.5f, 0.5f, 0.55f, 0.95f);
+
     private final Agent agent;
     private final List<Msg> messages = new ArrayList<>();
     private final StringBuilder input = new StringBuilder();
@@ -259,9 +272,37 @@ public class ChatOverlay {
         float titleY = headerY + headerH * 0.5f + 7f * Settings.scale;
         FontHelper.renderFontLeft(sb, FontHelper.tipBodyFont, "AI Assistant", titleX, titleY, GOLD);
 
+        renderMcpStatus(sb, headerY, headerH);
         renderStatus(sb, headerY, headerH);
     }
 
+    private void renderMcpStatus(SpriteBatch sb, float headerY, float headerH) {
+        float x = windowX + WIDTH - PAD - 160f * Settings.scale;
+        float y = headerY + headerH * 0.5f;
+
+        Color dotColor;
+        switch (agent.getMcpMonitor().getStatus()) {
+            case CONNECTED:
+                dotColor = MCP_CONNECTED;
+                break;
+            case DEGRADED:
+                dotColor = MCP_DEGRADED;
+                break;
+            case DOWN:
+                dotColor = MCP_DOWN;
+                break;
+            case UNKNOWN:
+            default:
+                dotColor = MCP_UNKNOWN;
+                break;
+        }
+
+        float dotSize = 6f * Settings.scale;
+        drawRect(sb, x - dotSize/2, y - dotSize/2, dotSize, dotSize, dotColor);
+        FontHelper.renderFontLeft(sb, FontHelper.tipBodyFont, "MCP",
+                x + dotSize, y + 7f * Settings.scale, dotColor);
+    }
+
     private void renderStatus(SpriteBatch sb, float headerY, float headerH) {
         float statusX = windowX + WIDTH - PAD - 75f * Settings.scale;
         float statusY = headerY + headerH * 0.5f;
@@ -615,10 +656,12 @@ public class ChatOverlay {
         if (text.isEmpty()) return;
         if (text.startsWith("/")) {
             String cmd = text.toLowerCase();
-            if (cmd.equals("/help") || cmd.equals("/h")) addSys("Commands: /analyze /tip /clear /help");
+            if (cmd.equals("/help") || cmd.equals("/h")) addSys("Commands: /analyze /tip /clear /snapshot /latency /help");
             else if (cmd.equals("/analyze") || cmd.equals("/a")) analyze();
             else if (cmd.equals("/tip") || cmd.equals("/t")) tip();
             else if (cmd.equals("/clear") || cmd.equals("/c")) clear();
+            else if (cmd.equals("/snapshot") || cmd.equals("/s")) snapshot();
+            else if (cmd.equals("/latency") || cmd.equals("/l")) latency();
             else addSys("Unknown: " + text);
         } else {
             addUser(text);
@@ -695,6 +738,36 @@ public class ChatOverlay {
         );
     }
 
+    private void snapshot() {
+        try {
+            File file = agent.saveSnapshot(new File(SNAPSHOT_DIR));
+            addSys("Snapshot saved: " + file.getName());
+        } catch (Exception e) {
+            logger.error("Failed to save snapshot", e);
+            addSys("Snapshot failed: " + e.getMessage());
+        }
+    }
+
+    private void latency() {
+        ActionExecutor executor = agent.getActionExecutor();
+        if (executor instanceof RoutingActionExecutor) {
+            for (String line : ((RoutingActionExecutor) executor).getLatencySummary().split("\n")) {
+                addSys(line);
+            }
+        } else {
+            addSys("No action latency recorded");
+        }
+        GameStateSource reader = agent.getStateReader();
+        if (reader instanceof GameStateReader) {
+            for (String line : ((GameStateReader) reader).getCaptureSummary().split("\n")) {
+                addSys(line);
+            }
+            for (String line : GameFields.getSummary().split("\n")) {
+                addSys(line);
+            }
+        }
+    }
+
     private void clear() {
         messages.clear();
         agent.clearChatHistory();  // Also clear LLM conversation history